@@ -0,0 +1,31 @@
+package io.trino.historyserver.auth;
+
+import jakarta.validation.constraints.AssertTrue;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+@Getter
+@Setter
+@Configuration
+@Validated
+@ConditionalOnProperty(name = "trino.auth.type", havingValue = "bearer")
+@ConfigurationProperties(prefix = "trino.auth.bearer")
+public class BearerTokenAuthProperties
+{
+    private String token;
+
+    // Re-read when a coordinator rejects the token, so a rotated token is picked up without a restart
+    private String tokenFile;
+
+    @AssertTrue(message = "Exactly one of trino.auth.bearer.token and trino.auth.bearer.token-file must be provided")
+    public boolean isTokenSourceValid()
+    {
+        boolean hasToken = token != null && !token.isBlank();
+        boolean hasTokenFile = tokenFile != null && !tokenFile.isBlank();
+        return hasToken != hasTokenFile;
+    }
+}
@@ -0,0 +1,105 @@
+package io.trino.historyserver.auth;
+
+import io.trino.historyserver.exception.TrinoAuthException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Sends a static bearer token (e.g. a JWT) in the Authorization header, for coordinators running
+// web-ui.authentication.type=jwt. No login request is made, so there is no round trip per coordinator.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "trino.auth.type", havingValue = "bearer")
+public class BearerTokenSessionManager
+        implements TrinoSessionManager
+{
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final BearerTokenAuthProperties props;
+    private volatile String credential;
+
+    public BearerTokenSessionManager(BearerTokenAuthProperties props)
+    {
+        this.props = props;
+        this.credential = BEARER_PREFIX + readToken();
+    }
+
+    @Override
+    public String getSessionCookie(String coordinatorUrl)
+    {
+        return credential;
+    }
+
+    @Override
+    public void refreshSessionCookie(String coordinatorUrl)
+    {
+        reloadToken(coordinatorUrl, credential);
+    }
+
+    @Override
+    public Mono<String> getSessionCookieAsync(String coordinatorUrl)
+    {
+        return Mono.just(credential);
+    }
+
+    @Override
+    public Mono<String> refreshSessionCookieAsync(String coordinatorUrl, String expiredCookie)
+    {
+        return Mono.fromCallable(() -> reloadToken(coordinatorUrl, expiredCookie))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public void applyCredential(HttpHeaders headers, String credential)
+    {
+        headers.set(HttpHeaders.AUTHORIZATION, credential);
+    }
+
+    private synchronized String reloadToken(String coordinatorUrl, String expiredCredential)
+    {
+        if (!credential.equals(expiredCredential)) {
+            return credential;
+        }
+        if (props.getTokenFile() == null) {
+            throw rejectedTokenError(coordinatorUrl);
+        }
+
+        String reloaded = BEARER_PREFIX + readToken();
+        if (reloaded.equals(expiredCredential)) {
+            throw rejectedTokenError(coordinatorUrl);
+        }
+        credential = reloaded;
+        log.info("event=trino_bearer_token_reloaded type=success coordinator={} tokenFile={}", coordinatorUrl, props.getTokenFile());
+        return credential;
+    }
+
+    private String readToken()
+    {
+        if (props.getTokenFile() == null) {
+            return props.getToken().strip();
+        }
+
+        try {
+            return Files.readString(Path.of(props.getTokenFile())).strip();
+        }
+        catch (IOException e) {
+            throw new TrinoAuthException(
+                    String.format("Failed to read the bearer token from %s.", props.getTokenFile()), e
+            );
+        }
+    }
+
+    private TrinoAuthException rejectedTokenError(String coordinatorUrl)
+    {
+        return new TrinoAuthException(
+                String.format("The coordinator %s rejected the configured bearer token.", coordinatorUrl)
+        );
+    }
+}
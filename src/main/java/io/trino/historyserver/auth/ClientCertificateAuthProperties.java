@@ -0,0 +1,28 @@
+package io.trino.historyserver.auth;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+@Getter
+@Setter
+@Configuration
+@Validated
+@ConditionalOnProperty(name = "trino.auth.type", havingValue = "certificate")
+@ConfigurationProperties(prefix = "trino.auth.certificate")
+public class ClientCertificateAuthProperties
+{
+    @NotBlank(message = "trino.auth.certificate.keystore-path must be provided")
+    private String keystorePath;
+    private String keystorePassword = "";
+    private String keystoreType = "PKCS12";
+
+    // Optional, the JVM's default trust store is used when not set
+    private String truststorePath;
+    private String truststorePassword = "";
+    private String truststoreType = "PKCS12";
+}
@@ -0,0 +1,110 @@
+package io.trino.historyserver.auth;
+
+import io.netty.handler.ssl.SslContextBuilder;
+import io.trino.historyserver.exception.TrinoAuthException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+// Authenticates with a TLS client certificate, for coordinators running web-ui.authentication.type=certificate.
+// The certificate is presented during the TLS handshake of every pooled connection, so requests carry no credential.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "trino.auth.type", havingValue = "certificate")
+public class ClientCertificateSessionManager
+        implements TrinoSessionManager
+{
+    public static final String CLIENT_CERTIFICATE_CREDENTIAL = "client-certificate";
+
+    private final KeyManagerFactory keyManagerFactory;
+    private final TrustManagerFactory trustManagerFactory;
+
+    public ClientCertificateSessionManager(ClientCertificateAuthProperties props)
+    {
+        try {
+            KeyStore keyStore = loadKeyStore(props.getKeystorePath(), props.getKeystorePassword(), props.getKeystoreType());
+            this.keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            this.keyManagerFactory.init(keyStore, props.getKeystorePassword().toCharArray());
+
+            if (props.getTruststorePath() == null) {
+                this.trustManagerFactory = null;
+            }
+            else {
+                KeyStore trustStore = loadKeyStore(props.getTruststorePath(), props.getTruststorePassword(), props.getTruststoreType());
+                this.trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                this.trustManagerFactory.init(trustStore);
+            }
+        }
+        catch (IOException | GeneralSecurityException e) {
+            throw new TrinoAuthException(
+                    String.format("Failed to load the client certificate from %s.", props.getKeystorePath()), e
+            );
+        }
+        log.info("event=trino_client_certificate_loaded type=success keystore={}", props.getKeystorePath());
+    }
+
+    // Called by the WebClient configuration when it builds the coordinator SSL context
+    public void configureSslContext(SslContextBuilder builder)
+    {
+        builder.keyManager(keyManagerFactory);
+        if (trustManagerFactory != null) {
+            builder.trustManager(trustManagerFactory);
+        }
+    }
+
+    @Override
+    public String getSessionCookie(String coordinatorUrl)
+    {
+        return CLIENT_CERTIFICATE_CREDENTIAL;
+    }
+
+    @Override
+    public void refreshSessionCookie(String coordinatorUrl)
+    {
+        throw rejectedCertificateError(coordinatorUrl);
+    }
+
+    @Override
+    public Mono<String> getSessionCookieAsync(String coordinatorUrl)
+    {
+        return Mono.just(CLIENT_CERTIFICATE_CREDENTIAL);
+    }
+
+    @Override
+    public Mono<String> refreshSessionCookieAsync(String coordinatorUrl, String expiredCookie)
+    {
+        return Mono.error(() -> rejectedCertificateError(coordinatorUrl));
+    }
+
+    @Override
+    public void applyCredential(HttpHeaders headers, String credential) {}
+
+    private static KeyStore loadKeyStore(String path, String password, String type)
+            throws IOException, GeneralSecurityException
+    {
+        KeyStore keyStore = KeyStore.getInstance(type);
+        try (InputStream input = Files.newInputStream(Path.of(path))) {
+            keyStore.load(input, password.toCharArray());
+        }
+        return keyStore;
+    }
+
+    private TrinoAuthException rejectedCertificateError(String coordinatorUrl)
+    {
+        return new TrinoAuthException(
+                String.format("The coordinator %s rejected the client certificate.", coordinatorUrl)
+        );
+    }
+}
@@ -0,0 +1,32 @@
+package io.trino.historyserver.auth;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+@Getter
+@Setter
+@Configuration
+@Validated
+@ConditionalOnProperty(name = "trino.auth.type", havingValue = "kerberos")
+@ConfigurationProperties(prefix = "trino.auth.kerberos")
+public class KerberosAuthProperties
+{
+    @NotBlank(message = "trino.auth.kerberos.principal must be provided")
+    private String principal;
+    @NotBlank(message = "trino.auth.kerberos.keytab must be provided")
+    private String keytab;
+
+    // krb5.conf location, the JVM default (/etc/krb5.conf) is used when not set
+    private String config;
+
+    // Service name of the coordinator principal, the host is taken from the coordinator URL (HTTP/<host>)
+    private String serviceName = "HTTP";
+
+    // Lower bound between two keytab logins triggered by rejected tickets, so a misbehaving coordinator cannot flood the KDC
+    private long minReloginIntervalMillis = 60000;
+}
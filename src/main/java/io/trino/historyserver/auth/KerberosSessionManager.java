@@ -0,0 +1,190 @@
+package io.trino.historyserver.auth;
+
+import io.trino.historyserver.exception.TrinoAuthException;
+import lombok.extern.slf4j.Slf4j;
+import org.ietf.jgss.GSSContext;
+import org.ietf.jgss.GSSException;
+import org.ietf.jgss.GSSManager;
+import org.ietf.jgss.GSSName;
+import org.ietf.jgss.Oid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+import java.net.URI;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+// Authenticates with SPNEGO (Authorization: Negotiate), for coordinators running web-ui.authentication.type=kerberos.
+// The TGT is obtained once from the keytab and the service ticket per coordinator is cached by the JDK, so
+// after the first request to a coordinator a token is generated locally without any round trip.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "trino.auth.type", havingValue = "kerberos")
+public class KerberosSessionManager
+        implements TrinoSessionManager
+{
+    private static final String NEGOTIATE_PREFIX = "Negotiate ";
+    private static final String KRB5_LOGIN_MODULE = "com.sun.security.auth.module.Krb5LoginModule";
+    private static final Oid SPNEGO_OID = oid("1.3.6.1.5.5.2");
+
+    private final KerberosAuthProperties props;
+    private final TrinoSessionProperties sessionProps;
+    private final GSSManager gssManager = GSSManager.getInstance();
+
+    private volatile Subject subject;
+    private volatile long loginTimeMillis;
+
+    public KerberosSessionManager(KerberosAuthProperties props, TrinoSessionProperties sessionProps)
+    {
+        this.props = props;
+        this.sessionProps = sessionProps;
+        if (props.getConfig() != null) {
+            System.setProperty("java.security.krb5.conf", props.getConfig());
+        }
+        login();
+    }
+
+    @Override
+    public String getSessionCookie(String coordinatorUrl)
+    {
+        return negotiate(coordinatorUrl);
+    }
+
+    @Override
+    public void refreshSessionCookie(String coordinatorUrl)
+    {
+        relogin();
+    }
+
+    // SPNEGO tokens are single use, the coordinator's replay cache rejects a token sent twice,
+    // so a new one is generated for every request
+    @Override
+    public Mono<String> getSessionCookieAsync(String coordinatorUrl)
+    {
+        return Mono.fromCallable(() -> negotiate(coordinatorUrl))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<String> refreshSessionCookieAsync(String coordinatorUrl, String expiredCookie)
+    {
+        return Mono.fromCallable(() -> {
+                    relogin();
+                    return negotiate(coordinatorUrl);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public void applyCredential(HttpHeaders headers, String credential)
+    {
+        headers.set(HttpHeaders.AUTHORIZATION, credential);
+    }
+
+    private String negotiate(String coordinatorUrl)
+    {
+        if (isTicketExpiring(subject)) {
+            login();
+        }
+
+        String host = URI.create(coordinatorUrl).getHost();
+        try {
+            byte[] token = Subject.callAs(subject, () -> {
+                GSSName serviceName = gssManager.createName(props.getServiceName() + "@" + host, GSSName.NT_HOSTBASED_SERVICE);
+                GSSContext context = gssManager.createContext(serviceName, SPNEGO_OID, null, GSSContext.DEFAULT_LIFETIME);
+                try {
+                    context.requestMutualAuth(false);
+                    context.requestCredDeleg(false);
+                    return context.initSecContext(new byte[0], 0, 0);
+                }
+                finally {
+                    context.dispose();
+                }
+            });
+            return NEGOTIATE_PREFIX + Base64.getEncoder().encodeToString(token);
+        }
+        catch (CompletionException e) {
+            throw new TrinoAuthException(
+                    String.format("Failed to create a SPNEGO token for coordinator %s.", coordinatorUrl), e.getCause()
+            );
+        }
+    }
+
+    private synchronized void relogin()
+    {
+        if (System.currentTimeMillis() - loginTimeMillis < props.getMinReloginIntervalMillis()) {
+            log.debug("event=trino_kerberos_relogin_skipped type=success principal={}", props.getPrincipal());
+            return;
+        }
+        login();
+    }
+
+    private synchronized void login()
+    {
+        try {
+            LoginContext loginContext = new LoginContext("", new Subject(), null, keytabConfiguration());
+            loginContext.login();
+            subject = loginContext.getSubject();
+            loginTimeMillis = System.currentTimeMillis();
+            log.info("event=trino_kerberos_login_succeeded type=success principal={}", props.getPrincipal());
+        }
+        catch (LoginException e) {
+            throw new TrinoAuthException(
+                    String.format("Kerberos login for principal %s with keytab %s failed.", props.getPrincipal(), props.getKeytab()), e
+            );
+        }
+    }
+
+    private boolean isTicketExpiring(Subject subject)
+    {
+        long renewAt = System.currentTimeMillis() + sessionProps.getRenewBeforeMillis();
+        return subject.getPrivateCredentials(KerberosTicket.class).stream()
+                .filter(ticket -> ticket.getServer().getName().startsWith("krbtgt/"))
+                .noneMatch(ticket -> ticket.getEndTime().getTime() > renewAt);
+    }
+
+    private Configuration keytabConfiguration()
+    {
+        Map<String, String> options = Map.of(
+                "useKeyTab", "true",
+                "keyTab", props.getKeytab(),
+                "principal", props.getPrincipal(),
+                "storeKey", "true",
+                "doNotPrompt", "true",
+                "isInitiator", "true",
+                "refreshKrb5Config", "true"
+        );
+
+        return new Configuration()
+        {
+            @Override
+            public AppConfigurationEntry[] getAppConfigurationEntry(String name)
+            {
+                return new AppConfigurationEntry[] {
+                        new AppConfigurationEntry(KRB5_LOGIN_MODULE, AppConfigurationEntry.LoginModuleControlFlag.REQUIRED, options)
+                };
+            }
+        };
+    }
+
+    private static Oid oid(String value)
+    {
+        try {
+            return new Oid(value);
+        }
+        catch (GSSException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,14 +1,28 @@
 package io.trino.historyserver.auth;
 
+import java.net.HttpCookie;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.springframework.web.reactive.function.BodyInserters.fromFormData;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import io.trino.historyserver.exception.TrinoAuthException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
@@ -19,45 +33,175 @@ import reactor.core.publisher.Mono;
 
 @Slf4j
 @Service
+@ConditionalOnProperty(name = "trino.auth.type", havingValue = "password", matchIfMissing = true)
 public class PasswordSessionManager
         implements TrinoSessionManager
 {
     public static final String TRINO_UI_LOGIN_PATH = "/ui/login";
     public static final String TRINO_UI_COOKIE = "Trino-UI-Token";
 
+    private static final ObjectMapper JWT_PAYLOAD_MAPPER = new ObjectMapper();
+
     private final TrinoAuthProperties authProps;
-    private final Map<String, String> sessionCookies = new ConcurrentHashMap<>();
+    private final TrinoSessionProperties sessionProps;
+    private final Cache<String, CoordinatorSession> sessions;
     private final WebClient webClient;
 
-    public PasswordSessionManager(TrinoAuthProperties authProps, WebClient webClient) {
+    private ScheduledExecutorService renewalScheduler;
+
+    public PasswordSessionManager(TrinoAuthProperties authProps, TrinoSessionProperties sessionProps, WebClient webClient)
+    {
         this.authProps = authProps;
-        this.webClient = webClient;}
+        this.sessionProps = sessionProps;
+        this.webClient = webClient;
+        // Coordinators that stopped sending queries, e.g. decommissioned ones, drop out instead of being logged in
+        // to forever by the renewal
+        this.sessions = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMillis(sessionProps.getIdleSessionTimeoutMillis()))
+                .removalListener((String coordinatorUrl, CoordinatorSession session, RemovalCause cause) -> {
+                    if (cause == RemovalCause.EXPIRED) {
+                        log.debug("event=trino_session_expired type=success coordinator={}", coordinatorUrl);
+                    }
+                })
+                .build();
+    }
+
+    @PostConstruct
+    public void startRenewal()
+    {
+        if (!sessionProps.isRenewalEnabled()) {
+            return;
+        }
+
+        renewalScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("trino-session-renewal").daemon().factory()
+        );
+        renewalScheduler.scheduleWithFixedDelay(
+                this::renewExpiringSessions,
+                sessionProps.getRenewalCheckIntervalMillis(),
+                sessionProps.getRenewalCheckIntervalMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    @PreDestroy
+    public void stopRenewal()
+    {
+        if (renewalScheduler != null) {
+            renewalScheduler.shutdownNow();
+        }
+    }
 
     @Override
     public String getSessionCookie(String coordinatorUrl)
     {
-        return sessionCookies.computeIfAbsent(coordinatorUrl, this::fetchSessionCookie);
+        return getSessionCookieAsync(coordinatorUrl).block();
     }
 
     @Override
     public void refreshSessionCookie(String coordinatorUrl)
     {
-        sessionCookies.compute(coordinatorUrl, (key, val) -> fetchSessionCookie(coordinatorUrl));
+        SessionCookie current = session(coordinatorUrl).current;
+        refreshSessionCookieAsync(coordinatorUrl, current == null ? null : current.value()).block();
     }
 
-    private String fetchSessionCookie(String coordinatorUrl)
+    @Override
+    public Mono<String> getSessionCookieAsync(String coordinatorUrl)
+    {
+        CoordinatorSession session = session(coordinatorUrl);
+        SessionCookie current = session.current;
+        long now = System.currentTimeMillis();
+
+        if (current == null || current.isExpired(now)) {
+            return login(coordinatorUrl, session, current == null ? null : current.value());
+        }
+        if (sessionProps.isRenewalEnabled() && current.isDueForRenewal(now, sessionProps.getRenewBeforeMillis())) {
+            renewInBackground(coordinatorUrl, session, current);
+        }
+        return Mono.just(current.value());
+    }
+
+    @Override
+    public Mono<String> refreshSessionCookieAsync(String coordinatorUrl, String expiredCookie)
+    {
+        return login(coordinatorUrl, session(coordinatorUrl), expiredCookie);
+    }
+
+    // Renews every cookie that is within renew-before-millis of its expiry, so the ingest path keeps using a valid cookie.
+    // Iterating the sessions does not count as an access, so idle ones still expire.
+    public void renewExpiringSessions()
+    {
+        sessions.cleanUp();
+        long now = System.currentTimeMillis();
+        sessions.asMap().forEach((coordinatorUrl, session) -> {
+            SessionCookie current = session.current;
+            if (current != null && current.isDueForRenewal(now, sessionProps.getRenewBeforeMillis())) {
+                renewInBackground(coordinatorUrl, session, current);
+            }
+        });
+    }
+
+    private CoordinatorSession session(String coordinatorUrl)
+    {
+        // Only creates the holder, the login itself never runs inside the map's mapping function
+        return sessions.get(coordinatorUrl, key -> new CoordinatorSession());
+    }
+
+    private void renewInBackground(String coordinatorUrl, CoordinatorSession session, SessionCookie current)
+    {
+        login(coordinatorUrl, session, current.value()).subscribe(
+                cookie -> log.debug("event=trino_cookie_renewal_succeeded type=success coordinator={}", coordinatorUrl),
+                error -> log.warn("event=trino_cookie_renewal_failed type=warning coordinator={} message=\"{}\"", coordinatorUrl, error.getMessage())
+        );
+    }
+
+    // Single-flight login: concurrent callers for one coordinator share the login in flight.
+    // A caller whose expired cookie was already replaced gets the new cookie without another login.
+    private Mono<String> login(String coordinatorUrl, CoordinatorSession session, String expiredCookie)
+    {
+        return Mono.defer(() -> {
+            CompletableFuture<SessionCookie> login;
+            synchronized (session) {
+                SessionCookie current = session.current;
+                if (current != null && !current.value().equals(expiredCookie)) {
+                    log.debug("event=trino_cookie_refresh_skipped type=success coordinator={}", coordinatorUrl);
+                    return Mono.just(current.value());
+                }
+                if (session.login != null) {
+                    return Mono.fromFuture(session.login, true).map(SessionCookie::value);
+                }
+
+                login = new CompletableFuture<>();
+                session.login = login;
+            }
+
+            login.whenComplete((cookie, error) -> {
+                synchronized (session) {
+                    if (error == null) {
+                        session.current = cookie;
+                    }
+                    session.login = null;
+                }
+            });
+            Mono.defer(() -> fetchSessionCookie(coordinatorUrl))
+                    .switchIfEmpty(Mono.error(() -> noSessionCookieError(coordinatorUrl)))
+                    .subscribe(login::complete, login::completeExceptionally);
+
+            return Mono.fromFuture(login, true).map(SessionCookie::value);
+        });
+    }
+
+    private Mono<SessionCookie> fetchSessionCookie(String coordinatorUrl)
     {
         String url = coordinatorUrl + TRINO_UI_LOGIN_PATH;
 
-        String cookie = webClient.post()
+        return webClient.post()
                 .uri(url)
                 .contentType(MediaType.APPLICATION_FORM_URLENCODED)
                 .body(createLoginForm())
                 .exchangeToMono(response -> handleLoginResponse(response, coordinatorUrl))
-                .block();
-
-        log.info("event=trino_cookie_fetch_succeeded type=success coordinator={}", coordinatorUrl);
-        return cookie;
+                .doOnNext(cookie -> log.info("event=trino_cookie_fetch_succeeded type=success coordinator={} expiresInMillis={}",
+                        coordinatorUrl, cookie.expiresAtMillis() - System.currentTimeMillis()));
     }
 
     private BodyInserters.FormInserter<String> createLoginForm()
@@ -66,7 +210,7 @@ public class PasswordSessionManager
                 .with("password", authProps.getPassword());
     }
 
-    private Mono<String> handleLoginResponse(ClientResponse response, String coordinatorUrl)
+    private Mono<SessionCookie> handleLoginResponse(ClientResponse response, String coordinatorUrl)
     {
         if (response.statusCode().is3xxRedirection()) {
             return Mono.just(getSessionCookie(response, coordinatorUrl));
@@ -74,21 +218,60 @@ public class PasswordSessionManager
         return Mono.error(loginFailedError(response, coordinatorUrl));
     }
 
-    private String getSessionCookie(ClientResponse response, String coordinatorUrl)
+    private SessionCookie getSessionCookie(ClientResponse response, String coordinatorUrl)
     {
         List<String> cookies = response.headers().header(HttpHeaders.SET_COOKIE);
         return extractSessionCookie(cookies, coordinatorUrl);
     }
 
-    private String extractSessionCookie(List<String> cookies, String coordinatorUrl)
+    private SessionCookie extractSessionCookie(List<String> cookies, String coordinatorUrl)
     {
         return cookies.stream()
                 .filter(cookie -> cookie.startsWith(TRINO_UI_COOKIE))
                 .findFirst()
-                .map(cookie -> cookie.split(";")[0])
+                .map(cookie -> new SessionCookie(cookie.split(";")[0], expiresAtMillis(cookie)))
                 .orElseThrow(() -> noSessionCookieError(coordinatorUrl));
     }
 
+    // Expiry comes from the cookie's Max-Age/Expires attributes, then from the JWT "exp" claim of the token,
+    // and falls back to default-ttl-millis (Trino's web-ui.session-timeout) when neither is present
+    private long expiresAtMillis(String setCookieHeader)
+    {
+        long now = System.currentTimeMillis();
+
+        try {
+            HttpCookie cookie = HttpCookie.parse(setCookieHeader).getFirst();
+            if (cookie.getMaxAge() >= 0) {
+                return now + TimeUnit.SECONDS.toMillis(cookie.getMaxAge());
+            }
+            Long jwtExpiry = jwtExpiryMillis(cookie.getValue());
+            if (jwtExpiry != null) {
+                return jwtExpiry;
+            }
+        }
+        catch (IllegalArgumentException e) {
+            log.debug("event=trino_cookie_expiry_unknown type=warning message=\"{}\"", e.getMessage());
+        }
+        return now + sessionProps.getDefaultTtlMillis();
+    }
+
+    private static Long jwtExpiryMillis(String token)
+    {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+            JsonNode exp = JWT_PAYLOAD_MAPPER.readTree(new String(payload, StandardCharsets.UTF_8)).get("exp");
+            return exp != null && exp.canConvertToLong() ? TimeUnit.SECONDS.toMillis(exp.asLong()) : null;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
     private TrinoAuthException noSessionCookieError(String coordinatorUrl)
     {
         return new TrinoAuthException(
@@ -109,4 +292,24 @@ public class PasswordSessionManager
                 )
         );
     }
-}
\ No newline at end of file
+
+    private record SessionCookie(String value, long expiresAtMillis)
+    {
+        boolean isExpired(long now)
+        {
+            return now >= expiresAtMillis;
+        }
+
+        boolean isDueForRenewal(long now, long renewBeforeMillis)
+        {
+            return now >= expiresAtMillis - renewBeforeMillis;
+        }
+    }
+
+    private static final class CoordinatorSession
+    {
+        private volatile SessionCookie current;
+        // Guarded by the session's monitor
+        private CompletableFuture<SessionCookie> login;
+    }
+}
@@ -2,40 +2,77 @@ package io.trino.historyserver.auth;
 
 import io.trino.historyserver.dto.QueryReference;
 import io.trino.historyserver.exception.ExpiredSessionException;
-import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
 
 import java.util.function.Function;
 
 @Service
 public class SessionAwareHttpClient
 {
+    static final String SESSION_COOKIE_CONTEXT_KEY = SessionAwareHttpClient.class.getName() + ".sessionCookie";
+
     private final TrinoSessionManager sessionManager;
-    private final WebClient webClient;
+    private final WebClient sessionWebClient;
 
     public SessionAwareHttpClient(TrinoSessionManager sessionManager, WebClient webClient) {
         this.sessionManager = sessionManager;
-        this.webClient = webClient;
+        // Built once. The cookie travels in the Reactor context and is set on each outgoing request by the filter.
+        this.sessionWebClient = webClient.mutate()
+                .filter(this::addSessionCookie)
+                .build();
     }
 
     public <T> T runWithSessionRetry(QueryReference queryRef, Function<WebClient, Mono<T>> requestLogic) {
-        String cookie = sessionManager.getSessionCookie(queryRef.coordinatorUrl());
+        return exchangeWithSessionRetry(queryRef, requestLogic).block();
+    }
 
-        try {
-            return requestLogic.apply(webClientWithCookieHeader(cookie)).block();
-        } catch (ExpiredSessionException e) {
-            sessionManager.refreshSessionCookie(queryRef.coordinatorUrl());
-            cookie = sessionManager.getSessionCookie(queryRef.coordinatorUrl());
+    // Non-blocking variant of runWithSessionRetry: on an expired session, the cookie is refreshed and the request is sent once more
+    public <T> Mono<T> exchangeWithSessionRetry(QueryReference queryRef, Function<WebClient, Mono<T>> requestLogic) {
+        String coordinatorUrl = queryRef.coordinatorUrl();
 
-            return requestLogic.apply(webClientWithCookieHeader(cookie)).block();
-        }
+        return sessionManager.getSessionCookieAsync(coordinatorUrl)
+                .flatMap(cookie -> withSessionCookie(requestLogic, cookie)
+                        .onErrorResume(ExpiredSessionException.class, e -> sessionManager.refreshSessionCookieAsync(coordinatorUrl, cookie)
+                                .flatMap(refreshedCookie -> withSessionCookie(requestLogic, refreshedCookie))));
     }
 
-    private WebClient webClientWithCookieHeader(String cookie) {
-        return webClient.mutate()
-                .defaultHeader(HttpHeaders.COOKIE, cookie)
-                .build();
+    // Streaming variant of exchangeWithSessionRetry. An expired session is reported through the response status,
+    // before any element is emitted, so retrying the request never repeats a part of the body.
+    public <T> Flux<T> streamWithSessionRetry(QueryReference queryRef, Function<WebClient, Flux<T>> requestLogic) {
+        String coordinatorUrl = queryRef.coordinatorUrl();
+
+        return sessionManager.getSessionCookieAsync(coordinatorUrl)
+                .flatMapMany(cookie -> streamWithSessionCookie(requestLogic, cookie)
+                        .onErrorResume(ExpiredSessionException.class, e -> sessionManager.refreshSessionCookieAsync(coordinatorUrl, cookie)
+                                .flatMapMany(refreshedCookie -> streamWithSessionCookie(requestLogic, refreshedCookie))));
+    }
+
+    private <T> Mono<T> withSessionCookie(Function<WebClient, Mono<T>> requestLogic, String cookie) {
+        return requestLogic.apply(sessionWebClient)
+                .contextWrite(Context.of(SESSION_COOKIE_CONTEXT_KEY, cookie));
+    }
+
+    private <T> Flux<T> streamWithSessionCookie(Function<WebClient, Flux<T>> requestLogic, String cookie) {
+        return requestLogic.apply(sessionWebClient)
+                .contextWrite(Context.of(SESSION_COOKIE_CONTEXT_KEY, cookie));
+    }
+
+    private Mono<ClientResponse> addSessionCookie(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> {
+            String cookie = context.getOrDefault(SESSION_COOKIE_CONTEXT_KEY, null);
+            if (cookie == null) {
+                return next.exchange(request);
+            }
+            return next.exchange(ClientRequest.from(request)
+                    .headers(headers -> sessionManager.applyCredential(headers, cookie))
+                    .build());
+        });
     }
 }
@@ -3,6 +3,7 @@ package io.trino.historyserver.auth;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
@@ -11,6 +12,7 @@ import org.springframework.validation.annotation.Validated;
 @Setter
 @Configuration
 @Validated
+@ConditionalOnProperty(name = "trino.auth.type", havingValue = "password", matchIfMissing = true)
 @ConfigurationProperties(prefix = "trino.auth")
 public class TrinoAuthProperties
 {
@@ -1,7 +1,9 @@
 package io.trino.historyserver.auth;
 
 import io.trino.historyserver.exception.TrinoAuthException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 @Service
 public interface TrinoSessionManager
@@ -11,4 +13,18 @@ public interface TrinoSessionManager
 
     void refreshSessionCookie(String coordinatorUrl)
             throws TrinoAuthException;
-}
\ No newline at end of file
+
+    // Non-blocking variant of getSessionCookie, the login (if any) runs on the HTTP client's event loop
+    Mono<String> getSessionCookieAsync(String coordinatorUrl);
+
+    // Non-blocking variant of refreshSessionCookie, emits the new cookie.
+    // If expiredCookie was already replaced by a concurrent refresh, the current cookie is emitted without a new login.
+    Mono<String> refreshSessionCookieAsync(String coordinatorUrl, String expiredCookie);
+
+    // Sets the credential emitted by getSessionCookieAsync on an outgoing coordinator request.
+    // The form login sends it as a cookie, token based implementations override this to send an Authorization header.
+    default void applyCredential(HttpHeaders headers, String credential)
+    {
+        headers.set(HttpHeaders.COOKIE, credential);
+    }
+}
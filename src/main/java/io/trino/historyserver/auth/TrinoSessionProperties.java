@@ -0,0 +1,25 @@
+package io.trino.historyserver.auth;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "trino.auth.session")
+public class TrinoSessionProperties
+{
+    private boolean renewalEnabled = true;
+
+    // Lifetime assumed for a cookie without Max-Age, Expires or a JWT "exp" claim (Trino's web-ui.session-timeout default)
+    private long defaultTtlMillis = 24 * 60 * 60 * 1000L;
+
+    private long renewBeforeMillis = 10 * 60 * 1000L;
+
+    private long renewalCheckIntervalMillis = 30000;
+
+    // A coordinator's session is dropped, and no longer renewed, once no query of it was fetched for this long
+    private long idleSessionTimeoutMillis = 60 * 60 * 1000L;
+}
@@ -0,0 +1,36 @@
+package io.trino.historyserver.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+@Slf4j
+@Configuration
+public class ExecutionConfiguration
+{
+    public static final String STORAGE_SCHEDULER_NAME = "query-storage";
+
+    // Blocking storage I/O (S3Client, JDBC, filesystem) is dispatched to this scheduler from the reactive paths.
+    // With spring.threads.virtual.enabled=true every task gets its own virtual thread,
+    // otherwise Reactor's shared bounded elastic pool of platform threads is used.
+    @Bean(destroyMethod = "dispose")
+    public Scheduler storageScheduler(Environment environment)
+    {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            log.info("event=storage_scheduler_configured type=success threads=virtual");
+            return Schedulers.fromExecutorService(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(STORAGE_SCHEDULER_NAME + "-", 0).factory()),
+                    STORAGE_SCHEDULER_NAME
+            );
+        }
+
+        log.info("event=storage_scheduler_configured type=success threads=platform");
+        return Schedulers.boundedElastic();
+    }
+}
@@ -0,0 +1,78 @@
+package io.trino.historyserver.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Streams bulk read results as a JSON array or as newline-delimited JSON.
+ * <p>
+ * Every entry is {@code {"queryId": ..., "found": true, "query": {...}}}, or {@code {"queryId": ..., "found": false}}
+ * for a query that is not stored. Stored query JSON is copied as a raw value, without being parsed again.
+ * The response is only committed on the first entry, so a failure before that still maps to a proper error status.
+ */
+class BulkQueryResponseWriter
+{
+    static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final HttpServletResponse response;
+    private final boolean ndjson;
+    private JsonGenerator generator;
+
+    BulkQueryResponseWriter(HttpServletResponse response, boolean ndjson)
+    {
+        this.response = response;
+        this.ndjson = ndjson;
+    }
+
+    void write(String queryId, String queryJson)
+    {
+        try {
+            start();
+            generator.writeStartObject();
+            generator.writeStringField("queryId", queryId);
+            generator.writeBooleanField("found", queryJson != null);
+            if (queryJson != null) {
+                generator.writeFieldName("query");
+                generator.writeRawValue(queryJson);
+            }
+            generator.writeEndObject();
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void finish()
+            throws IOException
+    {
+        start();
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
+
+    private void start()
+            throws IOException
+    {
+        if (generator != null) {
+            return;
+        }
+        response.setContentType(ndjson ? NDJSON_MEDIA_TYPE : "application/json");
+        response.setCharacterEncoding("UTF-8");
+        generator = JSON_FACTORY.createGenerator(response.getOutputStream());
+        generator.setRootValueSeparator(null);
+        if (!ndjson) {
+            generator.writeStartArray();
+        }
+    }
+}
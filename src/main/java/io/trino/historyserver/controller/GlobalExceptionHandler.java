@@ -1,12 +1,17 @@
 package io.trino.historyserver.controller;
 
+import io.trino.historyserver.exception.CoordinatorUnavailableException;
 import io.trino.historyserver.exception.InvalidQueryEventException;
+import io.trino.historyserver.exception.InvalidQueryRequestException;
 import io.trino.historyserver.exception.QueryException;
 import io.trino.historyserver.exception.QueryFetchException;
+import io.trino.historyserver.exception.QueryIngestionRejectedException;
+import io.trino.historyserver.exception.QueryNotFoundException;
 import io.trino.historyserver.exception.QueryStorageException;
 import io.trino.historyserver.exception.StorageInitializationException;
 import io.trino.historyserver.exception.TrinoAuthException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -22,24 +27,53 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Received invalid query event: " + e.getMessage());
     }
 
+    @ExceptionHandler(InvalidQueryRequestException.class)
+    public ResponseEntity<String> handleInvalidRequestError(InvalidQueryRequestException e) {
+        log.error("event=invalid_query_request type=client_error message=\"{}\"", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Received invalid query request: " + e.getMessage());
+    }
+
     @ExceptionHandler(TrinoAuthException.class)
     public ResponseEntity<String> handleTrinoAuthError(TrinoAuthException e) {
         log.error("event=trino_auth_failed type=server_error message=\"{}\"", e.getMessage(), e);
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to authenticate with the coordinator: " + e.getMessage());
     }
 
+    @ExceptionHandler(CoordinatorUnavailableException.class)
+    public ResponseEntity<String> handleCoordinatorUnavailableError(CoordinatorUnavailableException e) {
+        log.warn("event=coordinator_unavailable type=warning queryId={} coordinator={} retryAfterMillis={}",
+                e.getQueryId(), e.getCoordinatorUrl(), e.getRetryAfterMillis());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(e.getRetryAfterMillis()))
+                .body("Coordinator is unavailable: " + e.getMessage());
+    }
+
     @ExceptionHandler(QueryFetchException.class)
     public ResponseEntity<String> handleFetchError(QueryFetchException e) {
         log.error("event=query_fetch_failed type=server_error queryId={} message=\"{}\"", e.getQueryId(), e.getMessage(), e);
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to fetch query from coordinator: " + e.getMessage());
     }
 
+    @ExceptionHandler(QueryNotFoundException.class)
+    public ResponseEntity<String> handleNotFoundError(QueryNotFoundException e) {
+        log.info("event=query_not_found type=client_error queryId={} message=\"{}\"", e.getQueryId(), e.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Query not found: " + e.getQueryId());
+    }
+
     @ExceptionHandler(QueryStorageException.class)
     public ResponseEntity<String> handleStorageError(QueryStorageException e) {
         log.error("event=query_storage_failed type=server_error queryId={} message=\"{}\"", e.getQueryId(), e.getMessage(), e);
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error handling query file: " + e.getMessage());
     }
 
+    @ExceptionHandler(QueryIngestionRejectedException.class)
+    public ResponseEntity<String> handleIngestionRejectedError(QueryIngestionRejectedException e) {
+        log.warn("event=query_ingest_rejected type=warning queryId={} message=\"{}\"", e.getQueryId(), e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(e.getRetryAfterMillis()))
+                .body("Query ingestion is overloaded: " + e.getMessage());
+    }
+
     @ExceptionHandler(StorageInitializationException.class)
     public ResponseEntity<String> handleStorageInitError(StorageInitializationException e) {
         log.error("event=init_storage_failed type=server_error message=\"{}\"", e.getMessage(), e);
@@ -57,4 +91,9 @@ public class GlobalExceptionHandler {
         log.error("event=unexpected_exception type=server_error message=\"{}\"", e.getMessage(), e);
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Something went wrong: " + e.getMessage());
     }
+
+    // Retry-After takes whole seconds, rounded up and at least 1
+    private static String retryAfterSeconds(long retryAfterMillis) {
+        return String.valueOf(Math.max(1, (retryAfterMillis + 999) / 1000));
+    }
 }
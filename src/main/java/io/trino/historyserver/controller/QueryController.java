@@ -5,24 +5,45 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.trino.historyserver.common.GlobalProperties;
+import io.trino.historyserver.dto.ParsedQueryEvent;
+import io.trino.historyserver.dto.QueryIngestionStatus;
 import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.ingest.BatchIngestionProperties;
+import io.trino.historyserver.ingest.IngestionResult;
+import io.trino.historyserver.ingest.QueryIngestor;
 import io.trino.historyserver.service.QueryService;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
+import io.trino.historyserver.storage.StoredQueryFile;
 import io.trino.historyserver.dto.QueryReferenceFactory;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 @Slf4j
 @RestController
@@ -32,14 +53,17 @@ import org.springframework.web.bind.annotation.RestController;
 public class QueryController
 {
     private final QueryService queryService;
+    private final QueryIngestor queryIngestor;
     private final QueryReferenceFactory queryReferenceFactory;
     private final GlobalProperties globalProps;
+    private final BatchIngestionProperties batchProps;
 
     @PostMapping
     @Operation(
             summary = "Create a new query record",
             description = "Stores a completed Trino query event in the history server. " +
-                         "The query data should be in JSON format as received from Trino's query completion event."
+                         "The query data should be in JSON format as received from Trino's query completion event. " +
+                         "When asynchronous ingestion is enabled, the event is queued and 202 is returned immediately."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -52,47 +76,213 @@ public class QueryController
                             )
                     )
             ),
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Query event accepted for asynchronous ingestion",
+                    content = @Content(
+                            mediaType = "text/plain",
+                            examples = @ExampleObject(
+                                    value = "Query 20231201_123456_00001_abcde was accepted for ingestion."
+                            )
+                    )
+            ),
             @ApiResponse(
                     responseCode = "400",
                     description = "Invalid query event data",
                     content = @Content(mediaType = "text/plain")
             ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Ingestion queue is full, the event should be retried later",
+                    content = @Content(mediaType = "text/plain")
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Internal server error during query creation",
                     content = @Content(mediaType = "text/plain")
             )
     })
-    public String createQuery(
-            @Parameter(
-                    description = "JSON string containing the completed query event data from Trino",
-                    required = true,
-                    example = """
-                            {
-                              "queryId": "20231201_123456_00001_abcde",
-                              "query": "SELECT * FROM my_table LIMIT 10",
-                              "state": "FINISHED",
-                              "createTime": "2023-12-01T12:34:56.789Z",
-                              "endTime": "2023-12-01T12:34:57.123Z"
-                            }
-                            """
+    @RequestBody(
+            description = "JSON QueryCompletedEvent sent by Trino's HTTP event listener. " +
+                          "It is read as a byte stream and only parsed up to metadata.queryId.",
+            required = true,
+            content = @Content(
+                    mediaType = "application/json",
+                    examples = @ExampleObject(
+                            value = """
+                                    {
+                                      "metadata": {
+                                        "queryId": "20231201_123456_00001_abcde",
+                                        "query": "SELECT * FROM my_table LIMIT 10",
+                                        "queryState": "FINISHED"
+                                      },
+                                      "createTime": "2023-12-01T12:34:56.789Z",
+                                      "endTime": "2023-12-01T12:34:57.123Z"
+                                    }
+                                    """
+                    )
             )
-            @RequestBody String queryCompletedJson, 
+    )
+    public Mono<ResponseEntity<String>> createQuery(
+            @Parameter(hidden = true) InputStream queryCompletedEvent,
             HttpServletRequest request)
     {
-        QueryReference queryRef = queryReferenceFactory.create(queryCompletedJson, request);
+        QueryReference queryRef = queryReferenceFactory.create(queryCompletedEvent, request);
 
         log.info("event=received_query_complete_event queryId={} coordinator={}",
                 queryRef.queryId(),
                 queryRef.coordinatorUrl());
 
-        queryService.createQuery(queryRef, globalProps.getEnvironment());
-        log.info("event=create_query_succeeded queryId={}", queryRef.queryId());
+        // The servlet thread is released here, the response is written once ingestion completes
+        return queryIngestor.ingest(queryRef, globalProps.getEnvironment())
+                .map(result -> {
+                    if (result == IngestionResult.ACCEPTED) {
+                        log.info("event=query_ingest_accepted queryId={}", queryRef.queryId());
+                        return ResponseEntity.accepted().body(String.format(
+                                "Query %s was accepted for ingestion.",
+                                queryRef.queryId()
+                        ));
+                    }
+
+                    log.info("event=create_query_succeeded queryId={}", queryRef.queryId());
+                    return ResponseEntity.ok(String.format(
+                            "Query %s was successfully created.",
+                            queryRef.queryId()
+                    ));
+                });
+    }
+
+    @PostMapping("/batch")
+    @Operation(
+            summary = "Create query records from a batch of events",
+            description = "Stores several completed Trino query events sent in one request, either as a JSON array " +
+                         "or as newline-delimited JSON (NDJSON). All events must come from the coordinator named in " +
+                         "the X-Trino-Coordinator-Url header. Returns one status per event, in request order."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Batch processed, see the per-event status",
+                    content = @Content(
+                            mediaType = "application/json",
+                            examples = @ExampleObject(
+                                    value = """
+                                            [
+                                              {"queryId": "20231201_123456_00001_abcde", "status": "CREATED"},
+                                              {"status": "INVALID", "message": "Missing 'queryId' field"},
+                                              {"queryId": "20231201_123456_00003_abcde", "status": "FAILED", "message": "..."}
+                                            ]
+                                            """
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Malformed JSON, missing coordinator header, or batch too large",
+                    content = @Content(mediaType = "text/plain")
+            )
+    })
+    @RequestBody(
+            description = "JSON array or NDJSON stream of QueryCompletedEvents",
+            required = true,
+            content = {
+                    @Content(mediaType = "application/json"),
+                    @Content(mediaType = "application/x-ndjson")
+            }
+    )
+    public Mono<ResponseEntity<List<QueryIngestionStatus>>> createQueries(
+            @Parameter(hidden = true) InputStream queryCompletedEvents,
+            HttpServletRequest request)
+    {
+        List<ParsedQueryEvent> events = queryReferenceFactory.createBatch(queryCompletedEvents, request, batchProps.getMaxSize());
+        List<QueryReference> queryRefs = events.stream()
+                .filter(ParsedQueryEvent::isValid)
+                .map(ParsedQueryEvent::queryRef)
+                .toList();
+
+        log.info("event=received_query_complete_batch count={} valid={} coordinator={}",
+                events.size(),
+                queryRefs.size(),
+                request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER));
+
+        Mono<List<QueryIngestionStatus>> ingested = queryRefs.isEmpty()
+                ? Mono.just(List.of())
+                : queryIngestor.ingestBatch(queryRefs, globalProps.getEnvironment());
+
+        return ingested.map(ingestedStatuses -> {
+            Iterator<QueryIngestionStatus> ingestedIterator = ingestedStatuses.iterator();
+            List<QueryIngestionStatus> statuses = events.stream()
+                    .map(event -> event.isValid()
+                            ? ingestedIterator.next()
+                            : new QueryIngestionStatus(null, IngestionResult.INVALID, event.error()))
+                    .toList();
+
+            log.info("event=create_query_batch_completed count={}", statuses.size());
+            return ResponseEntity.ok(statuses);
+        });
+    }
+
+    @PostMapping("/bulk-read")
+    @Operation(
+            summary = "Retrieve many queries by ID",
+            description = "Fetches up to storage.bulk-read.max-ids stored queries in one request and streams them back " +
+                         "in request order. Responds with newline-delimited JSON when the Accept header asks for " +
+                         "application/x-ndjson, and with a JSON array otherwise. Queries that are not stored are " +
+                         "returned with \"found\": false."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "One entry per requested query ID",
+                    content = {
+                            @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            value = """
+                                                    [
+                                                      {"queryId": "20231201_123456_00001_abcde", "found": true, "query": {"queryId": "20231201_123456_00001_abcde"}},
+                                                      {"queryId": "20231201_123456_00002_abcde", "found": false}
+                                                    ]
+                                                    """
+                                    )
+                            ),
+                            @Content(mediaType = BulkQueryResponseWriter.NDJSON_MEDIA_TYPE)
+                    }
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "No query IDs, blank query IDs, or too many query IDs",
+                    content = @Content(mediaType = "text/plain")
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Internal server error during query retrieval",
+                    content = @Content(mediaType = "text/plain")
+            )
+    })
+    @RequestBody(
+            description = "JSON array of query IDs",
+            required = true,
+            content = @Content(
+                    mediaType = "application/json",
+                    examples = @ExampleObject(value = "[\"20231201_123456_00001_abcde\", \"20231201_123456_00002_abcde\"]")
+            )
+    )
+    public void getQueries(
+            @org.springframework.web.bind.annotation.RequestBody List<String> queryIds,
+            HttpServletRequest request,
+            HttpServletResponse response)
+            throws IOException
+    {
+        log.info("event=received_query_bulk_read_event count={}", queryIds.size());
+
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        boolean ndjson = accept != null && accept.contains(BulkQueryResponseWriter.NDJSON_MEDIA_TYPE);
+        BulkQueryResponseWriter writer = new BulkQueryResponseWriter(response, ndjson);
 
-        return String.format(
-                "Query %s was successfully created.",
-                queryRef.queryId()
-        );
+        queryService.getQueries(queryIds, globalProps.getEnvironment(), writer::write);
+        writer.finish();
+        log.info("event=get_query_bulk_read_succeeded count={}", queryIds.size());
     }
 
     @GetMapping
@@ -113,7 +303,8 @@ public class QueryController
     @Operation(
             summary = "Retrieve a query by ID",
             description = "Fetches a stored Trino query by its unique identifier. " +
-                         "Returns the complete query data in JSON format."
+                         "Returns the complete query data in JSON format. A query stored compressed is sent as stored, " +
+                         "with Content-Encoding zstd or gzip, when the Accept-Encoding header allows that encoding."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -151,22 +342,53 @@ public class QueryController
                     content = @Content(mediaType = "text/plain")
             )
     })
-    public ResponseEntity<String> getQuery(
+    public ResponseEntity<?> getQuery(
             @Parameter(
                     description = "Unique identifier of the query to retrieve",
                     required = true,
                     example = "20231201_123456_00001_abcde"
             )
-            @PathVariable String queryId)
+            @PathVariable String queryId,
+            @Parameter(hidden = true)
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding)
     {
         log.info("event=received_query_read_event queryId={}", queryId);
 
-        String queryJson = queryService.getQuery(queryId, globalProps.getEnvironment());
-        log.info("event=get_query_succeeded queryId={}", queryId);
+        Set<ContentEncoding> accepted = ContentEncoding.parseAccepted(acceptEncoding);
+        Optional<StoredQueryFile> queryFile = queryService.findQueryFile(queryId, globalProps.getEnvironment(), accepted);
+        if (queryFile.isPresent()) {
+            log.info("event=get_query_succeeded queryId={} encoding={} source=file", queryId, queryFile.get().encoding().headerValue());
+            return fileResponse(queryFile.get());
+        }
+
+        // A client that accepts no compression gets the plain JSON read
+        EncodedQuery encodedQuery = accepted.equals(Set.of(ContentEncoding.IDENTITY))
+                ? EncodedQuery.identity(queryService.getQuery(queryId, globalProps.getEnvironment()))
+                : queryService.getEncodedQuery(queryId, globalProps.getEnvironment(), accepted);
+        log.info("event=get_query_succeeded queryId={} encoding={}", queryId, encodedQuery.encoding().headerValue());
+
+        return queryResponse(encodedQuery.encoding()).body(encodedQuery.content());
+    }
 
-        return ResponseEntity
+    // Streamed in small buffers from the channel opened when the file was looked up, so the whole document is never
+    // held in memory, and a rewrite or move of the stored file since then cannot change what is sent after the
+    // Content-Length. The message converter closes the stream, and with it the channel, once the body is written.
+    private static ResponseEntity<?> fileResponse(StoredQueryFile queryFile)
+    {
+        return queryResponse(queryFile.encoding())
+                .contentLength(queryFile.sizeBytes())
+                .body(new InputStreamResource(Channels.newInputStream(queryFile.channel())));
+    }
+
+    private static ResponseEntity.BodyBuilder queryResponse(ContentEncoding encoding)
+    {
+        ResponseEntity.BodyBuilder response = ResponseEntity
                 .ok()
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(queryJson);
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (encoding != ContentEncoding.IDENTITY) {
+            response.header(HttpHeaders.CONTENT_ENCODING, encoding.headerValue());
+        }
+        return response;
     }
 }
@@ -0,0 +1,20 @@
+package io.trino.historyserver.dto;
+
+// A single event of a batch: either a valid query reference or the reason the event was rejected
+public record ParsedQueryEvent(QueryReference queryRef, String error)
+{
+    public static ParsedQueryEvent valid(QueryReference queryRef)
+    {
+        return new ParsedQueryEvent(queryRef, null);
+    }
+
+    public static ParsedQueryEvent invalid(String error)
+    {
+        return new ParsedQueryEvent(null, error);
+    }
+
+    public boolean isValid()
+    {
+        return queryRef != null;
+    }
+}
@@ -0,0 +1,13 @@
+package io.trino.historyserver.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.trino.historyserver.ingest.IngestionResult;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record QueryIngestionStatus(String queryId, IngestionResult status, String message)
+{
+    public static QueryIngestionStatus of(String queryId, IngestionResult status)
+    {
+        return new QueryIngestionStatus(queryId, status, null);
+    }
+}
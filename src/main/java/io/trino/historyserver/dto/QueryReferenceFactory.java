@@ -1,16 +1,25 @@
 package io.trino.historyserver.dto;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.trino.historyserver.exception.InvalidQueryEventException;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 public class QueryReferenceFactory
 {
     public static final String COORDINATOR_CUSTOM_HEADER = "X-Trino-Coordinator-Url";
+    private static final String METADATA_FIELD = "metadata";
+    private static final String QUERY_ID_FIELD = "queryId";
+
     private final ObjectMapper objectMapper;
 
     public QueryReferenceFactory(ObjectMapper objectMapper)
@@ -18,28 +27,134 @@ public class QueryReferenceFactory
         this.objectMapper = objectMapper;
     }
 
-    public QueryReference create(String queryCompletedJson, HttpServletRequest request)
+    public QueryReference create(InputStream queryCompletedEvent, HttpServletRequest request)
     {
-        String queryId = extractQueryId(queryCompletedJson);
+        // The header is checked first so that invalid requests are rejected before reading a large body
         String coordinatorUrl = extractCoordinatorUrl(request);
+        String queryId = extractQueryId(queryCompletedEvent);
         return new QueryReference(queryId, coordinatorUrl);
     }
 
-    private String extractQueryId(String json)
+    // Accepts either a JSON array of events or newline-delimited events (NDJSON).
+    // An event without a query ID is reported as invalid, while malformed JSON rejects the whole batch.
+    public List<ParsedQueryEvent> createBatch(InputStream queryCompletedEvents, HttpServletRequest request, int maxEvents)
     {
-        try {
-            JsonNode root = objectMapper.readTree(json);
-            String queryId = root.at("/metadata/queryId").asText();
-            if (queryId.isBlank()) {
+        String coordinatorUrl = extractCoordinatorUrl(request);
+        List<ParsedQueryEvent> events = new ArrayList<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(queryCompletedEvents)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (events.size() == maxEvents) {
+                    throw new InvalidQueryEventException(
+                            String.format("Batch exceeds the maximum of %d events", maxEvents)
+                    );
+                }
+                events.add(parseEvent(parser, coordinatorUrl));
+                token = parser.nextToken();
+            }
+        }
+        catch (IOException e) {
+            throw new InvalidQueryEventException("Malformed JSON");
+        }
+
+        if (events.isEmpty()) {
+            throw new InvalidQueryEventException("Batch contains no events");
+        }
+        return events;
+    }
+
+    private String extractQueryId(InputStream eventBody)
+    {
+        try (JsonParser parser = objectMapper.getFactory().createParser(eventBody)) {
+            String queryId = findQueryId(parser);
+            if (queryId == null || queryId.isBlank()) {
                 throw new InvalidQueryEventException("Missing 'queryId' field");
             }
+            // Discard the rest of the event through a small buffer, so the connection can be kept alive
+            eventBody.transferTo(OutputStream.nullOutputStream());
             return queryId;
         }
-        catch (JsonProcessingException e) {
+        catch (IOException e) {
             throw new InvalidQueryEventException("Malformed JSON");
         }
     }
 
+    // Streams the event only up to /metadata/queryId, skipping unrelated subtrees without building a tree.
+    // Content after the query ID is never read, so it is not validated either.
+    private static String findQueryId(JsonParser parser)
+            throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (METADATA_FIELD.equals(field) && value == JsonToken.START_OBJECT) {
+                return findScalarField(parser, QUERY_ID_FIELD);
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    private static String findScalarField(JsonParser parser, String name)
+            throws IOException
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals(field)) {
+                return value.isScalarValue() ? parser.getValueAsString() : null;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    private static ParsedQueryEvent parseEvent(JsonParser parser, String coordinatorUrl)
+            throws IOException
+    {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return ParsedQueryEvent.invalid("Event is not a JSON object");
+        }
+
+        String queryId = readQueryIdAndSkipEvent(parser);
+        if (queryId == null || queryId.isBlank()) {
+            return ParsedQueryEvent.invalid("Missing 'queryId' field");
+        }
+        return ParsedQueryEvent.valid(new QueryReference(queryId, coordinatorUrl));
+    }
+
+    // Unlike findQueryId, consumes the whole event so the parser is positioned on the next one
+    private static String readQueryIdAndSkipEvent(JsonParser parser)
+            throws IOException
+    {
+        String queryId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!METADATA_FIELD.equals(field) || value != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String metadataField = parser.currentName();
+                JsonToken metadataValue = parser.nextToken();
+                if (queryId == null && QUERY_ID_FIELD.equals(metadataField) && metadataValue.isScalarValue()) {
+                    queryId = parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+        }
+        return queryId;
+    }
+
     private String extractCoordinatorUrl(HttpServletRequest request)
     {
         String url = request.getHeader(COORDINATOR_CUSTOM_HEADER);
@@ -0,0 +1,11 @@
+package io.trino.historyserver.exception;
+
+// A coordinator answered a fetch with a 5xx status, unlike a 4xx this counts against the coordinator's health
+public class CoordinatorServerException
+        extends QueryFetchException
+{
+    public CoordinatorServerException(String message, String queryId)
+    {
+        super(message, queryId);
+    }
+}
@@ -0,0 +1,19 @@
+package io.trino.historyserver.exception;
+
+import lombok.Getter;
+
+// Raised without contacting the coordinator when its circuit is open or its concurrency limit is reached
+@Getter
+public class CoordinatorUnavailableException
+        extends QueryFetchException
+{
+    private final String coordinatorUrl;
+    private final long retryAfterMillis;
+
+    public CoordinatorUnavailableException(String message, String queryId, String coordinatorUrl, long retryAfterMillis)
+    {
+        super(message, queryId);
+        this.coordinatorUrl = coordinatorUrl;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
@@ -0,0 +1,10 @@
+package io.trino.historyserver.exception;
+
+public class InvalidQueryRequestException
+        extends RuntimeException
+{
+    public InvalidQueryRequestException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,23 @@
+package io.trino.historyserver.exception;
+
+import lombok.Getter;
+
+// Raised when an event cannot be queued, the caller is told to retry after retryAfterMillis
+@Getter
+public class QueryIngestionRejectedException
+        extends QueryException
+{
+    private final long retryAfterMillis;
+
+    public QueryIngestionRejectedException(String message, String queryId, long retryAfterMillis)
+    {
+        super(message, queryId);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public QueryIngestionRejectedException(String message, String queryId, long retryAfterMillis, Throwable cause)
+    {
+        super(message, queryId, cause);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
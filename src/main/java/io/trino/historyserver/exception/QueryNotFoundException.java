@@ -0,0 +1,16 @@
+package io.trino.historyserver.exception;
+
+// Raised by storage handlers when the requested query is not stored. It is final, so it is never retried.
+public class QueryNotFoundException
+        extends QueryStorageException
+{
+    public QueryNotFoundException(String message, String queryId)
+    {
+        super(message, queryId);
+    }
+
+    public QueryNotFoundException(String message, String queryId, Throwable cause)
+    {
+        super(message, queryId, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package io.trino.historyserver.exception;
+
+public class QuerySpoolException
+        extends QueryException
+{
+    public QuerySpoolException(String message, String queryId)
+    {
+        super(message, queryId);
+    }
+
+    public QuerySpoolException(String message, String queryId, Throwable cause)
+    {
+        super(message, queryId, cause);
+    }
+}
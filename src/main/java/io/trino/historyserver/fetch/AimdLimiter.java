@@ -0,0 +1,64 @@
+package io.trino.historyserver.fetch;
+
+// Additive increase, multiplicative decrease concurrency limit. The limit grows by one per successful fetch while
+// at least half of it is in use, and shrinks by backoff-ratio on every failed or slow fetch.
+class AimdLimiter
+{
+    private final CoordinatorGuardProperties props;
+
+    private double limit;
+    private int inFlight;
+
+    AimdLimiter(CoordinatorGuardProperties props)
+    {
+        this.props = props;
+        this.limit = props.getInitialLimit();
+    }
+
+    synchronized boolean tryAcquire()
+    {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void onSuccess(long latencyMillis)
+    {
+        inFlight--;
+        if (latencyMillis > props.getSlowCallThresholdMillis()) {
+            decrease();
+        }
+        else if (inFlight * 2 >= limit) {
+            limit = Math.min(limit + 1, props.getMaxLimit());
+        }
+    }
+
+    synchronized void onFailure()
+    {
+        inFlight--;
+        decrease();
+    }
+
+    // Cancelled fetches and client errors say nothing about the coordinator's capacity
+    synchronized void onIgnore()
+    {
+        inFlight--;
+    }
+
+    synchronized int getLimit()
+    {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight()
+    {
+        return inFlight;
+    }
+
+    private void decrease()
+    {
+        limit = Math.max(limit * props.getBackoffRatio(), props.getMinLimit());
+    }
+}
@@ -0,0 +1,122 @@
+package io.trino.historyserver.fetch;
+
+import java.util.function.LongSupplier;
+
+// Count based circuit breaker. It opens when the failure rate over the last sliding-window-size calls reaches the
+// threshold, rejects calls for open-duration-millis, then lets half-open-calls trial calls through: the circuit
+// closes if they all succeed and opens again on the first failure.
+class CircuitBreaker
+{
+    enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CoordinatorGuardProperties props;
+    private final LongSupplier clock;
+    private final boolean[] outcomes;
+
+    private State state = State.CLOSED;
+    private long openedAtMillis;
+    private int calls;
+    private int failures;
+    private int next;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    CircuitBreaker(CoordinatorGuardProperties props, LongSupplier clock)
+    {
+        this.props = props;
+        this.clock = clock;
+        this.outcomes = new boolean[props.getSlidingWindowSize()];
+    }
+
+    // Returns 0 when the call may proceed, otherwise the milliseconds until the circuit lets calls through again
+    synchronized long tryAcquire()
+    {
+        if (state == State.OPEN) {
+            long remaining = openedAtMillis + props.getOpenDurationMillis() - clock.getAsLong();
+            if (remaining > 0) {
+                return remaining;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = props.getHalfOpenCalls();
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return props.getOpenDurationMillis();
+            }
+            halfOpenPermits--;
+        }
+        return 0;
+    }
+
+    synchronized void onSuccess()
+    {
+        if (state == State.HALF_OPEN) {
+            halfOpenSuccesses++;
+            if (halfOpenSuccesses == props.getHalfOpenCalls()) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure()
+    {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (calls >= props.getMinimumCalls() && failures >= props.getFailureRateThreshold() * calls) {
+            open();
+        }
+    }
+
+    // A trial call that ended without an outcome gives its permit back
+    synchronized void onIgnore()
+    {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits++;
+        }
+    }
+
+    synchronized State getState()
+    {
+        return state;
+    }
+
+    private void record(boolean failed)
+    {
+        if (calls == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        }
+        else {
+            calls++;
+        }
+        outcomes[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open()
+    {
+        state = State.OPEN;
+        openedAtMillis = clock.getAsLong();
+    }
+
+    private void close()
+    {
+        state = State.CLOSED;
+        calls = 0;
+        failures = 0;
+        next = 0;
+    }
+}
@@ -0,0 +1,185 @@
+package io.trino.historyserver.fetch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.handler.timeout.TimeoutException;
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.CoordinatorServerException;
+import io.trino.historyserver.exception.CoordinatorUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.PrematureCloseException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Isolates coordinators from each other: every coordinator gets its own adaptive concurrency limit and circuit breaker,
+// so a slow or failing coordinator is rejected fast instead of tying up connections and threads needed by healthy ones
+@Slf4j
+@Component
+public class CoordinatorGuard
+{
+    public static final String LIMIT_METRIC = "trino.coordinator.concurrency.limit";
+    public static final String IN_FLIGHT_METRIC = "trino.coordinator.concurrency.in.flight";
+    public static final String CIRCUIT_STATE_METRIC = "trino.coordinator.circuit.state";
+    public static final String REJECTED_METRIC = "trino.coordinator.rejected";
+
+    private final CoordinatorGuardProperties props;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CoordinatorState> coordinators = new ConcurrentHashMap<>();
+
+    public CoordinatorGuard(CoordinatorGuardProperties props, MeterRegistry meterRegistry)
+    {
+        this.props = props;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Mono<T> protect(QueryReference queryRef, Mono<T> fetch)
+    {
+        if (!props.isEnabled()) {
+            return fetch;
+        }
+        return Mono.defer(() -> {
+            Permit permit = acquire(queryRef);
+            return fetch.doOnSuccess(ignored -> permit.release(null))
+                    .doOnError(permit::release)
+                    .doOnCancel(permit::cancel);
+        });
+    }
+
+    public <T> Flux<T> protect(QueryReference queryRef, Flux<T> fetch)
+    {
+        if (!props.isEnabled()) {
+            return fetch;
+        }
+        return Flux.defer(() -> {
+            Permit permit = acquire(queryRef);
+            return fetch.doOnComplete(() -> permit.release(null))
+                    .doOnError(permit::release)
+                    .doOnCancel(permit::cancel);
+        });
+    }
+
+    CoordinatorState state(String coordinatorUrl)
+    {
+        return coordinators.computeIfAbsent(coordinatorUrl, this::createState);
+    }
+
+    private Permit acquire(QueryReference queryRef)
+    {
+        String coordinatorUrl = queryRef.coordinatorUrl();
+        CoordinatorState state = state(coordinatorUrl);
+
+        long retryAfterMillis = state.breaker().tryAcquire();
+        if (retryAfterMillis > 0) {
+            state.rejectedOpen().increment();
+            throw new CoordinatorUnavailableException(
+                    String.format("Circuit for coordinator %s is open, query %s was not fetched.", coordinatorUrl, queryRef.queryId()),
+                    queryRef.queryId(), coordinatorUrl, retryAfterMillis
+            );
+        }
+        if (!state.limiter().tryAcquire()) {
+            state.breaker().onIgnore();
+            state.rejectedLimit().increment();
+            throw new CoordinatorUnavailableException(
+                    String.format("Coordinator %s is at its concurrency limit of %d, query %s was not fetched.",
+                            coordinatorUrl, state.limiter().getLimit(), queryRef.queryId()),
+                    queryRef.queryId(), coordinatorUrl, props.getLimitRetryAfterMillis()
+            );
+        }
+        return new Permit(coordinatorUrl, state, System.nanoTime());
+    }
+
+    private CoordinatorState createState(String coordinatorUrl)
+    {
+        AimdLimiter limiter = new AimdLimiter(props);
+        CircuitBreaker breaker = new CircuitBreaker(props, System::currentTimeMillis);
+
+        Gauge.builder(LIMIT_METRIC, limiter, AimdLimiter::getLimit)
+                .description("Current adaptive concurrency limit of fetches to the coordinator")
+                .tag("coordinator", coordinatorUrl)
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, limiter, AimdLimiter::getInFlight)
+                .description("Fetches to the coordinator currently in flight")
+                .tag("coordinator", coordinatorUrl)
+                .register(meterRegistry);
+        Gauge.builder(CIRCUIT_STATE_METRIC, breaker, b -> b.getState().ordinal())
+                .description("Circuit state of the coordinator: 0 closed, 1 open, 2 half open")
+                .tag("coordinator", coordinatorUrl)
+                .register(meterRegistry);
+
+        return new CoordinatorState(limiter, breaker, rejectedCounter(coordinatorUrl, "circuit_open"), rejectedCounter(coordinatorUrl, "limit"));
+    }
+
+    private Counter rejectedCounter(String coordinatorUrl, String reason)
+    {
+        return Counter.builder(REJECTED_METRIC)
+                .description("Fetches rejected without contacting the coordinator")
+                .tag("coordinator", coordinatorUrl)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    static boolean isCoordinatorFailure(Throwable e)
+    {
+        return e instanceof CoordinatorServerException
+                || e instanceof WebClientRequestException
+                || e instanceof TimeoutException
+                || e instanceof java.util.concurrent.TimeoutException
+                || e instanceof PrematureCloseException;
+    }
+
+    record CoordinatorState(AimdLimiter limiter, CircuitBreaker breaker, Counter rejectedOpen, Counter rejectedLimit) {}
+
+    private static final class Permit
+    {
+        private final String coordinatorUrl;
+        private final CoordinatorState state;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(String coordinatorUrl, CoordinatorState state, long startNanos)
+        {
+            this.coordinatorUrl = coordinatorUrl;
+            this.state = state;
+            this.startNanos = startNanos;
+        }
+
+        void release(Throwable error)
+        {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (error == null) {
+                state.limiter().onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                state.breaker().onSuccess();
+            }
+            else if (isCoordinatorFailure(error)) {
+                CircuitBreaker.State before = state.breaker().getState();
+                state.limiter().onFailure();
+                state.breaker().onFailure();
+                if (before != CircuitBreaker.State.OPEN && state.breaker().getState() == CircuitBreaker.State.OPEN) {
+                    log.warn("event=coordinator_circuit_open type=warning coordinator={} message=\"{}\"", coordinatorUrl, error.getMessage());
+                }
+            }
+            else {
+                state.limiter().onIgnore();
+                state.breaker().onSuccess();
+            }
+        }
+
+        void cancel()
+        {
+            if (released.compareAndSet(false, true)) {
+                state.limiter().onIgnore();
+                state.breaker().onIgnore();
+            }
+        }
+    }
+}
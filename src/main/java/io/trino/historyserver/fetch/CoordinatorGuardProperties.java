@@ -0,0 +1,43 @@
+package io.trino.historyserver.fetch;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "fetch.coordinator")
+public class CoordinatorGuardProperties
+{
+    private boolean enabled = true;
+
+    // AIMD concurrency limit, applied to each coordinator separately
+    private int initialLimit = 20;
+
+    private int minLimit = 1;
+
+    private int maxLimit = 200;
+
+    // Multiplicative decrease applied on a failed or slow fetch
+    private double backoffRatio = 0.9;
+
+    // A successful fetch slower than this is treated like a failure by the limiter
+    private long slowCallThresholdMillis = 10000;
+
+    // Retry delay suggested for a fetch rejected because the coordinator is at its limit
+    private long limitRetryAfterMillis = 1000;
+
+    // Circuit breaker over the last sliding-window-size fetches of a coordinator
+    private double failureRateThreshold = 0.5;
+
+    private int slidingWindowSize = 50;
+
+    private int minimumCalls = 20;
+
+    private long openDurationMillis = 30000;
+
+    // Trial fetches let through while half open, the circuit closes when all of them succeed
+    private int halfOpenCalls = 3;
+}
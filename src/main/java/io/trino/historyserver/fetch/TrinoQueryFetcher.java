@@ -1,15 +1,18 @@
 package io.trino.historyserver.fetch;
 
 import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.CoordinatorServerException;
 import io.trino.historyserver.exception.ExpiredSessionException;
 import io.trino.historyserver.exception.QueryFetchException;
 import io.trino.historyserver.auth.SessionAwareHttpClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Slf4j
@@ -20,9 +23,16 @@ public class TrinoQueryFetcher
     public static final String TRINO_UI_QUERY_PATH = "/ui/api/query";
 
     private final SessionAwareHttpClient sessionAwareHttpClient;
+    private final CoordinatorGuard coordinatorGuard;
 
     public String fetchQuery(QueryReference queryRef)
             throws QueryFetchException
+    {
+        return fetchQueryAsync(queryRef).block();
+    }
+
+    // Non-blocking variant of fetchQuery, the response is handled on the HTTP client's event loop
+    public Mono<String> fetchQueryAsync(QueryReference queryRef)
     {
         String url = queryRef.coordinatorUrl() + TRINO_UI_QUERY_PATH + "/" + queryRef.queryId();
         String baseMessage = String.format(
@@ -31,22 +41,57 @@ public class TrinoQueryFetcher
                 queryRef.coordinatorUrl()
         );
 
-        String queryJson = sessionAwareHttpClient.runWithSessionRetry(queryRef,
-                client -> client.get()
-                        .uri(url)
-                        .retrieve()
-                        .onStatus(HttpStatusCode::isError,
-                                response -> createQueryFetchException(
-                                        response,
-                                        baseMessage,
-                                        queryRef
+        return coordinatorGuard.protect(queryRef, sessionAwareHttpClient.exchangeWithSessionRetry(queryRef,
+                        client -> client.get()
+                                .uri(url)
+                                .retrieve()
+                                .onStatus(HttpStatusCode::isError,
+                                        response -> createQueryFetchException(
+                                                response,
+                                                baseMessage,
+                                                queryRef
+                                        )
                                 )
-                        )
-                        .bodyToMono(String.class)
+                                .bodyToMono(String.class)
+                ))
+                .switchIfEmpty(Mono.error(() -> new QueryFetchException(
+                        String.format("%s cause=empty response body", baseMessage),
+                        queryRef.queryId()
+                )))
+                .doOnNext(queryJson -> log.info("event=query_fetch_succeeded type=success queryId={} coordinator={}",
+                        queryRef.queryId(), queryRef.coordinatorUrl()));
+    }
+
+    // Streams the query JSON as it arrives from the coordinator, without aggregating it into a String.
+    // The caller owns the emitted buffers and must release them.
+    public Flux<DataBuffer> fetchQueryStream(QueryReference queryRef)
+    {
+        String url = queryRef.coordinatorUrl() + TRINO_UI_QUERY_PATH + "/" + queryRef.queryId();
+        String baseMessage = String.format(
+                "Error while fetching query %s data from coordinator %s.",
+                queryRef.queryId(),
+                queryRef.coordinatorUrl()
         );
 
-        log.info("event=query_fetch_succeeded type=success queryId={} coordinator={}", queryRef.queryId(), queryRef.coordinatorUrl());
-        return queryJson;
+        return coordinatorGuard.protect(queryRef, sessionAwareHttpClient.streamWithSessionRetry(queryRef,
+                        client -> client.get()
+                                .uri(url)
+                                .retrieve()
+                                .onStatus(HttpStatusCode::isError,
+                                        response -> createQueryFetchException(
+                                                response,
+                                                baseMessage,
+                                                queryRef
+                                        )
+                                )
+                                .bodyToFlux(DataBuffer.class)
+                ))
+                .switchIfEmpty(Flux.error(() -> new QueryFetchException(
+                        String.format("%s cause=empty response body", baseMessage),
+                        queryRef.queryId()
+                )))
+                .doOnComplete(() -> log.info("event=query_fetch_succeeded type=success queryId={} coordinator={}",
+                        queryRef.queryId(), queryRef.coordinatorUrl()));
     }
 
     private Mono<QueryFetchException> createQueryFetchException(
@@ -61,10 +106,12 @@ public class TrinoQueryFetcher
 
         return response.bodyToMono(String.class)
                 .defaultIfEmpty(baseMessage)
-                .map(msg -> new QueryFetchException(
-                                String.format("%s cause=%s", baseMessage, msg),
-                                queryRef.queryId()
-                        )
-                );
+                .map(msg -> {
+                    String message = String.format("%s cause=%s", baseMessage, msg);
+                    if (response.statusCode().is5xxServerError()) {
+                        return new CoordinatorServerException(message, queryRef.queryId());
+                    }
+                    return new QueryFetchException(message, queryRef.queryId());
+                });
     }
 }
\ No newline at end of file
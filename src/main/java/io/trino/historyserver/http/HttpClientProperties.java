@@ -0,0 +1,52 @@
+package io.trino.historyserver.http;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "http.client")
+public class HttpClientProperties
+{
+    // Connection pool, applied to each coordinator (remote address) separately
+    private int maxConnectionsPerCoordinator = 50;
+
+    private int pendingAcquireMaxCount = 500;
+
+    private long pendingAcquireTimeoutMillis = 10000;
+
+    private long maxIdleTimeMillis = 30000;
+
+    private long maxLifeTimeMillis = 300000;
+
+    private long evictInBackgroundMillis = 30000;
+
+    private boolean keepAlive = true;
+
+    // Timeouts
+    private int connectTimeoutMillis = 5000;
+
+    private long responseTimeoutMillis = 30000;
+
+    private long readTimeoutMillis = 30000;
+
+    // Largest response body buffered in memory, large query JSONs easily exceed the 256KB default
+    private int maxInMemorySizeBytes = 32 * 1024 * 1024;
+
+    // Negotiate HTTP/2 through ALPN on HTTPS coordinators, falling back to HTTP/1.1
+    private boolean http2Enabled = false;
+
+    private boolean poolMetricsEnabled = true;
+
+    // Ask coordinators for a compressed response and decompress it while it is read
+    private boolean compressionEnabled = true;
+
+    // Sent as Accept-Encoding, zstd is only decoded when zstd-jni is on the classpath
+    private String acceptEncoding = "zstd, gzip";
+
+    // Record coordinator response sizes on the wire and after decompression
+    private boolean responseSizeMetricsEnabled = true;
+}
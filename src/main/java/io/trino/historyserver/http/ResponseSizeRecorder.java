@@ -0,0 +1,72 @@
+package io.trino.historyserver.http;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.AttributeKey;
+
+import java.util.Locale;
+
+// Placed on both sides of the HttpContentDecompressor of a coordinator connection. The wire side sees the body as sent
+// by the coordinator, the decoded side sees it after decompression. Both record one sample per response, tagged with
+// the Content-Encoding of the response, so compressed and uncompressed sizes can be compared per fetch.
+class ResponseSizeRecorder
+        extends ChannelInboundHandlerAdapter
+{
+    public static final String RESPONSE_BYTES_METRIC = "trino.fetch.response.bytes";
+    public static final String WIRE_STAGE = "wire";
+    public static final String DECODED_STAGE = "decoded";
+
+    private static final String IDENTITY_ENCODING = "identity";
+    private static final AttributeKey<String> CONTENT_ENCODING = AttributeKey.valueOf(ResponseSizeRecorder.class.getName() + ".contentEncoding");
+
+    private final String stage;
+    private final MeterRegistry meterRegistry;
+
+    private long bytes;
+
+    ResponseSizeRecorder(String stage, MeterRegistry meterRegistry)
+    {
+        this.stage = stage;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg)
+            throws Exception
+    {
+        // The decompressor drops Content-Encoding, so the decoded side reads the encoding the wire side saw
+        if (msg instanceof HttpResponse response && WIRE_STAGE.equals(stage)) {
+            String encoding = response.headers().get(HttpHeaderNames.CONTENT_ENCODING);
+            ctx.channel().attr(CONTENT_ENCODING).set(encoding == null ? IDENTITY_ENCODING : encoding.trim().toLowerCase(Locale.ROOT));
+        }
+        if (msg instanceof HttpContent content) {
+            bytes += content.content().readableBytes();
+        }
+        if (msg instanceof LastHttpContent) {
+            record(ctx);
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    private void record(ChannelHandlerContext ctx)
+    {
+        // Bodiless responses (login redirects, 204s) say nothing about compression
+        if (bytes > 0) {
+            String encoding = ctx.channel().attr(CONTENT_ENCODING).get();
+            DistributionSummary.builder(RESPONSE_BYTES_METRIC)
+                    .description("Size of coordinator response bodies, on the wire and after decompression")
+                    .baseUnit("bytes")
+                    .tag("stage", stage)
+                    .tag("encoding", encoding == null ? IDENTITY_ENCODING : encoding)
+                    .register(meterRegistry)
+                    .record(bytes);
+        }
+        bytes = 0;
+    }
+}
@@ -1,16 +1,121 @@
 package io.trino.historyserver.http;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.trino.historyserver.auth.ClientCertificateSessionManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.Http11SslContextSpec;
+import reactor.netty.http.Http2SslContextSpec;
+import reactor.netty.NettyPipeline;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
 @Configuration
 public class WebClientConfiguration
 {
+    public static final String CONNECTION_POOL_NAME = "trino-coordinator";
+    private static final String READ_TIMEOUT_HANDLER = "coordinatorReadTimeout";
+    private static final String WIRE_SIZE_RECORDER = "coordinatorWireSize";
+    private static final String DECODED_SIZE_RECORDER = "coordinatorDecodedSize";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider coordinatorConnectionProvider(HttpClientProperties props)
+    {
+        return ConnectionProvider.builder(CONNECTION_POOL_NAME)
+                .maxConnections(props.getMaxConnectionsPerCoordinator())
+                .pendingAcquireMaxCount(props.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(props.getPendingAcquireTimeoutMillis()))
+                .maxIdleTime(Duration.ofMillis(props.getMaxIdleTimeMillis()))
+                .maxLifeTime(Duration.ofMillis(props.getMaxLifeTimeMillis()))
+                .evictInBackground(Duration.ofMillis(props.getEvictInBackgroundMillis()))
+                .metrics(props.isPoolMetricsEnabled())
+                .build();
+    }
 
     @Bean
-    public WebClient webClient()
+    public WebClient webClient(
+            ConnectionProvider coordinatorConnectionProvider,
+            HttpClientProperties props,
+            ObjectProvider<ClientCertificateSessionManager> clientCertificate,
+            MeterRegistry meterRegistry)
     {
-        return WebClient.create();
+        HttpClient httpClient = HttpClient.create(coordinatorConnectionProvider)
+                .keepAlive(props.isKeepAlive())
+                .option(ChannelOption.SO_KEEPALIVE, props.isKeepAlive())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, props.getConnectTimeoutMillis())
+                .responseTimeout(Duration.ofMillis(props.getResponseTimeoutMillis()))
+                // Added per request, so idle pooled connections are not closed by the read timeout
+                .doOnRequest((request, connection) -> connection.addHandlerLast(
+                        READ_TIMEOUT_HANDLER,
+                        new ReadTimeoutHandler(props.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                ));
+
+        if (props.isHttp2Enabled()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        boolean customDecompression = props.isCompressionEnabled() && !props.isHttp2Enabled();
+        if (customDecompression) {
+            // The decompressor is installed per connection instead of through compress(true), which only asks for gzip,
+            // and the size recorders are placed around it to compare the bytes on the wire with the decoded body
+            httpClient = httpClient.doOnConnected(connection -> installDecompression(connection.channel().pipeline(), props, meterRegistry));
+        }
+        else if (props.isCompressionEnabled()) {
+            // HTTP/2 streams do not go through the HTTP/1.1 codec, fall back to Reactor Netty's gzip support
+            httpClient = httpClient.compress(true);
+        }
+
+        // With trino.auth.type=certificate, every TLS connection to a coordinator presents the client certificate
+        ClientCertificateSessionManager certificateManager = clientCertificate.getIfAvailable();
+        if (certificateManager != null) {
+            httpClient = httpClient.secure(spec -> spec.sslContext(props.isHttp2Enabled()
+                    ? Http2SslContextSpec.forClient().configure(certificateManager::configureSslContext)
+                    : Http11SslContextSpec.forClient().configure(certificateManager::configureSslContext)));
+        }
+
+        log.info("event=http_client_configured type=success maxConnectionsPerCoordinator={} connectTimeoutMillis={} responseTimeoutMillis={} http2={} acceptEncoding=\"{}\"",
+                props.getMaxConnectionsPerCoordinator(),
+                props.getConnectTimeoutMillis(),
+                props.getResponseTimeoutMillis(),
+                props.isHttp2Enabled(),
+                customDecompression ? props.getAcceptEncoding() : props.isCompressionEnabled() ? "gzip" : "identity");
+
+        WebClient.Builder builder = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(props.getMaxInMemorySizeBytes()));
+        if (customDecompression) {
+            builder.defaultHeader(HttpHeaders.ACCEPT_ENCODING, props.getAcceptEncoding());
+        }
+        return builder.build();
+    }
+
+    private static void installDecompression(ChannelPipeline pipeline, HttpClientProperties props, MeterRegistry meterRegistry)
+    {
+        if (pipeline.get(NettyPipeline.HttpCodec) == null || pipeline.get(NettyPipeline.HttpDecompressor) != null) {
+            return;
+        }
+
+        // Decodes chunk by chunk, the compressed body is never buffered as a whole
+        pipeline.addAfter(NettyPipeline.HttpCodec, NettyPipeline.HttpDecompressor, new HttpContentDecompressor());
+        if (props.isResponseSizeMetricsEnabled()) {
+            pipeline.addBefore(NettyPipeline.HttpDecompressor, WIRE_SIZE_RECORDER,
+                    new ResponseSizeRecorder(ResponseSizeRecorder.WIRE_STAGE, meterRegistry));
+            pipeline.addAfter(NettyPipeline.HttpDecompressor, DECODED_SIZE_RECORDER,
+                    new ResponseSizeRecorder(ResponseSizeRecorder.DECODED_STAGE, meterRegistry));
+        }
     }
 }
@@ -0,0 +1,243 @@
+package io.trino.historyserver.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.trino.historyserver.dto.QueryIngestionStatus;
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.CoordinatorUnavailableException;
+import io.trino.historyserver.exception.QueryIngestionRejectedException;
+import io.trino.historyserver.exception.QuerySpoolException;
+import io.trino.historyserver.service.QueryService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "ingestion.mode", havingValue = "async")
+@RequiredArgsConstructor
+public class AsyncQueryIngestor
+        implements QueryIngestor
+{
+    public static final String QUEUE_DEPTH_METRIC = "ingestion.queue.depth";
+    public static final String REJECTED_METRIC = "ingestion.rejected";
+    public static final String DEFERRED_METRIC = "ingestion.deferred";
+
+    private final AsyncQueryIngestorProperties props;
+    private final QueryService queryService;
+    private final QueryEventSpool spool;
+    private final MeterRegistry meterRegistry;
+    private final Environment springEnvironment;
+
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService deferralScheduler;
+    private Counter rejectedCounter;
+    private Counter deferredCounter;
+
+    @PostConstruct
+    public void start()
+    {
+        executor = new ThreadPoolExecutor(
+                props.getWorkers(),
+                props.getWorkers(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(props.getQueueCapacity()),
+                workerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        deferralScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("query-ingest-deferral").daemon().factory()
+        );
+
+        Gauge.builder(QUEUE_DEPTH_METRIC, executor, e -> e.getQueue().size())
+                .description("Number of accepted query events waiting to be fetched and stored")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder(REJECTED_METRIC)
+                .description("Number of query events rejected because the ingestion queue was full")
+                .register(meterRegistry);
+        deferredCounter = Counter.builder(DEFERRED_METRIC)
+                .description("Number of query events put back on the queue because their coordinator was unavailable")
+                .register(meterRegistry);
+
+        log.info("event=ingestion_workers_started type=success workers={} queueCapacity={} virtualThreads={}",
+                props.getWorkers(), props.getQueueCapacity(), Threading.VIRTUAL.isActive(springEnvironment));
+
+        List<SpooledQueryEvent> recovered = spool.recover();
+        if (!recovered.isEmpty()) {
+            executor.prestartAllCoreThreads();
+            Thread.ofPlatform().name("query-spool-replay").daemon().start(() -> replay(recovered));
+        }
+    }
+
+    @Override
+    public Mono<IngestionResult> ingest(QueryReference queryRef, String environment)
+    {
+        return Mono.fromCallable(() -> enqueue(queryRef, environment));
+    }
+
+    @Override
+    public Mono<List<QueryIngestionStatus>> ingestBatch(List<QueryReference> queryRefs, String environment)
+    {
+        return Mono.fromCallable(() -> queryRefs.stream()
+                .map(queryRef -> enqueueForBatch(queryRef, environment))
+                .toList());
+    }
+
+    public int getQueueDepth()
+    {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        // Deferred events stay in the spool and are replayed after restart
+        deferralScheduler.shutdownNow();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(props.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                int dropped = executor.shutdownNow().size();
+                log.warn("event=ingestion_shutdown_timeout type=warning dropped={}", dropped);
+            }
+        }
+        catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Spooling and queueing are local operations, so they run on the caller's thread
+    private IngestionResult enqueue(QueryReference queryRef, String environment)
+            throws QueryIngestionRejectedException
+    {
+        long sequence = spool.append(queryRef, environment);
+
+        try {
+            executor.execute(() -> process(sequence, queryRef, environment, 0));
+        }
+        catch (RejectedExecutionException e) {
+            // The caller is told to retry, so the spooled copy must not be replayed as well
+            spool.acknowledge(sequence);
+            rejectedCounter.increment();
+            throw new QueryIngestionRejectedException(
+                    String.format(
+                            "Ingestion queue is full (capacity: %d), query %s was not accepted.",
+                            props.getQueueCapacity(), queryRef.queryId()
+                    ),
+                    queryRef.queryId(), props.getRejectedRetryAfterMillis(), e
+            );
+        }
+        return IngestionResult.ACCEPTED;
+    }
+
+    private QueryIngestionStatus enqueueForBatch(QueryReference queryRef, String environment)
+    {
+        try {
+            return QueryIngestionStatus.of(queryRef.queryId(), enqueue(queryRef, environment));
+        }
+        catch (QueryIngestionRejectedException e) {
+            return new QueryIngestionStatus(queryRef.queryId(), IngestionResult.REJECTED, e.getMessage());
+        }
+        catch (QuerySpoolException e) {
+            log.error("event=query_spool_failed type=server_error queryId={} message=\"{}\"", queryRef.queryId(), e.getMessage(), e);
+            return new QueryIngestionStatus(queryRef.queryId(), IngestionResult.FAILED, e.getMessage());
+        }
+    }
+
+    // Workers spend most of their time waiting on the coordinator and on storage, so with
+    // spring.threads.virtual.enabled=true they run on virtual threads and can be raised cheaply
+    private ThreadFactory workerThreadFactory()
+    {
+        if (Threading.VIRTUAL.isActive(springEnvironment)) {
+            return Thread.ofVirtual().name("query-ingest-", 0).factory();
+        }
+        return Thread.ofPlatform().name("query-ingest-", 0).factory();
+    }
+
+    private void replay(List<SpooledQueryEvent> events)
+    {
+        log.info("event=spool_replay_started type=success events={}", events.size());
+        try {
+            // Enqueue directly so that replay waits for free capacity instead of being rejected
+            for (SpooledQueryEvent event : events) {
+                if (executor.isShutdown()) {
+                    return;
+                }
+                executor.getQueue().put(() -> process(event.sequence(), event.queryRef(), event.environment(), 0));
+            }
+        }
+        catch (InterruptedException e) {
+            log.warn("event=spool_replay_interrupted type=warning");
+            Thread.currentThread().interrupt();
+            return;
+        }
+        log.info("event=spool_replay_succeeded type=success events={}", events.size());
+    }
+
+    // The event stays spooled while deferred, so it is not lost if the server stops before the retry
+    private void defer(long sequence, QueryReference queryRef, String environment, int deferrals, long delayMillis)
+    {
+        deferredCounter.increment();
+        log.warn("event=async_ingest_deferred type=warning queryId={} coordinator={} deferrals={} delayMillis={}",
+                queryRef.queryId(), queryRef.coordinatorUrl(), deferrals, delayMillis);
+
+        try {
+            deferralScheduler.schedule(() -> {
+                try {
+                    executor.execute(() -> process(sequence, queryRef, environment, deferrals));
+                }
+                catch (RejectedExecutionException e) {
+                    if (!executor.isShutdown()) {
+                        // The queue is full, wait again without counting it as another deferral
+                        defer(sequence, queryRef, environment, deferrals, delayMillis);
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            log.info("event=async_ingest_deferral_dropped type=success queryId={} message=\"shutting down, left in spool\"", queryRef.queryId());
+        }
+    }
+
+    private void process(long sequence, QueryReference queryRef, String environment, int deferrals)
+    {
+        try {
+            queryService.createQuery(queryRef, environment);
+            log.info("event=create_query_succeeded queryId={}", queryRef.queryId());
+        }
+        catch (CoordinatorUnavailableException e) {
+            if (deferrals < props.getMaxDeferrals()) {
+                defer(sequence, queryRef, environment, deferrals + 1, e.getRetryAfterMillis());
+                return;
+            }
+            log.error("event=async_ingest_failed type=server_error queryId={} coordinator={} deferrals={} message=\"{}\"",
+                    queryRef.queryId(), queryRef.coordinatorUrl(), deferrals, e.getMessage());
+        }
+        catch (RuntimeException e) {
+            log.error("event=async_ingest_failed type=server_error queryId={} coordinator={} message=\"{}\"",
+                    queryRef.queryId(), queryRef.coordinatorUrl(), e.getMessage(), e);
+            if (Thread.currentThread().isInterrupted()) {
+                // Interrupted by shutdown: keep the event spooled so it is replayed after restart
+                return;
+            }
+        }
+        spool.acknowledge(sequence);
+    }
+}
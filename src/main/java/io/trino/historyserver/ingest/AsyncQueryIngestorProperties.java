@@ -0,0 +1,27 @@
+package io.trino.historyserver.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConditionalOnProperty(name = "ingestion.mode", havingValue = "async")
+@ConfigurationProperties(prefix = "ingestion.async")
+public class AsyncQueryIngestorProperties
+{
+    private int queueCapacity = 1000;
+
+    private int workers = 4;
+
+    private long shutdownTimeoutMillis = 30000;
+
+    // Times an event is put back on the queue because its coordinator's circuit was open or at its limit
+    private int maxDeferrals = 10;
+
+    // Retry-After sent with the 429 for an event rejected because the queue is full
+    private long rejectedRetryAfterMillis = 1000;
+}
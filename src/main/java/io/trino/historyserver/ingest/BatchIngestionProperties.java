@@ -0,0 +1,17 @@
+package io.trino.historyserver.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "ingestion.batch")
+public class BatchIngestionProperties
+{
+    private int maxSize = 500;
+
+    private int fetchConcurrency = 8;
+}
@@ -0,0 +1,33 @@
+package io.trino.historyserver.ingest;
+
+import io.trino.historyserver.dto.QueryIngestionStatus;
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.service.QueryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Service
+@ConditionalOnProperty(name = "ingestion.mode", havingValue = "sync", matchIfMissing = true)
+@RequiredArgsConstructor
+public class DirectQueryIngestor
+        implements QueryIngestor
+{
+    private final QueryService queryService;
+
+    @Override
+    public Mono<IngestionResult> ingest(QueryReference queryRef, String environment)
+    {
+        return queryService.createQueryAsync(queryRef, environment)
+                .thenReturn(IngestionResult.CREATED);
+    }
+
+    @Override
+    public Mono<List<QueryIngestionStatus>> ingestBatch(List<QueryReference> queryRefs, String environment)
+    {
+        return queryService.createQueriesAsync(queryRefs, environment);
+    }
+}
@@ -0,0 +1,392 @@
+package io.trino.historyserver.ingest;
+
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.QuerySpoolException;
+import io.trino.historyserver.exception.StorageInitializationException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only spool of accepted query events, split into size-bounded segment files.
+ * <p>
+ * Each record is {@code [payload length][CRC32C][sequence, queryId, coordinatorUrl, environment]}.
+ * Workers may finish out of order, so the checkpoint stores the lowest sequence that is still pending;
+ * every record below it is done, and segments that only hold such records are deleted.
+ * Acknowledged records above the checkpoint can be replayed once more after a crash (at-least-once delivery).
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "ingestion.spool.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class FileQueryEventSpool
+        implements QueryEventSpool
+{
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int NULL_STRING_LENGTH = -1;
+
+    private final QueryEventSpoolProperties props;
+
+    private final NavigableSet<Long> pending = new ConcurrentSkipListSet<>();
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final List<SpooledQueryEvent> recovered = new ArrayList<>();
+    private final Object checkpointLock = new Object();
+
+    private Path spoolDir;
+    private FileChannel activeChannel;
+    private long activeSegmentBytes;
+    private long nextSequence;
+    private long checkpointedWatermark;
+    private ScheduledExecutorService checkpointScheduler;
+
+    @PostConstruct
+    public void open()
+    {
+        spoolDir = Path.of(props.getDir());
+
+        try {
+            Files.createDirectories(spoolDir);
+            checkpointedWatermark = readCheckpoint();
+            nextSequence = checkpointedWatermark;
+            scanSegments();
+            openSegment(nextSequence);
+        }
+        catch (IOException e) {
+            throw new StorageInitializationException(
+                    String.format(
+                            "Failed to open query event spool in directory \"%s\".",
+                            spoolDir
+                    ), e
+            );
+        }
+
+        checkpointScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("query-spool-checkpoint").daemon().factory()
+        );
+        checkpointScheduler.scheduleWithFixedDelay(
+                this::checkpointQuietly,
+                props.getCheckpointIntervalMillis(),
+                props.getCheckpointIntervalMillis(),
+                TimeUnit.MILLISECONDS
+        );
+        log.info("event=spool_open_succeeded type=success path=\"{}\" recovered={} nextSequence={}", spoolDir, recovered.size(), nextSequence);
+    }
+
+    @Override
+    public synchronized long append(QueryReference queryRef, String environment)
+            throws QuerySpoolException
+    {
+        long sequence = nextSequence;
+        ByteBuffer record = encode(sequence, queryRef, environment);
+
+        try {
+            if (activeSegmentBytes > 0 && activeSegmentBytes + record.remaining() > props.getSegmentSizeBytes()) {
+                rotate(sequence);
+            }
+            int length = record.remaining();
+            while (record.hasRemaining()) {
+                activeChannel.write(record);
+            }
+            if (props.isFsync()) {
+                activeChannel.force(false);
+            }
+            activeSegmentBytes += length;
+        }
+        catch (IOException e) {
+            discardPartialRecord(sequence);
+            throw new QuerySpoolException(
+                    String.format(
+                            "Failed to append query %s to spool directory \"%s\".",
+                            queryRef.queryId(), spoolDir
+                    ),
+                    queryRef.queryId(), e
+            );
+        }
+
+        nextSequence++;
+        pending.add(sequence);
+        return sequence;
+    }
+
+    @Override
+    public void acknowledge(long sequence)
+    {
+        pending.remove(sequence);
+    }
+
+    @Override
+    public synchronized List<SpooledQueryEvent> recover()
+    {
+        List<SpooledQueryEvent> events = List.copyOf(recovered);
+        recovered.clear();
+        return events;
+    }
+
+    public void checkpoint()
+            throws IOException
+    {
+        synchronized (checkpointLock) {
+            long watermark = currentWatermark();
+            if (watermark <= checkpointedWatermark) {
+                return;
+            }
+
+            Path checkpoint = spoolDir.resolve(CHECKPOINT_FILE);
+            Path temp = spoolDir.resolve(CHECKPOINT_FILE + ".tmp");
+            Files.writeString(temp, Long.toString(watermark));
+            Files.move(temp, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            checkpointedWatermark = watermark;
+
+            deleteCompletedSegments(watermark);
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        checkpointScheduler.shutdownNow();
+        checkpointQuietly();
+        synchronized (this) {
+            try {
+                activeChannel.close();
+            }
+            catch (IOException e) {
+                log.warn("event=spool_close_failed type=warning path=\"{}\" message=\"{}\"", spoolDir, e.getMessage());
+            }
+        }
+    }
+
+    private synchronized long currentWatermark()
+    {
+        return pending.isEmpty() ? nextSequence : pending.first();
+    }
+
+    private void checkpointQuietly()
+    {
+        try {
+            checkpoint();
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("event=spool_checkpoint_failed type=warning path=\"{}\" message=\"{}\"", spoolDir, e.getMessage());
+        }
+    }
+
+    private void deleteCompletedSegments(long watermark)
+            throws IOException
+    {
+        // A segment is complete once the segment after it starts at or below the watermark
+        for (Map.Entry<Long, Path> entry : segments.headMap(segments.lastKey(), false).entrySet()) {
+            Long nextStart = segments.higherKey(entry.getKey());
+            if (nextStart == null || nextStart > watermark) {
+                break;
+            }
+            Files.deleteIfExists(entry.getValue());
+            segments.remove(entry.getKey());
+            log.debug("event=spool_segment_deleted type=success path=\"{}\"", entry.getValue());
+        }
+    }
+
+    private long readCheckpoint()
+            throws IOException
+    {
+        Path checkpoint = spoolDir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(checkpoint).trim());
+    }
+
+    private void scanSegments()
+            throws IOException
+    {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            files.filter(FileQueryEventSpool::isSegment)
+                    .forEach(path -> segments.put(segmentStart(path), path));
+        }
+
+        for (Path segment : segments.values()) {
+            readSegment(segment);
+        }
+    }
+
+    private void readSegment(Path segment)
+            throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    log.warn("event=spool_segment_truncated type=warning path=\"{}\" position={}", segment, buffer.position());
+                    return;
+                }
+
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                if (checksum(payload) != checksum) {
+                    log.warn("event=spool_record_corrupted type=warning path=\"{}\" position={}", segment, buffer.position());
+                    return;
+                }
+
+                SpooledQueryEvent event = decode(payload);
+                nextSequence = Math.max(nextSequence, event.sequence() + 1);
+                if (event.sequence() >= checkpointedWatermark) {
+                    recovered.add(event);
+                    pending.add(event.sequence());
+                }
+            }
+        }
+    }
+
+    // A failed write can leave part of the record behind, and recovery stops reading a segment at the first torn
+    // record, so nothing may be appended after it. The segment is cut back to its last complete record, or, if that
+    // fails as well, left behind for a new one. The failed record may then be whole on disk and replayed, so its
+    // sequence is not handed out again.
+    private void discardPartialRecord(long sequence)
+    {
+        try {
+            activeChannel.truncate(activeSegmentBytes);
+            return;
+        }
+        catch (IOException e) {
+            log.warn("event=spool_truncate_failed type=warning path=\"{}\" message=\"{}\"", spoolDir, e.getMessage());
+        }
+
+        try {
+            nextSequence = sequence + 1;
+            rotate(nextSequence);
+        }
+        catch (IOException e) {
+            log.warn("event=spool_rotate_failed type=warning path=\"{}\" message=\"{}\"", spoolDir, e.getMessage());
+        }
+    }
+
+    private void rotate(long firstSequence)
+            throws IOException
+    {
+        activeChannel.close();
+        openSegment(firstSequence);
+        log.debug("event=spool_segment_rotated type=success firstSequence={}", firstSequence);
+    }
+
+    private void openSegment(long firstSequence)
+            throws IOException
+    {
+        // Recovered segments are never appended to, so a torn record at their tail stays harmless.
+        // An existing segment starting at firstSequence holds no valid record and is safe to truncate.
+        Path segment = spoolDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        activeChannel = openChannel(segment);
+        activeSegmentBytes = 0;
+        segments.put(firstSequence, segment);
+    }
+
+    // Overridden in tests to fail writes
+    FileChannel openChannel(Path segment)
+            throws IOException
+    {
+        return FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static ByteBuffer encode(long sequence, QueryReference queryRef, String environment)
+    {
+        byte[] queryId = queryRef.queryId().getBytes(StandardCharsets.UTF_8);
+        byte[] coordinatorUrl = queryRef.coordinatorUrl().getBytes(StandardCharsets.UTF_8);
+        byte[] env = environment == null ? null : environment.getBytes(StandardCharsets.UTF_8);
+
+        int payloadLength = Long.BYTES
+                + Integer.BYTES + queryId.length
+                + Integer.BYTES + coordinatorUrl.length
+                + Integer.BYTES + (env == null ? 0 : env.length);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadLength);
+        record.putInt(payloadLength);
+        record.putInt(0);
+        record.putLong(sequence);
+        putBytes(record, queryId);
+        putBytes(record, coordinatorUrl);
+        putBytes(record, env);
+
+        record.putInt(Integer.BYTES, checksum(record.slice(RECORD_HEADER_BYTES, payloadLength)));
+        return record.flip();
+    }
+
+    private static SpooledQueryEvent decode(ByteBuffer payload)
+    {
+        long sequence = payload.getLong();
+        String queryId = getString(payload);
+        String coordinatorUrl = getString(payload);
+        String environment = getString(payload);
+        return new SpooledQueryEvent(sequence, new QueryReference(queryId, coordinatorUrl), environment);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes)
+    {
+        if (bytes == null) {
+            buffer.putInt(NULL_STRING_LENGTH);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        if (length == NULL_STRING_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer payload)
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static boolean isSegment(Path path)
+    {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long segmentStart(Path path)
+    {
+        String name = path.getFileName().toString();
+        String digits = name.substring(SEGMENT_PREFIX.length(), SEGMENT_PREFIX.length() + 20);
+        return Long.parseLong(digits);
+    }
+}
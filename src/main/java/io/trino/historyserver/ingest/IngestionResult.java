@@ -0,0 +1,15 @@
+package io.trino.historyserver.ingest;
+
+public enum IngestionResult
+{
+    // The query was fetched from the coordinator and persisted before returning
+    CREATED,
+    // The query was queued and will be fetched and persisted by a background worker
+    ACCEPTED,
+    // The event could not be parsed or has no query ID (batch ingestion only)
+    INVALID,
+    // The event was not queued because the ingestion queue is full (batch ingestion only)
+    REJECTED,
+    // Fetching or persisting the query failed (batch ingestion only)
+    FAILED
+}
@@ -0,0 +1,32 @@
+package io.trino.historyserver.ingest;
+
+import io.trino.historyserver.dto.QueryReference;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+@ConditionalOnProperty(name = "ingestion.spool.enabled", havingValue = "false", matchIfMissing = true)
+public class NoOpQueryEventSpool
+        implements QueryEventSpool
+{
+    private static final long UNSPOOLED_SEQUENCE = -1;
+
+    @Override
+    public long append(QueryReference queryRef, String environment)
+    {
+        return UNSPOOLED_SEQUENCE;
+    }
+
+    @Override
+    public void acknowledge(long sequence)
+    {
+    }
+
+    @Override
+    public List<SpooledQueryEvent> recover()
+    {
+        return List.of();
+    }
+}
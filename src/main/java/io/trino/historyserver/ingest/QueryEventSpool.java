@@ -0,0 +1,19 @@
+package io.trino.historyserver.ingest;
+
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.QuerySpoolException;
+
+import java.util.List;
+
+public interface QueryEventSpool
+{
+    // Durably records an accepted event and returns its sequence number
+    long append(QueryReference queryRef, String environment)
+            throws QuerySpoolException;
+
+    // Marks an event as fully processed, so it is not replayed after a restart
+    void acknowledge(long sequence);
+
+    // Returns the events that were accepted but not acknowledged before the last shutdown
+    List<SpooledQueryEvent> recover();
+}
@@ -0,0 +1,24 @@
+package io.trino.historyserver.ingest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConditionalOnProperty(name = "ingestion.spool.enabled", havingValue = "true")
+@ConfigurationProperties(prefix = "ingestion.spool")
+public class QueryEventSpoolProperties
+{
+    private String dir = "data/spool";
+
+    private long segmentSizeBytes = 64L * 1024 * 1024;
+
+    private long checkpointIntervalMillis = 1000;
+
+    // Force every append to the storage device. Without it, appends survive process restarts but not node crashes.
+    private boolean fsync = false;
+}
@@ -0,0 +1,17 @@
+package io.trino.historyserver.ingest;
+
+import io.trino.historyserver.dto.QueryIngestionStatus;
+import io.trino.historyserver.dto.QueryReference;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface QueryIngestor
+{
+    // Completes once the query is stored (sync mode) or queued (async mode), without holding the calling thread.
+    // Fails with a QueryException when the query can not be ingested.
+    Mono<IngestionResult> ingest(QueryReference queryRef, String environment);
+
+    // Emits one status per query reference, in the same order
+    Mono<List<QueryIngestionStatus>> ingestBatch(List<QueryReference> queryRefs, String environment);
+}
@@ -0,0 +1,6 @@
+package io.trino.historyserver.ingest;
+
+import io.trino.historyserver.dto.QueryReference;
+import lombok.NonNull;
+
+public record SpooledQueryEvent(long sequence, @NonNull QueryReference queryRef, String environment) {}
@@ -1,32 +1,233 @@
 package io.trino.historyserver.service;
 
+import io.trino.historyserver.dto.QueryIngestionStatus;
 import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.InvalidQueryRequestException;
+import io.trino.historyserver.exception.QueryStorageException;
 import io.trino.historyserver.fetch.TrinoQueryFetcher;
+import io.trino.historyserver.ingest.BatchIngestionProperties;
+import io.trino.historyserver.ingest.IngestionResult;
+import io.trino.historyserver.storage.BulkReadProperties;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
+import io.trino.historyserver.storage.StoredQueryFile;
 import io.trino.historyserver.storage.RetryingStorageHandler;
+import io.trino.historyserver.storage.RetryingStorageHandlerProperties;
+import io.trino.historyserver.storage.StorageNames;
+import io.trino.historyserver.util.TaskRetryExecutor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 @Slf4j
 @Service
 public class QueryService
 {
+    // Response buffers requested ahead of the storage write, this bounds the memory held per ingest
+    private static final int STREAM_PREFETCH_BUFFERS = 4;
+
     private final TrinoQueryFetcher trinoQueryFetcher;
     private final RetryingStorageHandler storageHandler;
+    private final RetryingStorageHandlerProperties retryProps;
+    private final TaskRetryExecutor taskRetryExecutor;
+    private final BatchIngestionProperties batchProps;
+    private final BulkReadProperties bulkReadProps;
+    private final Scheduler storageScheduler;
 
-    public QueryService(TrinoQueryFetcher trinoQueryFetcher, RetryingStorageHandler storageHandler)
+    public QueryService(
+            TrinoQueryFetcher trinoQueryFetcher,
+            RetryingStorageHandler storageHandler,
+            RetryingStorageHandlerProperties retryProps,
+            TaskRetryExecutor taskRetryExecutor,
+            BatchIngestionProperties batchProps,
+            BulkReadProperties bulkReadProps,
+            Scheduler storageScheduler)
     {
         this.trinoQueryFetcher = trinoQueryFetcher;
         this.storageHandler = storageHandler;
+        this.retryProps = retryProps;
+        this.taskRetryExecutor = taskRetryExecutor;
+        this.batchProps = batchProps;
+        this.bulkReadProps = bulkReadProps;
+        this.storageScheduler = storageScheduler;
     }
 
     public void createQuery(QueryReference queryRef, String environment)
     {
-        String queryJson = trinoQueryFetcher.fetchQuery(queryRef);
-        storageHandler.writeQuery(queryRef.queryId(), environment, queryJson);
+        createQueryAsync(queryRef, environment).block();
+    }
+
+    // Non-blocking variant of createQuery. The coordinator response is piped into storage as it arrives, so
+    // the document is never materialized as a String: the fetch runs on the HTTP client's event loop and the
+    // blocking storage write consumes it from the storage scheduler.
+    // A consumed body cannot be replayed, so a failed write is retried by fetching the query again.
+    public Mono<Void> createQueryAsync(QueryReference queryRef, String environment)
+    {
+        return taskRetryExecutor.retry(
+                "write_query_stream",
+                Mono.defer(() -> streamToStorage(queryRef, environment)),
+                retryProps.toRetryPolicy(),
+                QueryStorageException.class::isInstance
+        );
+    }
+
+    // Fetches all queries concurrently and persists them with a single batch write.
+    // Emits one status per query reference, in the same order.
+    public Mono<List<QueryIngestionStatus>> createQueriesAsync(List<QueryReference> queryRefs, String environment)
+    {
+        return Flux.fromIterable(queryRefs)
+                .flatMapSequential(this::fetch, batchProps.getFetchConcurrency())
+                .collectList()
+                .flatMap(fetched -> Mono.fromCallable(() -> storeAll(fetched, environment))
+                        .subscribeOn(storageScheduler));
     }
 
     public String getQuery(String queryId, String environment)
     {
         return storageHandler.readQuery(queryId, environment);
     }
+
+    // Returns the query as stored when it is stored compressed in one of the accepted encodings, and as JSON otherwise
+    public EncodedQuery getEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+    {
+        return storageHandler.readEncodedQuery(queryId, environment, accepted);
+    }
+
+    // The file a query can be sent from as it is, when the storage backend keeps it in a local file
+    public Optional<StoredQueryFile> findQueryFile(String queryId, String environment, Set<ContentEncoding> accepted)
+    {
+        return storageHandler.findQueryFile(queryId, environment, accepted);
+    }
+
+    // Reads the queries chunk by chunk and passes each one to the consumer in request order, without duplicates.
+    // The consumer receives a null query JSON for a query that is not stored.
+    public void getQueries(List<String> queryIds, String environment, BiConsumer<String, String> consumer)
+    {
+        if (queryIds == null || queryIds.isEmpty()) {
+            throw new InvalidQueryRequestException("No query IDs were requested");
+        }
+        if (queryIds.stream().anyMatch(queryId -> queryId == null || queryId.isBlank())) {
+            throw new InvalidQueryRequestException("Query IDs must not be blank");
+        }
+        // IDs from the request body, unlike path variables, may contain '/', and the filesystem backend uses them as file names
+        queryIds.stream()
+                .filter(queryId -> !StorageNames.isSafeName(queryId))
+                .findFirst()
+                .ifPresent(queryId -> {
+                    throw new InvalidQueryRequestException(String.format("Invalid query ID \"%s\"", queryId));
+                });
+        List<String> uniqueIds = List.copyOf(new LinkedHashSet<>(queryIds));
+        if (uniqueIds.size() > bulkReadProps.getMaxIds()) {
+            throw new InvalidQueryRequestException(String.format(
+                    "Requested %d query IDs, the maximum is %d",
+                    uniqueIds.size(), bulkReadProps.getMaxIds()
+            ));
+        }
+
+        for (int from = 0; from < uniqueIds.size(); from += bulkReadProps.getChunkSize()) {
+            List<String> chunk = uniqueIds.subList(from, Math.min(from + bulkReadProps.getChunkSize(), uniqueIds.size()));
+            Map<String, String> queryJsons = storageHandler.readQueries(chunk, environment);
+            chunk.forEach(queryId -> consumer.accept(queryId, queryJsons.get(queryId)));
+        }
+    }
+
+    private Mono<Void> streamToStorage(QueryReference queryRef, String environment)
+    {
+        // The storage handler only sees an I/O error when the fetch fails mid-stream, report the fetch failure instead
+        AtomicReference<Throwable> fetchError = new AtomicReference<>();
+        Flux<DataBuffer> body = trinoQueryFetcher.fetchQueryStream(queryRef)
+                .doOnError(fetchError::set);
+
+        return Mono.<Void>fromRunnable(() -> {
+                    try (InputStream queryJson = DataBufferUtils.subscriberInputStream(body, STREAM_PREFETCH_BUFFERS)) {
+                        storageHandler.writeQueryStream(queryRef.queryId(), environment, queryJson);
+                    }
+                    catch (IOException e) {
+                        throw new QueryStorageException(
+                                String.format("Failed to close query %s JSON stream.", queryRef.queryId()),
+                                queryRef.queryId(), e
+                        );
+                    }
+                })
+                .subscribeOn(storageScheduler)
+                .onErrorMap(e -> fetchError.get() != null ? fetchError.get() : e);
+    }
+
+    private Mono<FetchResult> fetch(QueryReference queryRef)
+    {
+        return trinoQueryFetcher.fetchQueryAsync(queryRef)
+                .map(queryJson -> new FetchResult(queryRef, queryJson, null))
+                .onErrorResume(e -> {
+                    log.error("event=query_fetch_failed type=server_error queryId={} message=\"{}\"", queryRef.queryId(), e.getMessage(), e);
+                    return Mono.just(new FetchResult(queryRef, null, e));
+                });
+    }
+
+    private List<QueryIngestionStatus> storeAll(List<FetchResult> fetched, String environment)
+    {
+        Map<String, String> queryJsons = new LinkedHashMap<>();
+        for (FetchResult result : fetched) {
+            if (result.error() == null) {
+                queryJsons.putIfAbsent(result.queryRef().queryId(), result.queryJson());
+            }
+        }
+        Map<String, RuntimeException> storageErrors = store(queryJsons, environment);
+
+        return fetched.stream()
+                .map(result -> {
+                    String queryId = result.queryRef().queryId();
+                    Throwable error = result.error() != null ? result.error() : storageErrors.get(queryId);
+                    if (error != null) {
+                        return new QueryIngestionStatus(queryId, IngestionResult.FAILED, error.getMessage());
+                    }
+                    return QueryIngestionStatus.of(queryId, IngestionResult.CREATED);
+                })
+                .toList();
+    }
+
+    private Map<String, RuntimeException> store(Map<String, String> queryJsons, String environment)
+    {
+        Map<String, RuntimeException> errors = new HashMap<>();
+        if (queryJsons.isEmpty()) {
+            return errors;
+        }
+
+        try {
+            storageHandler.writeQueries(queryJsons, environment);
+            return errors;
+        }
+        catch (QueryStorageException e) {
+            log.warn("event=batch_write_failed type=warning count={} message=\"{}\"", queryJsons.size(), e.getMessage());
+        }
+
+        // Fall back to single writes, so one bad query does not fail the whole batch
+        queryJsons.forEach((queryId, queryJson) -> {
+            try {
+                storageHandler.writeQuery(queryId, environment, queryJson);
+            }
+            catch (RuntimeException e) {
+                log.error("event=query_storage_failed type=server_error queryId={} message=\"{}\"", queryId, e.getMessage(), e);
+                errors.put(queryId, e);
+            }
+        });
+        return errors;
+    }
+
+    private record FetchResult(QueryReference queryRef, String queryJson, Throwable error) {}
 }
@@ -0,0 +1,19 @@
+package io.trino.historyserver.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "storage.bulk-read")
+public class BulkReadProperties
+{
+    private int maxIds = 1000;
+
+    private int chunkSize = 100;
+
+    private int concurrency = 16;
+}
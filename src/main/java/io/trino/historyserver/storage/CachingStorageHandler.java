@@ -0,0 +1,282 @@
+package io.trino.historyserver.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.trino.historyserver.exception.QueryStorageException;
+import io.trino.historyserver.storage.compression.QueryCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Keeps recently read and recently written query documents in memory, bounded by the total document size rather than
+// the number of documents. Writes populate the cache after the backend has stored the document, so queries that
+// were just ingested are served without a backend read. A document read compressed is cached as it was read and
+// decoded only when a caller needs JSON.
+@Slf4j
+public class CachingStorageHandler
+        implements QueryStorageHandler
+{
+    public static final String CACHE_NAME = "storage.query.cache";
+    public static final String SIZE_METRIC = "storage.query.cache.bytes";
+
+    private final QueryStorageHandler delegate;
+    private final QueryCodec codec;
+    private final long maxEntryBytes;
+    private final Cache<CacheKey, EncodedQuery> cache;
+
+    public CachingStorageHandler(QueryStorageHandler delegate, CachingStorageHandlerProperties props, QueryCodec codec, MeterRegistry meterRegistry)
+    {
+        this(delegate, props, codec, meterRegistry, Ticker.systemTicker());
+    }
+
+    CachingStorageHandler(QueryStorageHandler delegate, CachingStorageHandlerProperties props, QueryCodec codec, MeterRegistry meterRegistry, Ticker ticker)
+    {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.maxEntryBytes = props.getMaxEntryBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(props.getMaxSizeBytes())
+                .weigher((CacheKey key, EncodedQuery cached) -> cached.content().length)
+                .expireAfterWrite(Duration.ofMillis(props.getTtlMillis()))
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder(SIZE_METRIC, cache, c -> c.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Total size of the cached query documents")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String readQuery(String queryId, String environment)
+            throws QueryStorageException
+    {
+        CacheKey key = new CacheKey(environment, queryId);
+        String cached = cachedJson(key);
+        if (cached != null) {
+            log.debug("event=query_cache_hit type=success queryId={}", queryId);
+            return cached;
+        }
+
+        String queryJson = delegate.readQuery(queryId, environment);
+        put(key, queryJson);
+        return queryJson;
+    }
+
+    // Documents are cached in the encoding the backend returned them in, so compressed reads hit the cache as
+    // well. A cached document in an encoding the caller does not accept is decoded for it.
+    @Override
+    public EncodedQuery readEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        CacheKey key = new CacheKey(environment, queryId);
+        EncodedQuery cached = cache.getIfPresent(key);
+        if (cached != null) {
+            try {
+                EncodedQuery served = accepted.contains(cached.encoding()) ? cached : codec.forServing(cached.content(), accepted);
+                log.debug("event=query_cache_hit type=success queryId={}", queryId);
+                return served;
+            }
+            catch (IOException e) {
+                dropUndecodable(key, e);
+            }
+        }
+
+        EncodedQuery encodedQuery = delegate.readEncodedQuery(queryId, environment, accepted);
+        put(key, encodedQuery);
+        return encodedQuery;
+    }
+
+    // A cached document is served from memory, so the file is only looked up on a miss
+    @Override
+    public Optional<StoredQueryFile> findQueryFile(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        if (cache.getIfPresent(new CacheKey(environment, queryId)) != null) {
+            return Optional.empty();
+        }
+        return delegate.findQueryFile(queryId, environment, accepted);
+    }
+
+    @Override
+    public Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException
+    {
+        Map<String, String> queryJsons = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String queryId : queryIds) {
+            String cached = cachedJson(new CacheKey(environment, queryId));
+            if (cached != null) {
+                queryJsons.put(queryId, cached);
+            }
+            else {
+                misses.add(queryId);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Map<String, String> read = delegate.readQueries(misses, environment);
+            read.forEach((queryId, queryJson) -> put(new CacheKey(environment, queryId), queryJson));
+            queryJsons.putAll(read);
+        }
+        return queryJsons;
+    }
+
+    @Override
+    public void writeQuery(String queryId, String environment, String queryJson)
+            throws QueryStorageException
+    {
+        delegate.writeQuery(queryId, environment, queryJson);
+        put(new CacheKey(environment, queryId), queryJson);
+    }
+
+    @Override
+    public void writeQueryStream(String queryId, String environment, InputStream queryJson)
+            throws QueryStorageException
+    {
+        CacheKey key = new CacheKey(environment, queryId);
+        // A failed write may leave the old document in the backend, so the cached copy is dropped first
+        cache.invalidate(key);
+
+        CapturingInputStream captured = new CapturingInputStream(queryJson, maxEntryBytes);
+        delegate.writeQueryStream(queryId, environment, captured);
+        if (captured.isComplete()) {
+            put(key, new EncodedQuery(captured.content(), ContentEncoding.IDENTITY));
+        }
+    }
+
+    @Override
+    public void writeQueries(Map<String, String> queryJsons, String environment)
+            throws QueryStorageException
+    {
+        delegate.writeQueries(queryJsons, environment);
+        queryJsons.forEach((queryId, queryJson) -> put(new CacheKey(environment, queryId), queryJson));
+    }
+
+    private String cachedJson(CacheKey key)
+    {
+        EncodedQuery cached = cache.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+
+        try {
+            return cached.isIdentity() ? cached.toJson() : codec.decode(cached.content());
+        }
+        catch (IOException e) {
+            dropUndecodable(key, e);
+            return null;
+        }
+    }
+
+    // Only reachable for a document that was read intact but cannot be decoded, which the backend read then reports
+    private void dropUndecodable(CacheKey key, IOException e)
+    {
+        log.warn("event=query_cache_decode_failed type=warning queryId={} message=\"{}\"", key.queryId(), e.getMessage());
+        cache.invalidate(key);
+    }
+
+    private void put(CacheKey key, String queryJson)
+    {
+        if (queryJson != null) {
+            put(key, EncodedQuery.identity(queryJson));
+        }
+    }
+
+    private void put(CacheKey key, EncodedQuery encodedQuery)
+    {
+        if (encodedQuery.content().length <= maxEntryBytes) {
+            cache.put(key, encodedQuery);
+        }
+    }
+
+    private record CacheKey(String environment, String queryId) {}
+
+    // Copies the bytes the backend reads from the stream, up to the entry size limit
+    private static final class CapturingInputStream
+            extends FilterInputStream
+    {
+        private final long limit;
+        private ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private boolean ended;
+
+        private CapturingInputStream(InputStream in, long limit)
+        {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            int b = super.read();
+            if (b < 0) {
+                ended = true;
+            }
+            else if (content != null) {
+                content.write(b);
+                checkLimit();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException
+        {
+            int read = super.read(buffer, offset, length);
+            if (read < 0) {
+                ended = true;
+            }
+            else if (content != null) {
+                content.write(buffer, offset, read);
+                checkLimit();
+            }
+            return read;
+        }
+
+        // Skipped bytes are not seen, so the copy would be incomplete
+        @Override
+        public long skip(long n)
+                throws IOException
+        {
+            content = null;
+            return super.skip(n);
+        }
+
+        boolean isComplete()
+        {
+            return ended && content != null;
+        }
+
+        byte[] content()
+        {
+            return content.toByteArray();
+        }
+
+        private void checkLimit()
+        {
+            if (content.size() > limit) {
+                content = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.trino.historyserver.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "storage.cache")
+public class CachingStorageHandlerProperties
+{
+    private boolean enabled = false;
+
+    // Total size of the cached query JSON documents. When it is reached, the documents least likely to be read again are evicted
+    private long maxSizeBytes = 268435456;
+
+    // Documents larger than this are not cached, so a single huge query cannot flush the cache
+    private long maxEntryBytes = 8388608;
+
+    private long ttlMillis = 600000;
+}
@@ -0,0 +1,30 @@
+package io.trino.historyserver.storage;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Runs single-query reads in parallel for backends without a native multi-get.
+// The reader returns null for a missing query, which is left out of the result.
+public final class ConcurrentQueryReader
+{
+    private ConcurrentQueryReader() {}
+
+    public static Map<String, String> readAll(List<String> queryIds, int concurrency, Scheduler scheduler, Function<String, String> reader)
+    {
+        return Flux.fromIterable(queryIds)
+                .flatMap(
+                        queryId -> Mono.fromCallable(() -> reader.apply(queryId))
+                                .map(queryJson -> new SimpleEntry<>(queryId, queryJson))
+                                .subscribeOn(scheduler),
+                        concurrency
+                )
+                .collectMap(SimpleEntry::getKey, SimpleEntry::getValue)
+                .block();
+    }
+}
@@ -0,0 +1,64 @@
+package io.trino.historyserver.storage;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Encodings a stored query document can be in, named as in the HTTP Content-Encoding header
+public enum ContentEncoding
+{
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    ZSTD("zstd");
+
+    private final String headerValue;
+
+    ContentEncoding(String headerValue)
+    {
+        this.headerValue = headerValue;
+    }
+
+    public String headerValue()
+    {
+        return headerValue;
+    }
+
+    // Parses an Accept-Encoding header. Codings listed with q=0 are refused, identity is always accepted.
+    public static Set<ContentEncoding> parseAccepted(String acceptEncoding)
+    {
+        Set<ContentEncoding> accepted = EnumSet.of(IDENTITY);
+        if (acceptEncoding == null) {
+            return accepted;
+        }
+
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (isRefused(parts)) {
+                continue;
+            }
+            for (ContentEncoding encoding : values()) {
+                if (name.equals(encoding.headerValue) || name.equals("*")) {
+                    accepted.add(encoding);
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private static boolean isRefused(String[] parts)
+    {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) <= 0;
+                }
+                catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
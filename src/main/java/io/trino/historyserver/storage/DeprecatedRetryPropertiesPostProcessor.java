@@ -0,0 +1,54 @@
+package io.trino.historyserver.storage;
+
+import org.apache.commons.logging.Log;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.boot.logging.DeferredLogFactory;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Storage retries were configured under storage.* before they moved to storage.retry.*. The old keys still apply,
+// with a warning, unless the new key is set as well.
+public class DeprecatedRetryPropertiesPostProcessor
+        implements EnvironmentPostProcessor
+{
+    static final String PROPERTY_SOURCE_NAME = "deprecatedStorageRetryProperties";
+
+    private static final Map<String, String> DEPRECATED_PROPERTIES = Map.of(
+            "storage.max-retries", "storage.retry.max-retries",
+            "storage.backoff-millis", "storage.retry.backoff-millis"
+    );
+
+    private final Log log;
+
+    public DeprecatedRetryPropertiesPostProcessor(DeferredLogFactory logFactory)
+    {
+        this.log = logFactory.getLog(DeprecatedRetryPropertiesPostProcessor.class);
+    }
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application)
+    {
+        Binder binder = Binder.get(environment);
+        Map<String, Object> aliases = new HashMap<>();
+
+        DEPRECATED_PROPERTIES.forEach((deprecated, replacement) ->
+                binder.bind(deprecated, String.class).ifBound(value -> {
+                    log.warn(String.format(
+                            "event=deprecated_property_used type=warning property=\"%s\" replacement=\"%s\"",
+                            deprecated, replacement
+                    ));
+                    if (!binder.bind(replacement, String.class).isBound()) {
+                        aliases.put(replacement, value);
+                    }
+                }));
+
+        if (!aliases.isEmpty()) {
+            environment.getPropertySources().addLast(new MapPropertySource(PROPERTY_SOURCE_NAME, aliases));
+        }
+    }
+}
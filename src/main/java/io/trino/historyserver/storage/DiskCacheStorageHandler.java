@@ -0,0 +1,441 @@
+package io.trino.historyserver.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.trino.historyserver.exception.QueryStorageException;
+import io.trino.historyserver.exception.StorageInitializationException;
+import io.trino.historyserver.storage.compression.QueryCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+// Read-through cache of query documents on local disk, for backends where every read is a remote request (S3).
+// Each document is one file, dir/<environment>/<queryId>.json, installed with an atomic move so a reader never
+// sees a partial file. Documents read compressed are cached as they were read; the codec recognizes the format
+// from the file's first bytes. The index is rebuilt from the directory on startup, and the total size is held under
+// max-size-bytes with CLOCK eviction: a hit marks its entry, and the hand deletes the first unmarked entry it
+// reaches, clearing marks on the way.
+@Slf4j
+public class DiskCacheStorageHandler
+        implements QueryStorageHandler
+{
+    public static final String HITS_METRIC = "storage.disk.cache.hits";
+    public static final String MISSES_METRIC = "storage.disk.cache.misses";
+    public static final String EVICTIONS_METRIC = "storage.disk.cache.evictions";
+    public static final String SIZE_METRIC = "storage.disk.cache.bytes";
+
+    private static final String FILE_EXTENSION = ".json";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final QueryStorageHandler delegate;
+    private final QueryCodec codec;
+    private final Path dir;
+    private final long maxSizeBytes;
+    private final long maxEntryBytes;
+    private final Map<CacheKey, Entry> index = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    // Bumped by every invalidation of a key hashing to the stripe. A read that missed the cache only installs what it
+    // read when its stripe is unchanged, so a document rewritten while the read was in flight is not cached stale.
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    // Guarded by this, together with every change to the index. Installs move their file into place before taking it.
+    private final Deque<Entry> clock = new ArrayDeque<>();
+    private long sizeBytes;
+
+    public DiskCacheStorageHandler(QueryStorageHandler delegate, DiskCacheStorageHandlerProperties props, QueryCodec codec, MeterRegistry meterRegistry)
+    {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.dir = Path.of(props.getDir());
+        this.maxSizeBytes = props.getMaxSizeBytes();
+        this.maxEntryBytes = props.getMaxEntryBytes();
+
+        this.hits = Counter.builder(HITS_METRIC)
+                .description("Query reads served from the local disk cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder(MISSES_METRIC)
+                .description("Query reads not found in the local disk cache")
+                .register(meterRegistry);
+        this.evictions = Counter.builder(EVICTIONS_METRIC)
+                .description("Cached query files deleted to stay within the disk cache size")
+                .register(meterRegistry);
+        Gauge.builder(SIZE_METRIC, this, DiskCacheStorageHandler::sizeBytes)
+                .description("Total size of the query files in the local disk cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        rebuildIndex();
+    }
+
+    @Override
+    public String readQuery(String queryId, String environment)
+            throws QueryStorageException
+    {
+        if (!isCacheable(queryId, environment)) {
+            return delegate.readQuery(queryId, environment);
+        }
+
+        CacheKey key = new CacheKey(environment, queryId);
+        String cached = readCached(key, codec::decode);
+        if (cached != null) {
+            hits.increment();
+            log.debug("event=query_disk_cache_hit type=success queryId={}", queryId);
+            return cached;
+        }
+
+        misses.increment();
+        long generation = generation(key);
+        String queryJson = delegate.readQuery(queryId, environment);
+        install(key, queryJson.getBytes(StandardCharsets.UTF_8), generation);
+        return queryJson;
+    }
+
+    // A cached document in an encoding the caller does not accept is decoded for it
+    @Override
+    public EncodedQuery readEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        if (!isCacheable(queryId, environment)) {
+            return delegate.readEncodedQuery(queryId, environment, accepted);
+        }
+
+        CacheKey key = new CacheKey(environment, queryId);
+        EncodedQuery cached = readCached(key, stored -> codec.forServing(stored, accepted));
+        if (cached != null) {
+            hits.increment();
+            log.debug("event=query_disk_cache_hit type=success queryId={}", queryId);
+            return cached;
+        }
+
+        misses.increment();
+        long generation = generation(key);
+        EncodedQuery encodedQuery = delegate.readEncodedQuery(queryId, environment, accepted);
+        install(key, encodedQuery.content(), generation);
+        return encodedQuery;
+    }
+
+    // Cached files are not handed out, since eviction may delete them before the response is sent
+    @Override
+    public Optional<StoredQueryFile> findQueryFile(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return delegate.findQueryFile(queryId, environment, accepted);
+    }
+
+    @Override
+    public Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException
+    {
+        Map<String, String> queryJsons = new HashMap<>();
+        List<String> missed = new ArrayList<>();
+        for (String queryId : queryIds) {
+            String cached = isCacheable(queryId, environment) ? readCached(new CacheKey(environment, queryId), codec::decode) : null;
+            if (cached != null) {
+                queryJsons.put(queryId, cached);
+            }
+            else {
+                missed.add(queryId);
+            }
+        }
+        hits.increment(queryJsons.size());
+        misses.increment(missed.size());
+
+        if (!missed.isEmpty()) {
+            Map<String, Long> missedGenerations = new HashMap<>();
+            for (String queryId : missed) {
+                missedGenerations.put(queryId, generation(new CacheKey(environment, queryId)));
+            }
+            Map<String, String> read = delegate.readQueries(missed, environment);
+            read.forEach((queryId, queryJson) -> {
+                if (isCacheable(queryId, environment) && missedGenerations.containsKey(queryId)) {
+                    CacheKey key = new CacheKey(environment, queryId);
+                    install(key, queryJson.getBytes(StandardCharsets.UTF_8), missedGenerations.get(queryId));
+                }
+            });
+            queryJsons.putAll(read);
+        }
+        return queryJsons;
+    }
+
+    // Writes are not copied to disk, the document is cached when it is first read. A rewritten query drops
+    // its cached file, also when the write fails, since the backend may then hold either version.
+    @Override
+    public void writeQuery(String queryId, String environment, String queryJson)
+            throws QueryStorageException
+    {
+        try {
+            delegate.writeQuery(queryId, environment, queryJson);
+        }
+        finally {
+            invalidate(queryId, environment);
+        }
+    }
+
+    @Override
+    public void writeQueryStream(String queryId, String environment, InputStream queryJson)
+            throws QueryStorageException
+    {
+        try {
+            delegate.writeQueryStream(queryId, environment, queryJson);
+        }
+        finally {
+            invalidate(queryId, environment);
+        }
+    }
+
+    @Override
+    public void writeQueries(Map<String, String> queryJsons, String environment)
+            throws QueryStorageException
+    {
+        try {
+            delegate.writeQueries(queryJsons, environment);
+        }
+        finally {
+            queryJsons.keySet().forEach(queryId -> invalidate(queryId, environment));
+        }
+    }
+
+    synchronized long sizeBytes()
+    {
+        return sizeBytes;
+    }
+
+    // A file that vanished or cannot be read or decoded is dropped from the index and the read goes to the backend
+    private <T> T readCached(CacheKey key, CachedFileDecoder<T> decoder)
+    {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        try {
+            T cached = decoder.decode(Files.readAllBytes(entry.path));
+            entry.referenced = true;
+            return cached;
+        }
+        catch (NoSuchFileException e) {
+            remove(entry);
+            return null;
+        }
+        catch (IOException e) {
+            log.warn("event=disk_cache_read_failed type=warning queryId={} path=\"{}\" message=\"{}\"", key.queryId(), entry.path, e.getMessage());
+            remove(entry);
+            return null;
+        }
+    }
+
+    // The document is written to a temporary file next to its final path and moved into place. Only the index
+    // update holds the lock. If the key was invalidated since the read began, the file just moved into place may
+    // hold the old document and is dropped again. Failures only cost the cache entry, the read itself has already
+    // succeeded.
+    private void install(CacheKey key, byte[] bytes, long generation)
+    {
+        if (bytes.length > maxEntryBytes) {
+            return;
+        }
+
+        Path path = pathOf(key);
+        Path tempPath = null;
+        try {
+            Files.createDirectories(path.getParent());
+            tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), TEMP_FILE_SUFFIX);
+            Files.write(tempPath, bytes);
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                if (generation(key) == generation) {
+                    add(key, path, bytes.length);
+                    return;
+                }
+                Entry stale = index.get(key);
+                if (stale != null) {
+                    remove(stale);
+                }
+                else {
+                    deleteQuietly(path);
+                }
+            }
+            log.debug("event=disk_cache_install_skipped type=success queryId={} reason=invalidated", key.queryId());
+        }
+        catch (IOException e) {
+            if (tempPath != null) {
+                deleteQuietly(tempPath);
+            }
+            log.warn("event=disk_cache_install_failed type=warning queryId={} path=\"{}\" message=\"{}\"", key.queryId(), path, e.getMessage());
+        }
+    }
+
+    private void invalidate(String queryId, String environment)
+    {
+        if (!isCacheable(queryId, environment)) {
+            return;
+        }
+        CacheKey key = new CacheKey(environment, queryId);
+        generations.incrementAndGet(stripe(key));
+        Entry entry = index.get(key);
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    private long generation(CacheKey key)
+    {
+        return generations.get(stripe(key));
+    }
+
+    private static int stripe(CacheKey key)
+    {
+        return key.hashCode() & (GENERATION_STRIPES - 1);
+    }
+
+    private synchronized void add(CacheKey key, Path path, long size)
+    {
+        Entry entry = index.get(key);
+        if (entry != null) {
+            // Replaced in place, the entry keeps its position on the clock
+            sizeBytes += size - entry.size;
+            entry.size = size;
+        }
+        else {
+            entry = new Entry(key, path, size);
+            index.put(key, entry);
+            clock.addLast(entry);
+            sizeBytes += size;
+        }
+        evict();
+    }
+
+    // Removing from the clock is linear, which is acceptable for the rare rewrite of an already cached query
+    private synchronized void remove(Entry entry)
+    {
+        if (index.remove(entry.key, entry)) {
+            clock.remove(entry);
+            sizeBytes -= entry.size;
+            deleteQuietly(entry.path);
+        }
+    }
+
+    private synchronized void evict()
+    {
+        while (sizeBytes > maxSizeBytes && !clock.isEmpty()) {
+            Entry entry = clock.pollFirst();
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.addLast(entry);
+                continue;
+            }
+            index.remove(entry.key);
+            sizeBytes -= entry.size;
+            deleteQuietly(entry.path);
+            evictions.increment();
+        }
+    }
+
+    // Files are put on the clock oldest first, so after a restart the hand reaches the documents cached longest ago first.
+    // Temporary files are left over from installs interrupted by a crash and are deleted.
+    private void rebuildIndex()
+    {
+        List<IndexedFile> files = new ArrayList<>();
+
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> paths = Files.walk(dir, 2)) {
+                for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                    String name = path.getFileName().toString();
+                    if (name.endsWith(TEMP_FILE_SUFFIX)) {
+                        deleteQuietly(path);
+                    }
+                    else if (name.endsWith(FILE_EXTENSION) && !path.getParent().equals(dir)) {
+                        CacheKey key = new CacheKey(
+                                path.getParent().getFileName().toString(),
+                                name.substring(0, name.length() - FILE_EXTENSION.length()));
+                        files.add(new IndexedFile(key, path, Files.size(path), Files.getLastModifiedTime(path)));
+                    }
+                }
+            }
+        }
+        catch (IOException | UncheckedIOException e) {
+            throw new StorageInitializationException(
+                    String.format(
+                            "Failed to load disk cache directory \"%s\" due to filesystem error.",
+                            dir
+                    ), e
+            );
+        }
+
+        files.sort(Comparator.comparing(IndexedFile::modified));
+        for (IndexedFile file : files) {
+            add(file.key(), file.path(), file.size());
+        }
+        log.info("event=disk_cache_index_rebuilt type=success path=\"{}\" entries={} sizeBytes={}", dir, index.size(), sizeBytes());
+    }
+
+    private Path pathOf(CacheKey key)
+    {
+        return dir.resolve(key.environment()).resolve(key.queryId() + FILE_EXTENSION);
+    }
+
+    // Identifiers become file names, so anything that could leave the cache directory is served from the backend only
+    private static boolean isCacheable(String queryId, String environment)
+    {
+        return StorageNames.isSafeName(queryId) && StorageNames.isSafeName(environment);
+    }
+
+    private void deleteQuietly(Path path)
+    {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            log.warn("event=disk_cache_delete_failed type=warning path=\"{}\" message=\"{}\"", path, e.getMessage());
+        }
+    }
+
+    private record CacheKey(String environment, String queryId) {}
+
+    private record IndexedFile(CacheKey key, Path path, long size, FileTime modified) {}
+
+    private interface CachedFileDecoder<T>
+    {
+        T decode(byte[] stored)
+                throws IOException;
+    }
+
+    private static final class Entry
+    {
+        private final CacheKey key;
+        private final Path path;
+        private long size;
+        private volatile boolean referenced;
+
+        private Entry(CacheKey key, Path path, long size)
+        {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+        }
+    }
+}
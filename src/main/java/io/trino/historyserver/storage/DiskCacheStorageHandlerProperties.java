@@ -0,0 +1,24 @@
+package io.trino.historyserver.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "storage.disk-cache")
+public class DiskCacheStorageHandlerProperties
+{
+    private boolean enabled = false;
+
+    // Directory for the cached documents, normally on the pod's persistent volume so the cache survives restarts
+    private String dir = "data/cache";
+
+    // Total size of the cached files. When it is reached, documents not read since the clock hand last passed are deleted
+    private long maxSizeBytes = 10737418240L;
+
+    // Documents larger than this are read from the backend every time
+    private long maxEntryBytes = 67108864;
+}
@@ -0,0 +1,25 @@
+package io.trino.historyserver.storage;
+
+import java.nio.charset.StandardCharsets;
+
+// A stored query document as bytes, either plain JSON or compressed as a whole in the given encoding
+public record EncodedQuery(byte[] content, ContentEncoding encoding)
+{
+    public static EncodedQuery identity(String queryJson)
+    {
+        return new EncodedQuery(queryJson.getBytes(StandardCharsets.UTF_8), ContentEncoding.IDENTITY);
+    }
+
+    public boolean isIdentity()
+    {
+        return encoding == ContentEncoding.IDENTITY;
+    }
+
+    public String toJson()
+    {
+        if (!isIdentity()) {
+            throw new IllegalStateException("Query content is " + encoding.headerValue() + " encoded");
+        }
+        return new String(content, StandardCharsets.UTF_8);
+    }
+}
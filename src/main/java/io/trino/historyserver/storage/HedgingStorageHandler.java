@@ -0,0 +1,146 @@
+package io.trino.historyserver.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.trino.historyserver.exception.QueryStorageException;
+import io.trino.historyserver.util.RetryBudget;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// Hedged single-query reads: when a read has not answered within the delay-percentile of recent read latencies,
+// an identical second read is sent and whichever answers first is returned. Hedged reads draw on a budget, so
+// they add at most budget-ratio to the backend's read load. Writes and bulk reads are passed through.
+@Slf4j
+public class HedgingStorageHandler
+        implements QueryStorageHandler
+{
+    public static final String ISSUED_METRIC = "storage.hedge.issued";
+    public static final String WON_METRIC = "storage.hedge.won";
+    public static final String SKIPPED_METRIC = "storage.hedge.skipped";
+    public static final String DELAY_METRIC = "storage.hedge.delay";
+
+    private final QueryStorageHandler delegate;
+    private final Scheduler storageScheduler;
+    private final LatencyWindow latencies;
+    private final RetryBudget budget;
+    private final Counter issued;
+    private final Counter won;
+    private final Counter skipped;
+
+    public HedgingStorageHandler(QueryStorageHandler delegate, HedgingStorageHandlerProperties props, Scheduler storageScheduler, MeterRegistry meterRegistry)
+    {
+        this.delegate = delegate;
+        this.storageScheduler = storageScheduler;
+        this.latencies = new LatencyWindow(props.getSampleSize(), props.getDelayPercentile(), props.getMinDelayMillis(), props.getMaxDelayMillis());
+        this.budget = new RetryBudget(props.getBudgetRatio(), props.getBudgetReserve());
+
+        this.issued = Counter.builder(ISSUED_METRIC)
+                .description("Second reads sent because the first read was slower than the hedging delay")
+                .register(meterRegistry);
+        this.won = Counter.builder(WON_METRIC)
+                .description("Hedged reads that answered before the first read")
+                .register(meterRegistry);
+        this.skipped = Counter.builder(SKIPPED_METRIC)
+                .description("Hedged reads not sent because the hedging budget was spent")
+                .register(meterRegistry);
+        Gauge.builder(DELAY_METRIC, latencies, LatencyWindow::delayMillis)
+                .description("Current delay in milliseconds after which a read is hedged")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String readQuery(String queryId, String environment)
+            throws QueryStorageException
+    {
+        return hedged(queryId, () -> delegate.readQuery(queryId, environment));
+    }
+
+    @Override
+    public EncodedQuery readEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return hedged(queryId, () -> delegate.readEncodedQuery(queryId, environment, accepted));
+    }
+
+    @Override
+    public Optional<StoredQueryFile> findQueryFile(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return delegate.findQueryFile(queryId, environment, accepted);
+    }
+
+    @Override
+    public Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException
+    {
+        return delegate.readQueries(queryIds, environment);
+    }
+
+    @Override
+    public void writeQuery(String queryId, String environment, String queryJson)
+            throws QueryStorageException
+    {
+        delegate.writeQuery(queryId, environment, queryJson);
+    }
+
+    @Override
+    public void writeQueryStream(String queryId, String environment, InputStream queryJson)
+            throws QueryStorageException
+    {
+        delegate.writeQueryStream(queryId, environment, queryJson);
+    }
+
+    @Override
+    public void writeQueries(Map<String, String> queryJsons, String environment)
+            throws QueryStorageException
+    {
+        delegate.writeQueries(queryJsons, environment);
+    }
+
+    private <T> T hedged(String queryId, Callable<T> read)
+    {
+        budget.deposit();
+        long delayMillis = latencies.delayMillis();
+
+        Mono<T> primary = timed(read);
+        // A failed hedge never answers, so the outcome is decided by the first read's success or failure
+        Mono<T> hedge = Mono.delay(Duration.ofMillis(delayMillis))
+                .flatMap(ignored -> {
+                    if (!budget.tryWithdraw()) {
+                        skipped.increment();
+                        return Mono.<T>never();
+                    }
+                    issued.increment();
+                    log.debug("event=storage_read_hedged type=success queryId={} delayMillis={}", queryId, delayMillis);
+                    return timed(read)
+                            .doOnNext(result -> won.increment())
+                            .onErrorResume(e -> Mono.never());
+                });
+
+        return Mono.firstWithSignal(primary, hedge).block();
+    }
+
+    // The latency is recorded when the read itself returns, also for a read that lost the race
+    private <T> Mono<T> timed(Callable<T> read)
+    {
+        return Mono.fromCallable(() -> {
+                    long start = System.nanoTime();
+                    T result = read.call();
+                    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    return result;
+                })
+                .subscribeOn(storageScheduler);
+    }
+}
@@ -0,0 +1,31 @@
+package io.trino.historyserver.storage;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "storage.hedging")
+public class HedgingStorageHandlerProperties
+{
+    // Meant for remote backends (s3, jdbc), where a single slow request dominates the tail latency of a read
+    private boolean enabled = false;
+
+    // A second read is sent once the first one has taken longer than this percentile of recent reads
+    private double delayPercentile = 0.95;
+
+    private long minDelayMillis = 10;
+
+    // Also used until sample-size reads have been measured
+    private long maxDelayMillis = 1000;
+
+    // Number of recent read latencies the percentile is computed over
+    private int sampleSize = 1000;
+
+    // Hedged reads earned per read, and the most hedged reads that can be banked
+    private double budgetRatio = 0.05;
+    private int budgetReserve = 10;
+}
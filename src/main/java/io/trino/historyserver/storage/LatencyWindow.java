@@ -0,0 +1,50 @@
+package io.trino.historyserver.storage;
+
+import java.util.Arrays;
+
+// Latencies of the most recent reads, from which the hedging delay is derived. The percentile is recomputed
+// every 64 samples, not on every read.
+class LatencyWindow
+{
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final long[] samples;
+    private final double percentile;
+    private final long minMillis;
+    private final long maxMillis;
+
+    private int count;
+    private int next;
+    private long sinceRecompute;
+    private volatile long currentMillis;
+
+    LatencyWindow(int size, double percentile, long minMillis, long maxMillis)
+    {
+        this.samples = new long[size];
+        this.percentile = percentile;
+        this.minMillis = minMillis;
+        this.maxMillis = maxMillis;
+        this.currentMillis = maxMillis;
+    }
+
+    synchronized void record(long latencyMillis)
+    {
+        samples[next] = latencyMillis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+
+        if (count == samples.length && ++sinceRecompute >= Math.min(RECOMPUTE_INTERVAL, samples.length)) {
+            sinceRecompute = 0;
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.clamp((long) Math.ceil(percentile * sorted.length) - 1, 0, sorted.length - 1);
+            long value = sorted[index];
+            currentMillis = Math.clamp(value, minMillis, maxMillis);
+        }
+    }
+
+    long delayMillis()
+    {
+        return currentMillis;
+    }
+}
@@ -3,10 +3,67 @@ package io.trino.historyserver.storage;
 import io.trino.historyserver.exception.QueryStorageException;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
 @Service
 public interface QueryStorageHandler {
     void writeQuery(String queryId, String environment, String queryJson)
             throws QueryStorageException;
+
+    // Throws QueryNotFoundException when the query is not stored, so that a miss is neither retried nor reported as a failure
     String readQuery(String queryId, String environment)
             throws QueryStorageException;
+
+    // Reads a query for serving. A document stored compressed in one of the accepted encodings is returned as
+    // stored, so it can be sent without decoding; anything else is returned as plain JSON, which is also the
+    // default for backends that do not compress.
+    default EncodedQuery readEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return EncodedQuery.identity(readQuery(queryId, environment));
+    }
+
+    // Finds the file a query is stored in when it can be sent from there as it is, in one of the accepted encodings,
+    // so the response is transferred from the file without reading the document into memory. Backends that do not
+    // keep documents in local files return nothing, and the query is read with readEncodedQuery instead.
+    default Optional<StoredQueryFile> findQueryFile(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return Optional.empty();
+    }
+
+    // Reads several queries at once, keyed by query ID. Queries that are not stored are left out of the result.
+    Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException;
+
+    // Writes the query JSON read from the stream, which is not closed. Backends that can store a document
+    // without holding it in memory override this, the default reads the whole stream first.
+    default void writeQueryStream(String queryId, String environment, InputStream queryJson)
+            throws QueryStorageException
+    {
+        String json;
+        try {
+            json = new String(queryJson.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new QueryStorageException(
+                    String.format("Failed to read query %s JSON stream.", queryId),
+                    queryId, e
+            );
+        }
+        writeQuery(queryId, environment, json);
+    }
+
+    // Writes several queries (query ID to query JSON) at once. Backends that support batching override this.
+    default void writeQueries(Map<String, String> queryJsons, String environment)
+            throws QueryStorageException
+    {
+        queryJsons.forEach((queryId, queryJson) -> writeQuery(queryId, environment, queryJson));
+    }
 }
@@ -3,9 +3,14 @@ package io.trino.historyserver.storage;
 import io.trino.historyserver.exception.QueryStorageException;
 import io.trino.historyserver.util.TaskRetryExecutor;
 import lombok.RequiredArgsConstructor;
-import org.springframework.stereotype.Service;
 
-@Service
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Created by StorageHandlerConfiguration, on top of the other storage decorators
 @RequiredArgsConstructor
 public class RetryingStorageHandler
         implements QueryStorageHandler
@@ -18,13 +23,49 @@ public class RetryingStorageHandler
     public void writeQuery(String queryId, String environment, String queryJson)
             throws QueryStorageException
     {
-        taskRetryExecutor.executeWithRetry(() -> delegate.writeQuery(queryId, environment, queryJson), props.getMaxRetries(), props.getBackoffMillis());
+        taskRetryExecutor.executeWithRetry("write_query", () -> delegate.writeQuery(queryId, environment, queryJson), props.toRetryPolicy());
+    }
+
+    // A consumed stream cannot be replayed, so the write is attempted once and the caller retries with a new stream
+    @Override
+    public void writeQueryStream(String queryId, String environment, InputStream queryJson)
+            throws QueryStorageException
+    {
+        delegate.writeQueryStream(queryId, environment, queryJson);
     }
 
     @Override
     public String readQuery(String queryId, String environment)
             throws QueryStorageException
     {
-        return taskRetryExecutor.executeWithRetry(() -> delegate.readQuery(queryId, environment), props.getMaxRetries(), props.getBackoffMillis());
+        return taskRetryExecutor.executeWithRetry("read_query", () -> delegate.readQuery(queryId, environment), props.toRetryPolicy());
+    }
+
+    @Override
+    public EncodedQuery readEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return taskRetryExecutor.executeWithRetry("read_query", () -> delegate.readEncodedQuery(queryId, environment, accepted), props.toRetryPolicy());
+    }
+
+    @Override
+    public Optional<StoredQueryFile> findQueryFile(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return taskRetryExecutor.executeWithRetry("find_query_file", () -> delegate.findQueryFile(queryId, environment, accepted), props.toRetryPolicy());
+    }
+
+    @Override
+    public Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException
+    {
+        return taskRetryExecutor.executeWithRetry("read_queries", () -> delegate.readQueries(queryIds, environment), props.toRetryPolicy());
+    }
+
+    @Override
+    public void writeQueries(Map<String, String> queryJsons, String environment)
+            throws QueryStorageException
+    {
+        taskRetryExecutor.executeWithRetry("write_queries", () -> delegate.writeQueries(queryJsons, environment), props.toRetryPolicy());
     }
 }
@@ -1,16 +1,41 @@
 package io.trino.historyserver.storage;
 
+import io.trino.historyserver.util.RetryPolicy;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
 
 @Getter
 @Setter
 @Configuration
-@ConfigurationProperties(prefix = "storage")
+@Validated
+@ConfigurationProperties(prefix = "storage.retry")
 public class RetryingStorageHandlerProperties
 {
+    // Total attempts of a storage operation, including the first one
     private int maxRetries = 3;
+
+    // Delay before the first retry, doubled for every further one
     private long backoffMillis = 500;
-}
\ No newline at end of file
+
+    private long maxBackoffMillis = 10000;
+
+    // Spread of each delay as a fraction of it, so that failed callers do not retry in lockstep. Above 1 a delay
+    // could turn negative.
+    @DecimalMin(value = "0.0", message = "storage.retry.jitter-factor must be between 0 and 1")
+    @DecimalMax(value = "1.0", message = "storage.retry.jitter-factor must be between 0 and 1")
+    private double jitterFactor = 0.5;
+
+    // Retries earned per storage call, and the most retries an operation can bank
+    private double retryBudgetRatio = 0.2;
+    private int retryBudgetReserve = 10;
+
+    public RetryPolicy toRetryPolicy()
+    {
+        return new RetryPolicy(maxRetries, backoffMillis, maxBackoffMillis, jitterFactor, retryBudgetRatio, retryBudgetReserve);
+    }
+}
@@ -0,0 +1,66 @@
+package io.trino.historyserver.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.trino.historyserver.storage.compression.DictionaryTrainingProperties;
+import io.trino.historyserver.storage.compression.QueryCodec;
+import io.trino.historyserver.storage.compression.RecentlyStoredQueries;
+import io.trino.historyserver.storage.compression.SamplingStorageHandler;
+import io.trino.historyserver.storage.filesystem.LocalFileSystemStorageHandler;
+import io.trino.historyserver.util.TaskRetryExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+
+// Stacks the storage decorators on the backend selected by storage.type. Only the outermost handler is a bean,
+// so the backend stays the single QueryStorageHandler candidate for injection.
+// Order, from the caller inwards: retrying -> caching -> disk cache -> hedging -> sampling -> backend.
+@Slf4j
+@Configuration
+public class StorageHandlerConfiguration
+{
+    @Bean
+    public RetryingStorageHandler retryingStorageHandler(
+            QueryStorageHandler backend,
+            RetryingStorageHandlerProperties retryProps,
+            TaskRetryExecutor taskRetryExecutor,
+            HedgingStorageHandlerProperties hedgingProps,
+            CachingStorageHandlerProperties cachingProps,
+            DiskCacheStorageHandlerProperties diskCacheProps,
+            DictionaryTrainingProperties dictionaryTrainingProps,
+            RecentlyStoredQueries recentlyStoredQueries,
+            QueryCodec codec,
+            Scheduler storageScheduler,
+            MeterRegistry meterRegistry)
+    {
+        QueryStorageHandler handler = backend;
+
+        if (dictionaryTrainingProps.isEnabled()) {
+            handler = new SamplingStorageHandler(handler, recentlyStoredQueries);
+        }
+
+        if (hedgingProps.isEnabled()) {
+            handler = new HedgingStorageHandler(handler, hedgingProps, storageScheduler, meterRegistry);
+            log.info("event=storage_hedging_enabled type=success delayPercentile={} budgetRatio={}",
+                    hedgingProps.getDelayPercentile(), hedgingProps.getBudgetRatio());
+        }
+
+        // A local copy of a local file saves nothing, so the disk tier is only stacked on remote backends
+        if (diskCacheProps.isEnabled() && backend instanceof LocalFileSystemStorageHandler) {
+            log.warn("event=storage_disk_cache_skipped type=warning reason=local_backend");
+        }
+        else if (diskCacheProps.isEnabled()) {
+            handler = new DiskCacheStorageHandler(handler, diskCacheProps, codec, meterRegistry);
+            log.info("event=storage_disk_cache_enabled type=success path=\"{}\" maxSizeBytes={}",
+                    diskCacheProps.getDir(), diskCacheProps.getMaxSizeBytes());
+        }
+
+        if (cachingProps.isEnabled()) {
+            handler = new CachingStorageHandler(handler, cachingProps, codec, meterRegistry);
+            log.info("event=storage_cache_enabled type=success maxSizeBytes={} ttlMillis={}",
+                    cachingProps.getMaxSizeBytes(), cachingProps.getTtlMillis());
+        }
+
+        return new RetryingStorageHandler(retryProps, handler, taskRetryExecutor);
+    }
+}
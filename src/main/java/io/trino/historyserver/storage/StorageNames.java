@@ -0,0 +1,18 @@
+package io.trino.historyserver.storage;
+
+// Query IDs and environments become file and directory names in the filesystem backend and the disk cache
+public final class StorageNames
+{
+    private StorageNames() {}
+
+    // Rejects anything that could leave the directory it is resolved against, including "." and ".."
+    public static boolean isSafeName(String name)
+    {
+        return name != null
+                && !name.isEmpty()
+                && !name.startsWith(".")
+                && name.indexOf('/') < 0
+                && name.indexOf('\\') < 0
+                && name.indexOf('\0') < 0;
+    }
+}
@@ -0,0 +1,25 @@
+package io.trino.historyserver.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+// A stored query document that can be sent as it is, plain JSON or compressed in the given encoding, through a
+// channel opened when it was looked up. The channel keeps reading the same file even if the document is rewritten
+// or moved in the meantime, and has to be closed by whoever sends it.
+public record StoredQueryFile(Path path, FileChannel channel, long sizeBytes, ContentEncoding encoding)
+        implements Closeable
+{
+    public boolean isIdentity()
+    {
+        return encoding == ContentEncoding.IDENTITY;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        channel.close();
+    }
+}
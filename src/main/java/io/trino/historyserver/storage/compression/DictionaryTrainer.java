@@ -0,0 +1,140 @@
+package io.trino.historyserver.storage.compression;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.trino.historyserver.storage.BulkReadProperties;
+import io.trino.historyserver.storage.RetryingStorageHandler;
+import io.trino.historyserver.storage.compression.RecentlyStoredQueries.StoredQuery;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Periodically trains a zstd dictionary on the most recently stored queries, read back through the storage handler,
+// and installs it as the next dictionary version. Documents already stored keep the dictionary they were written with.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "storage.compression.dictionary-training.enabled", havingValue = "true")
+public class DictionaryTrainer
+{
+    public static final String TRAINED_METRIC = "storage.compression.dictionary.trained";
+
+    private final DictionaryTrainingProperties props;
+    private final QueryCodec codec;
+    private final RecentlyStoredQueries recentlyStored;
+    private final RetryingStorageHandler storageHandler;
+    private final BulkReadProperties bulkReadProps;
+    private final Counter trained;
+
+    private ScheduledExecutorService trainingScheduler;
+
+    public DictionaryTrainer(
+            DictionaryTrainingProperties props,
+            QueryCodec codec,
+            RecentlyStoredQueries recentlyStored,
+            RetryingStorageHandler storageHandler,
+            BulkReadProperties bulkReadProps,
+            MeterRegistry meterRegistry)
+    {
+        this.props = props;
+        this.codec = codec;
+        this.recentlyStored = recentlyStored;
+        this.storageHandler = storageHandler;
+        this.bulkReadProps = bulkReadProps;
+        this.trained = Counter.builder(TRAINED_METRIC)
+                .description("zstd dictionaries trained and installed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        if (!codec.usesDictionaries()) {
+            log.warn("event=zstd_dictionary_training_skipped type=warning reason=zstd_with_dictionary_dir_required");
+            return;
+        }
+
+        trainingScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("zstd-dictionary-training").daemon().factory()
+        );
+        trainingScheduler.scheduleWithFixedDelay(
+                this::trainQuietly,
+                props.getInitialDelayMillis(),
+                props.getIntervalMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if (trainingScheduler != null) {
+            trainingScheduler.shutdownNow();
+        }
+    }
+
+    // Returns the ID of the installed dictionary, or nothing when too few of the recent queries could be read
+    public OptionalLong train()
+            throws IOException
+    {
+        List<StoredQuery> candidates = recentlyStored.snapshot();
+        if (candidates.size() < props.getMinSamples()) {
+            log.info("event=zstd_dictionary_training_skipped type=success candidates={} minSamples={}", candidates.size(), props.getMinSamples());
+            return OptionalLong.empty();
+        }
+
+        Map<String, Set<String>> queryIdsByEnvironment = new LinkedHashMap<>();
+        for (StoredQuery candidate : candidates) {
+            queryIdsByEnvironment.computeIfAbsent(candidate.environment(), environment -> new LinkedHashSet<>()).add(candidate.queryId());
+        }
+
+        ZstdDictTrainer trainer = new ZstdDictTrainer(candidates.size() * props.getSampleBytes(), props.getDictionarySizeBytes());
+        int samples = 0;
+        for (Map.Entry<String, Set<String>> entry : queryIdsByEnvironment.entrySet()) {
+            List<String> queryIds = List.copyOf(entry.getValue());
+            for (int from = 0; from < queryIds.size(); from += bulkReadProps.getChunkSize()) {
+                List<String> chunk = queryIds.subList(from, Math.min(from + bulkReadProps.getChunkSize(), queryIds.size()));
+                for (String queryJson : storageHandler.readQueries(chunk, entry.getKey()).values()) {
+                    byte[] sample = queryJson.getBytes(StandardCharsets.UTF_8);
+                    trainer.addSample(sample.length > props.getSampleBytes() ? Arrays.copyOf(sample, props.getSampleBytes()) : sample);
+                    samples++;
+                }
+            }
+        }
+
+        if (samples < props.getMinSamples()) {
+            log.info("event=zstd_dictionary_training_skipped type=success samples={} minSamples={}", samples, props.getMinSamples());
+            return OptionalLong.empty();
+        }
+
+        long dictionaryId = codec.installDictionary(trainer.trainSamples());
+        trained.increment();
+        log.info("event=zstd_dictionary_trained type=success dictionaryId={} samples={}", dictionaryId, samples);
+        return OptionalLong.of(dictionaryId);
+    }
+
+    private void trainQuietly()
+    {
+        try {
+            train();
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("event=zstd_dictionary_training_failed type=warning message=\"{}\"", e.getMessage());
+        }
+    }
+}
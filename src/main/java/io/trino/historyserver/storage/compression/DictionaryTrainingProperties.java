@@ -0,0 +1,30 @@
+package io.trino.historyserver.storage.compression;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "storage.compression.dictionary-training")
+public class DictionaryTrainingProperties
+{
+    private boolean enabled = false;
+
+    private long initialDelayMillis = 600000;
+
+    private long intervalMillis = 86400000;
+
+    // Most recently stored queries kept as training candidates, the documents are read back from storage when training
+    private int sampleCount = 1000;
+
+    // Training is skipped until at least this many queries were stored since startup
+    private int minSamples = 100;
+
+    // Each document contributes at most this many bytes, so a few large documents do not dominate the dictionary
+    private int sampleBytes = 16384;
+
+    private int dictionarySizeBytes = 112640;
+}
@@ -0,0 +1,403 @@
+package io.trino.historyserver.storage.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+import io.trino.historyserver.exception.StorageInitializationException;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Encodes query documents for storage and decodes them again. The format of a stored document is recognized from
+// its first bytes: zstd and gzip frames start with magic numbers that JSON text never starts with, so documents
+// stored before compression was enabled, or with another algorithm, stay readable. A stored frame is a complete
+// .zst or .gz file, which is what lets it be served as is with a Content-Encoding header.
+// Dictionaries are files named zstd-<version>-<dictionary ID>.dict in dictionary-dir. The newest version compresses,
+// and a frame is decompressed with the dictionary whose ID is in its header; one that is not loaded yet, because
+// another replica trained it, is looked up in the directory.
+@Slf4j
+@Component
+public class QueryCodec
+{
+    // Longest zstd frame header, enough to tell the encoding and dictionary of a stored document
+    public static final int FRAME_HEADER_BYTES = 18;
+
+    private static final byte[] ZSTD_MAGIC = {(byte) 0x28, (byte) 0xB5, (byte) 0x2F, (byte) 0xFD};
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1F, (byte) 0x8B};
+    private static final String DICTIONARY_PREFIX = "zstd-";
+    private static final String DICTIONARY_EXTENSION = ".dict";
+
+    private final ContentEncoding encoding;
+    private final int level;
+    private final int minSizeBytes;
+    private final Path dictionaryDir;
+    private final Map<Long, ZstdDictDecompress> dictionaries = new ConcurrentHashMap<>();
+    private volatile ActiveDictionary dictionary;
+    private long lastVersion;
+
+    public QueryCodec(QueryCompressionProperties props)
+    {
+        boolean zstdAvailable = isZstdAvailable();
+        this.level = props.getLevel();
+        this.minSizeBytes = props.getMinSizeBytes();
+
+        if (!props.isEnabled() || props.getAlgorithm() == ContentEncoding.IDENTITY) {
+            this.encoding = ContentEncoding.IDENTITY;
+        }
+        else if (props.getAlgorithm() == ContentEncoding.ZSTD && !zstdAvailable) {
+            log.warn("event=storage_compression_fallback type=warning algorithm=zstd fallback=gzip reason=native_library_unavailable");
+            this.encoding = ContentEncoding.GZIP;
+        }
+        else {
+            this.encoding = props.getAlgorithm();
+        }
+
+        // Dictionaries are loaded even when compression is off, documents written with them must stay readable
+        this.dictionaryDir = props.getDictionaryDir() != null && zstdAvailable ? Path.of(props.getDictionaryDir()) : null;
+        if (dictionaryDir != null) {
+            loadDictionaries();
+        }
+
+        log.info("event=storage_compression_configured type=success encoding={} dictionaries={} activeDictionaryId={}",
+                encoding.headerValue(), dictionaries.size(), activeDictionaryId());
+    }
+
+    public boolean isCompressing()
+    {
+        return encoding != ContentEncoding.IDENTITY;
+    }
+
+    // Whether new documents are compressed with zstd and dictionary-dir is set, which is when a trained dictionary is used
+    public boolean usesDictionaries()
+    {
+        return encoding == ContentEncoding.ZSTD && dictionaryDir != null;
+    }
+
+    public long activeDictionaryId()
+    {
+        ActiveDictionary active = dictionary;
+        return active == null ? 0 : active.id();
+    }
+
+    // Stores a newly trained dictionary as the next version and compresses new documents with it from now on.
+    // The file is written under a temporary name and moved into place, so other replicas never load a partial one.
+    public synchronized long installDictionary(byte[] content)
+            throws IOException
+    {
+        if (dictionaryDir == null) {
+            throw new IllegalStateException("storage.compression.dictionary-dir is not set");
+        }
+        long dictionaryId = Zstd.getDictIdFromDict(content);
+        if (dictionaryId == 0) {
+            throw new IllegalArgumentException("Content is not a trained zstd dictionary");
+        }
+
+        lastVersion = Math.max(System.currentTimeMillis(), lastVersion + 1);
+        Path path = dictionaryDir.resolve(String.format("%s%013d-%d%s", DICTIONARY_PREFIX, lastVersion, dictionaryId, DICTIONARY_EXTENSION));
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tempPath, content);
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        dictionaries.put(dictionaryId, new ZstdDictDecompress(content));
+        dictionary = new ActiveDictionary(dictionaryId, new ZstdDictCompress(content, level));
+        log.info("event=zstd_dictionary_installed type=success dictionaryId={} path=\"{}\" sizeBytes={}", dictionaryId, path, content.length);
+        return dictionaryId;
+    }
+
+    public byte[] encode(String queryJson)
+            throws IOException
+    {
+        byte[] json = queryJson.getBytes(StandardCharsets.UTF_8);
+        if (!isCompressing() || json.length < minSizeBytes) {
+            return json;
+        }
+        if (encoding == ContentEncoding.ZSTD) {
+            ActiveDictionary active = dictionary;
+            return active != null ? Zstd.compress(json, active.compress()) : Zstd.compress(json, level);
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 4);
+        try (OutputStream out = encodingStream(buffer)) {
+            out.write(json);
+        }
+        return buffer.toByteArray();
+    }
+
+    // Reads the whole stream, which is not closed. Only the encoded document is held in memory.
+    public byte[] encode(InputStream queryJson)
+            throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = encodingStream(buffer)) {
+            queryJson.transferTo(out);
+        }
+        return buffer.toByteArray();
+    }
+
+    // Wraps the stream a document is written to, closing the returned stream finishes the frame and closes the target.
+    // As in encode(String), a document shorter than min-size-bytes is written as plain JSON: its first bytes are held
+    // back until it is known to be long enough to compress.
+    public OutputStream encodingStream(OutputStream target)
+    {
+        return isCompressing() ? new ThresholdEncodingStream(target) : target;
+    }
+
+    private OutputStream compressingStream(OutputStream target)
+            throws IOException
+    {
+        return switch (encoding) {
+            case ZSTD -> {
+                ZstdOutputStream out = new ZstdOutputStream(target, level);
+                ActiveDictionary active = dictionary;
+                if (active != null) {
+                    out.setDict(active.compress());
+                }
+                yield out;
+            }
+            case GZIP -> new GZIPOutputStream(target);
+            case IDENTITY -> target;
+        };
+    }
+
+    public String decode(byte[] stored)
+            throws IOException
+    {
+        return new String(decodeBytes(stored), StandardCharsets.UTF_8);
+    }
+
+    // Stored bytes in an accepted encoding are passed on as they are. Frames compressed with a dictionary are
+    // decoded, since clients do not have the dictionary.
+    public EncodedQuery forServing(byte[] stored, Set<ContentEncoding> accepted)
+            throws IOException
+    {
+        Optional<ContentEncoding> servable = servableEncoding(stored, accepted);
+        if (servable.isPresent()) {
+            return new EncodedQuery(stored, servable.get());
+        }
+        return new EncodedQuery(decodeBytes(stored), ContentEncoding.IDENTITY);
+    }
+
+    // The encoding a document can be sent in as stored, judged from its first FRAME_HEADER_BYTES bytes.
+    // Nothing when it has to be decoded first.
+    public static Optional<ContentEncoding> servableEncoding(byte[] head, Set<ContentEncoding> accepted)
+    {
+        ContentEncoding storedEncoding = encodingOf(head);
+        boolean servable = storedEncoding == ContentEncoding.IDENTITY
+                || (accepted.contains(storedEncoding) && (storedEncoding != ContentEncoding.ZSTD || Zstd.getDictIdFromFrame(head) == 0));
+        return servable ? Optional.of(storedEncoding) : Optional.empty();
+    }
+
+    public static ContentEncoding encodingOf(byte[] stored)
+    {
+        if (startsWith(stored, ZSTD_MAGIC)) {
+            return ContentEncoding.ZSTD;
+        }
+        if (startsWith(stored, GZIP_MAGIC)) {
+            return ContentEncoding.GZIP;
+        }
+        return ContentEncoding.IDENTITY;
+    }
+
+    private byte[] decodeBytes(byte[] stored)
+            throws IOException
+    {
+        return switch (encodingOf(stored)) {
+            case ZSTD -> {
+                try (ZstdInputStream in = new ZstdInputStream(new ByteArrayInputStream(stored))) {
+                    long dictionaryId = Zstd.getDictIdFromFrame(stored);
+                    if (dictionaryId != 0) {
+                        in.setDict(dictionaryFor(dictionaryId));
+                    }
+                    yield in.readAllBytes();
+                }
+            }
+            case GZIP -> {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(stored))) {
+                    yield in.readAllBytes();
+                }
+            }
+            case IDENTITY -> stored;
+        };
+    }
+
+    private ZstdDictDecompress dictionaryFor(long dictionaryId)
+            throws IOException
+    {
+        ZstdDictDecompress loaded = dictionaries.get(dictionaryId);
+        if (loaded != null) {
+            return loaded;
+        }
+
+        if (dictionaryDir != null) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dictionaryDir, DICTIONARY_PREFIX + "*-" + dictionaryId + DICTIONARY_EXTENSION)) {
+                for (Path file : files) {
+                    ZstdDictDecompress found = new ZstdDictDecompress(Files.readAllBytes(file));
+                    dictionaries.put(dictionaryId, found);
+                    log.info("event=zstd_dictionary_loaded type=success dictionaryId={} path=\"{}\"", dictionaryId, file);
+                    return found;
+                }
+            }
+        }
+        throw new IOException(String.format("Document was compressed with zstd dictionary %d, which is not in the dictionary directory.", dictionaryId));
+    }
+
+    // Versions are zero-padded, so the file names sort in the order the dictionaries were trained
+    private void loadDictionaries()
+    {
+        try {
+            Files.createDirectories(dictionaryDir);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> found = Files.newDirectoryStream(dictionaryDir, DICTIONARY_PREFIX + "*" + DICTIONARY_EXTENSION)) {
+                found.forEach(files::add);
+            }
+            files.sort(null);
+
+            for (Path file : files) {
+                byte[] content = Files.readAllBytes(file);
+                long dictionaryId = Zstd.getDictIdFromDict(content);
+                if (dictionaryId == 0) {
+                    log.warn("event=zstd_dictionary_skipped type=warning path=\"{}\" reason=not_a_trained_dictionary", file);
+                    continue;
+                }
+                dictionaries.put(dictionaryId, new ZstdDictDecompress(content));
+                dictionary = new ActiveDictionary(dictionaryId, new ZstdDictCompress(content, level));
+                lastVersion = Math.max(lastVersion, versionOf(file));
+            }
+        }
+        catch (IOException e) {
+            throw new StorageInitializationException(
+                    String.format(
+                            "Failed to load zstd dictionaries from directory \"%s\" due to filesystem error.",
+                            dictionaryDir
+                    ), e
+            );
+        }
+    }
+
+    private static long versionOf(Path file)
+    {
+        String name = file.getFileName().toString();
+        int end = name.indexOf('-', DICTIONARY_PREFIX.length());
+        try {
+            return Long.parseLong(name.substring(DICTIONARY_PREFIX.length(), end < 0 ? DICTIONARY_PREFIX.length() : end));
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isZstdAvailable()
+    {
+        try {
+            Native.load();
+            return Native.isLoaded();
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    private static boolean startsWith(byte[] content, byte[] prefix)
+    {
+        if (content.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (content[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class ThresholdEncodingStream
+            extends OutputStream
+    {
+        private final OutputStream target;
+        private ByteArrayOutputStream head = new ByteArrayOutputStream();
+        private OutputStream compressing;
+        private boolean closed;
+
+        private ThresholdEncodingStream(OutputStream target)
+        {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b)
+                throws IOException
+        {
+            startCompressingAt(1);
+            (compressing != null ? compressing : head).write(b);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length)
+                throws IOException
+        {
+            startCompressingAt(length);
+            (compressing != null ? compressing : head).write(buffer, offset, length);
+        }
+
+        @Override
+        public void flush()
+                throws IOException
+        {
+            if (compressing != null) {
+                compressing.flush();
+            }
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (compressing != null) {
+                compressing.close();
+                return;
+            }
+            try (target) {
+                head.writeTo(target);
+            }
+        }
+
+        private void startCompressingAt(int incoming)
+                throws IOException
+        {
+            if (compressing == null && head.size() + incoming >= minSizeBytes) {
+                compressing = compressingStream(target);
+                head.writeTo(compressing);
+                head = null;
+            }
+        }
+    }
+
+    private record ActiveDictionary(long id, ZstdDictCompress compress) {}
+}
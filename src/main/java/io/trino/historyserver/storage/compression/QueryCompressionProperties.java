@@ -0,0 +1,30 @@
+package io.trino.historyserver.storage.compression;
+
+import io.trino.historyserver.storage.ContentEncoding;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "storage.compression")
+public class QueryCompressionProperties
+{
+    // Compresses newly written documents. Documents already stored are readable whatever this is set to
+    private boolean enabled = false;
+
+    // zstd, or gzip. zstd falls back to gzip when its native library cannot be loaded on this platform
+    private ContentEncoding algorithm = ContentEncoding.ZSTD;
+
+    // zstd compression level, gzip always uses its default level
+    private int level = 3;
+
+    // Documents smaller than this are stored as plain JSON, compression would save little on them
+    private int minSizeBytes = 1024;
+
+    // Directory of versioned zstd dictionaries. The newest one compresses new documents, and a document is decompressed
+    // with the dictionary whose ID is in its frame header. Share it between replicas, like the query directory.
+    private String dictionaryDir;
+}
@@ -0,0 +1,35 @@
+package io.trino.historyserver.storage.compression;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+// The most recently stored queries, newest last, as candidates for dictionary training
+@Component
+public class RecentlyStoredQueries
+{
+    private final int capacity;
+    private final Deque<StoredQuery> queries = new ArrayDeque<>();
+
+    public RecentlyStoredQueries(DictionaryTrainingProperties props)
+    {
+        this.capacity = props.getSampleCount();
+    }
+
+    public synchronized void record(String queryId, String environment)
+    {
+        if (queries.size() == capacity) {
+            queries.pollFirst();
+        }
+        queries.addLast(new StoredQuery(queryId, environment));
+    }
+
+    public synchronized List<StoredQuery> snapshot()
+    {
+        return List.copyOf(queries);
+    }
+
+    public record StoredQuery(String queryId, String environment) {}
+}
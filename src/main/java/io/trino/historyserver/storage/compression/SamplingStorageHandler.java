@@ -0,0 +1,75 @@
+package io.trino.historyserver.storage.compression;
+
+import io.trino.historyserver.exception.QueryStorageException;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
+import io.trino.historyserver.storage.QueryStorageHandler;
+import io.trino.historyserver.storage.StoredQueryFile;
+import lombok.RequiredArgsConstructor;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Records the queries the backend stored successfully, which DictionaryTrainer reads back as training samples
+@RequiredArgsConstructor
+public class SamplingStorageHandler
+        implements QueryStorageHandler
+{
+    private final QueryStorageHandler delegate;
+    private final RecentlyStoredQueries recentlyStored;
+
+    @Override
+    public void writeQuery(String queryId, String environment, String queryJson)
+            throws QueryStorageException
+    {
+        delegate.writeQuery(queryId, environment, queryJson);
+        recentlyStored.record(queryId, environment);
+    }
+
+    @Override
+    public void writeQueryStream(String queryId, String environment, InputStream queryJson)
+            throws QueryStorageException
+    {
+        delegate.writeQueryStream(queryId, environment, queryJson);
+        recentlyStored.record(queryId, environment);
+    }
+
+    @Override
+    public void writeQueries(Map<String, String> queryJsons, String environment)
+            throws QueryStorageException
+    {
+        delegate.writeQueries(queryJsons, environment);
+        queryJsons.keySet().forEach(queryId -> recentlyStored.record(queryId, environment));
+    }
+
+    @Override
+    public String readQuery(String queryId, String environment)
+            throws QueryStorageException
+    {
+        return delegate.readQuery(queryId, environment);
+    }
+
+    @Override
+    public EncodedQuery readEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return delegate.readEncodedQuery(queryId, environment, accepted);
+    }
+
+    @Override
+    public Optional<StoredQueryFile> findQueryFile(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        return delegate.findQueryFile(queryId, environment, accepted);
+    }
+
+    @Override
+    public Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException
+    {
+        return delegate.readQueries(queryIds, environment);
+    }
+}
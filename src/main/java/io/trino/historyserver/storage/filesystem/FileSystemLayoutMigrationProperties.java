@@ -0,0 +1,22 @@
+package io.trino.historyserver.storage.filesystem;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "storage.filesystem.migration")
+public class FileSystemLayoutMigrationProperties
+{
+    private boolean enabled = false;
+
+    private long initialDelayMillis = 60000;
+
+    // Pause between batches, so the migration leaves disk bandwidth to ingestion and reads
+    private long intervalMillis = 1000;
+
+    private int batchSize = 1000;
+}
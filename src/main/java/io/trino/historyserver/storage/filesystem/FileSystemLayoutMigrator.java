@@ -0,0 +1,135 @@
+package io.trino.historyserver.storage.filesystem;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.trino.historyserver.common.GlobalProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Moves documents from the flat query-dir layout of earlier versions into the sharded layout of the configured
+// environment, a batch at a time while the server keeps running. Reads fall back to the flat layout until a
+// document is moved, and the scheduler stops once query-dir holds no more flat documents.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "storage.filesystem.migration.enabled", havingValue = "true")
+public class FileSystemLayoutMigrator
+{
+    public static final String MIGRATED_METRIC = "storage.filesystem.migration.migrated";
+
+    private final FileSystemLayoutMigrationProperties props;
+    private final FileSystemStorageHandlerProperties storageProps;
+    private final GlobalProperties globalProps;
+    private final Counter migrated;
+
+    private ScheduledExecutorService migrationScheduler;
+
+    public FileSystemLayoutMigrator(
+            FileSystemLayoutMigrationProperties props,
+            FileSystemStorageHandlerProperties storageProps,
+            GlobalProperties globalProps,
+            MeterRegistry meterRegistry)
+    {
+        this.props = props;
+        this.storageProps = storageProps;
+        this.globalProps = globalProps;
+        this.migrated = Counter.builder(MIGRATED_METRIC)
+                .description("Query documents moved from the flat filesystem layout into the sharded one")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        if (storageProps.getQueryDir() == null) {
+            log.warn("event=filesystem_layout_migration_skipped type=warning reason=storage_filesystem_query_dir_not_set");
+            return;
+        }
+
+        migrationScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("filesystem-layout-migration").daemon().factory()
+        );
+        migrationScheduler.scheduleWithFixedDelay(
+                this::migrateQuietly,
+                props.getInitialDelayMillis(),
+                props.getIntervalMillis(),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if (migrationScheduler != null) {
+            migrationScheduler.shutdownNow();
+        }
+    }
+
+    // Moves up to batch-size documents and returns how many were moved, 0 once the flat layout is empty.
+    // A document is hard-linked into place and then unlinked from the flat layout: linking fails instead of
+    // replacing a document already written to the sharded layout, which is then newer than the flat one.
+    public int migrateBatch()
+            throws IOException
+    {
+        Path queryDir = Path.of(storageProps.getQueryDir());
+        String environment = globalProps.getEnvironment();
+        int moved = 0;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(queryDir, "*" + FileSystemQueryLayout.FILE_EXTENSION)) {
+            for (Path legacyPath : files) {
+                if (moved == props.getBatchSize()) {
+                    break;
+                }
+                if (!Files.isRegularFile(legacyPath)) {
+                    continue;
+                }
+
+                String fileName = legacyPath.getFileName().toString();
+                String queryId = fileName.substring(0, fileName.length() - FileSystemQueryLayout.FILE_EXTENSION.length());
+                Path path = FileSystemQueryLayout.queryPath(queryDir, queryId, environment);
+                Files.createDirectories(path.getParent());
+                try {
+                    Files.createLink(path, legacyPath);
+                }
+                catch (FileAlreadyExistsException e) {
+                    log.info("event=filesystem_layout_migration_superseded type=success queryId={} path=\"{}\"", queryId, path);
+                }
+                catch (NoSuchFileException e) {
+                    // Removed since it was listed
+                    continue;
+                }
+                Files.deleteIfExists(legacyPath);
+                moved++;
+            }
+        }
+
+        migrated.increment(moved);
+        log.info("event=filesystem_layout_migration_batch_succeeded type=success moved={} environment={}", moved, environment);
+        return moved;
+    }
+
+    private void migrateQuietly()
+    {
+        try {
+            if (migrateBatch() == 0) {
+                log.info("event=filesystem_layout_migration_completed type=success path=\"{}\"", storageProps.getQueryDir());
+                migrationScheduler.shutdown();
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("event=filesystem_layout_migration_failed type=warning message=\"{}\"", e.getMessage());
+        }
+    }
+}
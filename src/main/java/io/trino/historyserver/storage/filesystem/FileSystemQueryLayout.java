@@ -0,0 +1,54 @@
+package io.trino.historyserver.storage.filesystem;
+
+import java.nio.file.Path;
+
+// Where query documents live under storage.filesystem.query-dir. Each environment has its own directory, sharded
+// by the date and hour Trino puts at the start of every query ID (20231201_123456_00001_abcde goes to
+// <env>/20231201/12/), so no directory grows past an hour of queries and old days can be backed up or removed
+// as a whole. Query IDs in another format are spread over 256 directories by hash under <env>/other/. Without an
+// environment, as the flat layout allowed, documents go to default/.
+public final class FileSystemQueryLayout
+{
+    public static final String FILE_EXTENSION = ".json";
+
+    public static final String DEFAULT_ENVIRONMENT = "default";
+
+    private static final String OTHER_SHARD = "other";
+
+    private FileSystemQueryLayout() {}
+
+    public static Path queryPath(Path queryDir, String queryId, String environment)
+    {
+        String environmentDir = environment == null || environment.isBlank() ? DEFAULT_ENVIRONMENT : environment;
+        return queryDir.resolve(environmentDir).resolve(shardOf(queryId)).resolve(queryId + FILE_EXTENSION);
+    }
+
+    // Earlier versions kept every document directly in query-dir, whatever its environment
+    public static Path legacyQueryPath(Path queryDir, String queryId)
+    {
+        return queryDir.resolve(queryId + FILE_EXTENSION);
+    }
+
+    static Path shardOf(String queryId)
+    {
+        if (isTrinoQueryId(queryId)) {
+            return Path.of(queryId.substring(0, 8), queryId.substring(9, 11));
+        }
+        return Path.of(OTHER_SHARD, String.format("%02x", queryId.hashCode() & 0xff));
+    }
+
+    // yyyyMMdd_HHmmss_...
+    private static boolean isTrinoQueryId(String queryId)
+    {
+        if (queryId.length() < 16 || queryId.charAt(8) != '_' || queryId.charAt(15) != '_') {
+            return false;
+        }
+        for (int i = 0; i < 15; i++) {
+            char c = queryId.charAt(i);
+            if (i != 8 && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -12,4 +12,8 @@ import org.springframework.context.annotation.Configuration;
 public class FileSystemStorageHandlerProperties
 {
     private String queryDir;
+
+    // Also read documents from the flat query-dir layout of earlier versions. Can be turned off once
+    // FileSystemLayoutMigrator has moved every document into the sharded layout.
+    private boolean legacyLayoutFallbackEnabled = true;
 }
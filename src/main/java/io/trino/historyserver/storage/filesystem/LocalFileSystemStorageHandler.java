@@ -1,19 +1,39 @@
 package io.trino.historyserver.storage.filesystem;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
+import io.trino.historyserver.exception.InvalidQueryRequestException;
+import io.trino.historyserver.exception.QueryNotFoundException;
 import io.trino.historyserver.exception.QueryStorageException;
 import io.trino.historyserver.exception.StorageInitializationException;
+import io.trino.historyserver.storage.BulkReadProperties;
+import io.trino.historyserver.storage.ConcurrentQueryReader;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
 import io.trino.historyserver.storage.QueryStorageHandler;
+import io.trino.historyserver.storage.StoredQueryFile;
+import io.trino.historyserver.storage.compression.QueryCodec;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
 
 @Slf4j
 @Service
@@ -23,9 +43,12 @@ import org.springframework.stereotype.Service;
 public class LocalFileSystemStorageHandler
         implements QueryStorageHandler
 {
-    private static final String FILE_EXTENSION = ".json";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
 
     private final FileSystemStorageHandlerProperties props;
+    private final BulkReadProperties bulkReadProps;
+    private final Scheduler storageScheduler;
+    private final QueryCodec codec;
 
     @PostConstruct
     public void ensureDirectoryExists()
@@ -50,7 +73,7 @@ public class LocalFileSystemStorageHandler
     public void writeQuery(String queryId, String environment, String queryJson)
             throws QueryStorageException
     {
-        Path path = getQueryPath(queryId);
+        Path path = getQueryPath(queryId, environment);
 
         try {
             this.write(path, queryJson);
@@ -67,15 +90,55 @@ public class LocalFileSystemStorageHandler
         log.info("event=query_write_succeeded type=success queryId={} path=\"{}\"", queryId, path);
     }
 
+    // Copies the stream, encoded on the way, into a temporary file next to the target and moves it into place,
+    // so a failed transfer never leaves a truncated document behind
+    @Override
+    public void writeQueryStream(String queryId, String environment, InputStream queryJson)
+            throws QueryStorageException
+    {
+        Path path = getQueryPath(queryId, environment);
+        Path tempPath = null;
+
+        try {
+            tempPath = createTempFile(path);
+            try (OutputStream out = codec.encodingStream(Files.newOutputStream(tempPath))) {
+                queryJson.transferTo(out);
+            }
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            if (tempPath != null) {
+                deleteQuietly(tempPath);
+            }
+            throw new QueryStorageException(
+                    String.format(
+                            "Failed to write query %s JSON stream to path \"%s\".",
+                            queryId, path
+                    ),
+                    queryId, e
+            );
+        }
+        log.info("event=query_write_succeeded type=success queryId={} path=\"{}\"", queryId, path);
+    }
+
     @Override
     public String readQuery(String queryId, String environment)
             throws QueryStorageException
     {
         String queryJson;
-        Path path = getQueryPath(queryId);
+        Path path = getQueryPath(queryId, environment);
 
         try {
-            queryJson = this.read(path);
+            queryJson = readStored(queryId, environment, this::read);
+        }
+        catch (NoSuchFileException e) {
+            throw new QueryNotFoundException(
+                    String.format(
+                            "Query %s not found at path \"%s\".",
+                            queryId, path
+                    ),
+                    queryId, e
+            );
         }
         catch (IOException e) {
             throw new QueryStorageException(
@@ -90,20 +153,217 @@ public class LocalFileSystemStorageHandler
         return queryJson;
     }
 
+    @Override
+    public EncodedQuery readEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        EncodedQuery encodedQuery;
+        Path path = getQueryPath(queryId, environment);
+
+        try {
+            encodedQuery = readStored(queryId, environment, storedPath -> codec.forServing(Files.readAllBytes(storedPath), accepted));
+        }
+        catch (NoSuchFileException e) {
+            throw new QueryNotFoundException(
+                    String.format(
+                            "Query %s not found at path \"%s\".",
+                            queryId, path
+                    ),
+                    queryId, e
+            );
+        }
+        catch (IOException e) {
+            throw new QueryStorageException(
+                    String.format(
+                            "Failed to read query %s JSON from path \"%s\".",
+                            queryId, path
+                    ),
+                    queryId, e
+            );
+        }
+        log.info("event=query_read_succeeded type=success queryId={} path=\"{}\" encoding={}", queryId, path, encodedQuery.encoding().headerValue());
+        return encodedQuery;
+    }
+
+    // Only the frame header is read, the document itself is sent from the returned channel. Documents still in the
+    // flat layout are left to readEncodedQuery, since the migration may move them while they are being sent.
+    @Override
+    public Optional<StoredQueryFile> findQueryFile(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        Optional<StoredQueryFile> queryFile;
+        Path path = getQueryPath(queryId, environment);
+
+        try {
+            queryFile = servableFile(path, accepted);
+        }
+        catch (NoSuchFileException e) {
+            if (props.isLegacyLayoutFallbackEnabled()) {
+                return Optional.empty();
+            }
+            throw new QueryNotFoundException(
+                    String.format(
+                            "Query %s not found at path \"%s\".",
+                            queryId, path
+                    ),
+                    queryId, e
+            );
+        }
+        catch (IOException e) {
+            throw new QueryStorageException(
+                    String.format(
+                            "Failed to read query %s header from path \"%s\".",
+                            queryId, path
+                    ),
+                    queryId, e
+            );
+        }
+        log.info("event=query_file_lookup_succeeded type=success queryId={} path=\"{}\" servable={}", queryId, path, queryFile.isPresent());
+        return queryFile;
+    }
+
+    @Override
+    public Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException
+    {
+        Map<String, String> queryJsons = ConcurrentQueryReader.readAll(
+                queryIds, bulkReadProps.getConcurrency(), storageScheduler, queryId -> readIfExists(queryId, environment));
+        log.info("event=query_batch_read_succeeded type=success requested={} found={}", queryIds.size(), queryJsons.size());
+        return queryJsons;
+    }
+
+    private String readIfExists(String queryId, String environment)
+            throws QueryStorageException
+    {
+        Path path = getQueryPath(queryId, environment);
+
+        try {
+            return readStored(queryId, environment, this::read);
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+        catch (IOException e) {
+            throw new QueryStorageException(
+                    String.format(
+                            "Failed to read query %s JSON from path \"%s\".",
+                            queryId, path
+                    ),
+                    queryId, e
+            );
+        }
+    }
+
+    // Written next to the target and moved into place like a streamed write, so a file that is being sent from an
+    // open channel is replaced rather than changed under it
     private void write(Path fullPath, String content)
             throws IOException
     {
-        Files.writeString(fullPath, content, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        Path tempPath = createTempFile(fullPath);
+        try {
+            Files.write(tempPath, codec.encode(content));
+            Files.move(tempPath, fullPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            deleteQuietly(tempPath);
+            throw e;
+        }
+    }
+
+    // Each write gets its own temporary file, so concurrent writes of one query, e.g. a duplicate completion event
+    // or a replay from the spool, never write into the same file
+    private static Path createTempFile(Path path)
+            throws IOException
+    {
+        Files.createDirectories(path.getParent());
+        return Files.createTempFile(path.getParent(), path.getFileName().toString(), TEMP_FILE_SUFFIX);
+    }
+
+    private void deleteQuietly(Path path)
+    {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            log.warn("event=temp_file_delete_failed type=warning path=\"{}\" message=\"{}\"", path, e.getMessage());
+        }
     }
 
     private String read(Path fullPath)
             throws IOException
     {
-        return Files.readString(fullPath);
+        return codec.decode(Files.readAllBytes(fullPath));
+    }
+
+    // The channel stays open in the returned file and is closed by whoever sends it
+    private Optional<StoredQueryFile> servableFile(Path fullPath, Set<ContentEncoding> accepted)
+            throws IOException
+    {
+        FileChannel channel = FileChannel.open(fullPath, StandardOpenOption.READ);
+        try {
+            ByteBuffer head = ByteBuffer.allocate(QueryCodec.FRAME_HEADER_BYTES);
+            channel.read(head, 0);
+            Optional<ContentEncoding> servable = QueryCodec.servableEncoding(Arrays.copyOf(head.array(), head.position()), accepted);
+            if (servable.isEmpty()) {
+                channel.close();
+                return Optional.empty();
+            }
+            return Optional.of(new StoredQueryFile(fullPath, channel, channel.size(), servable.get()));
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Reads from the sharded layout, and while legacy-layout-fallback-enabled is set, from the flat layout of earlier
+    // versions. FileSystemLayoutMigrator moves files from one to the other while the server runs, so a document
+    // missed in both places is looked for once more where the migration puts it.
+    private <T> T readStored(String queryId, String environment, StoredFileReader<T> reader)
+            throws IOException
+    {
+        Path path = getQueryPath(queryId, environment);
+        try {
+            return reader.read(path);
+        }
+        catch (NoSuchFileException e) {
+            if (!props.isLegacyLayoutFallbackEnabled()) {
+                throw e;
+            }
+        }
+
+        try {
+            return reader.read(getLegacyQueryPath(queryId));
+        }
+        catch (NoSuchFileException e) {
+            return reader.read(path);
+        }
+    }
+
+    public Path getQueryPath(String queryId, String environment)
+    {
+        Path queryDir = Path.of(props.getQueryDir());
+        return requireInQueryDir(queryId, queryDir, FileSystemQueryLayout.queryPath(queryDir, queryId, environment));
+    }
+
+    public Path getLegacyQueryPath(String queryId)
+    {
+        Path queryDir = Path.of(props.getQueryDir());
+        return requireInQueryDir(queryId, queryDir, FileSystemQueryLayout.legacyQueryPath(queryDir, queryId));
+    }
+
+    // Last line of defense against IDs that would read or write files outside query-dir
+    private static Path requireInQueryDir(String queryId, Path queryDir, Path path)
+    {
+        if (!path.toAbsolutePath().normalize().startsWith(queryDir.toAbsolutePath().normalize())) {
+            throw new InvalidQueryRequestException(String.format("Invalid query ID \"%s\"", queryId));
+        }
+        return path;
     }
 
-    public Path getQueryPath(String queryId)
+    private interface StoredFileReader<T>
     {
-        return Path.of(props.getQueryDir(), queryId + FILE_EXTENSION);
+        T read(Path path)
+                throws IOException;
     }
 }
@@ -1,5 +1,6 @@
 package io.trino.historyserver.storage.jdbc;
 
+import io.trino.historyserver.exception.QueryNotFoundException;
 import io.trino.historyserver.exception.QueryStorageException;
 import io.trino.historyserver.exception.StorageInitializationException;
 import io.trino.historyserver.storage.QueryStorageHandler;
@@ -11,9 +12,13 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -79,6 +84,34 @@ public class JdbcStorageHandler
         log.info("event=query_record_write_succeeded type=success queryId={}", queryId);
     }
 
+    @Override
+    public void writeQueries(Map<String, String> queryJsons, String environment)
+            throws QueryStorageException
+    {
+        String sql = dialect.insertQueryStatement();
+        SqlParameterSource[] batch = queryJsons.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("queryId", entry.getKey())
+                        .addValue("environment", environment)
+                        .addValue("queryJson", entry.getValue()))
+                .toArray(SqlParameterSource[]::new);
+
+        try {
+            namedJdbcTemplate.batchUpdate(sql, batch);
+        }
+        catch (DataAccessException e) {
+            String queryIds = String.join(",", queryJsons.keySet());
+            throw new QueryStorageException(
+                    String.format(
+                            "Failed to write batch of %d queries to query history table.",
+                            queryJsons.size()
+                    ),
+                    queryIds, e
+            );
+        }
+        log.info("event=query_record_batch_write_succeeded type=success count={}", queryJsons.size());
+    }
+
     @Override
     public String readQuery(String queryId, String environment)
             throws QueryStorageException
@@ -95,7 +128,7 @@ public class JdbcStorageHandler
             return queryJson;
         }
         catch (EmptyResultDataAccessException e) {
-            throw new QueryStorageException(
+            throw new QueryNotFoundException(
                     String.format(
                             "Query %s not found in query history table (environment: \"%s\").",
                             queryId, environment
@@ -113,4 +146,33 @@ public class JdbcStorageHandler
             );
         }
     }
+
+    @Override
+    public Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException
+    {
+        String sql = dialect.selectQueriesStatement();
+        Map<String, Object> params = Map.of(
+                "queryIds", queryIds,
+                "environment", environment
+        );
+        Map<String, String> queryJsons = new HashMap<>();
+
+        try {
+            namedJdbcTemplate.query(sql, params, resultSet -> {
+                queryJsons.put(resultSet.getString("query_id"), resultSet.getString("query_info"));
+            });
+        }
+        catch (DataAccessException e) {
+            throw new QueryStorageException(
+                    String.format(
+                            "Failed to read %d queries from query history table.",
+                            queryIds.size()
+                    ),
+                    String.join(",", queryIds), e
+            );
+        }
+        log.info("event=query_record_batch_read_succeeded type=success requested={} found={}", queryIds.size(), queryJsons.size());
+        return queryJsons;
+    }
 }
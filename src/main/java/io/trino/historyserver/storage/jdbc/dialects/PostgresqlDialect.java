@@ -46,4 +46,13 @@ public class PostgresqlDialect
             WHERE query_id = :queryId AND environment = :environment
             """;
     }
+
+    @Override
+    public String selectQueriesStatement()
+    {
+        return """
+            SELECT query_id, query_info FROM query_history
+            WHERE query_id IN (:queryIds) AND environment = :environment
+            """;
+    }
 }
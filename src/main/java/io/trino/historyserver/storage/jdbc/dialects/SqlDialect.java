@@ -17,4 +17,7 @@ public interface SqlDialect
 
     // SQL for selecting query by ID and environment values combination
     String selectQueryStatement();
+
+    // SQL for selecting the query ID and query information of every :queryIds value in one environment
+    String selectQueriesStatement();
 }
@@ -1,27 +1,42 @@
 package io.trino.historyserver.storage.s3;
 
+import io.trino.historyserver.exception.QueryNotFoundException;
 import io.trino.historyserver.exception.QueryStorageException;
 import io.trino.historyserver.exception.StorageInitializationException;
+import io.trino.historyserver.storage.BulkReadProperties;
+import io.trino.historyserver.storage.ConcurrentQueryReader;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
 import io.trino.historyserver.storage.QueryStorageHandler;
+import io.trino.historyserver.storage.compression.QueryCodec;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Service
@@ -35,6 +50,9 @@ public class S3StorageHandler
 
     private final S3Client s3Client;
     private final S3StorageHandlerProperties props;
+    private final BulkReadProperties bulkReadProps;
+    private final Scheduler storageScheduler;
+    private final QueryCodec codec;
 
     @PostConstruct
     private void ensureBucketExists()
@@ -62,17 +80,10 @@ public class S3StorageHandler
     {
         String key = generateQueryKey(queryId, environment);
 
-        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                .bucket(props.getBucket())
-                .key(key)
-                .contentType(JSON_MEDIA_TYPE)
-                .storageClass(props.getStorageClass())
-                .build();
-
         try {
-            s3Client.putObject(putObjectRequest, RequestBody.fromString(queryJson));
+            s3Client.putObject(putObjectRequest(key), RequestBody.fromBytes(codec.encode(queryJson)));
         }
-        catch (S3Exception e) {
+        catch (S3Exception | IOException e) {
             throw new QueryStorageException(
                     String.format(
                             "Failed to write query %s JSON to key \"%s\" (bucket: \"%s\")",
@@ -84,20 +95,97 @@ public class S3StorageHandler
         log.info("event=query_write_succeeded type=success queryId={} key=\"{}\" bucket=\"{}\"", queryId, key, props.getBucket());
     }
 
+    // Memory use is bounded by one part: the first part decides between a single PutObject and a multipart upload.
+    // readNBytes(int) reads in small steps and allocates only what the stream holds, so a document of a few KB
+    // costs a few KB; a full part buffer exists only once the document turns out to need a multipart upload.
+    // When compression is on, the document is compressed into memory first, which holds the compressed size only.
+    @Override
+    public void writeQueryStream(String queryId, String environment, InputStream queryJson)
+            throws QueryStorageException
+    {
+        String key = generateQueryKey(queryId, environment);
+
+        try {
+            InputStream content = codec.isCompressing() ? new ByteArrayInputStream(codec.encode(queryJson)) : queryJson;
+            byte[] firstPart = content.readNBytes(props.getMultipartPartSizeBytes());
+            if (firstPart.length < props.getMultipartPartSizeBytes()) {
+                s3Client.putObject(putObjectRequest(key), RequestBody.fromBytes(firstPart));
+            }
+            else {
+                uploadMultipart(key, content, firstPart);
+            }
+        }
+        catch (SdkException | IOException e) {
+            throw new QueryStorageException(
+                    String.format(
+                            "Failed to write query %s JSON stream to key \"%s\" (bucket: \"%s\")",
+                            queryId, key, props.getBucket()
+                    ),
+                    queryId, e
+            );
+        }
+        log.info("event=query_write_succeeded type=success queryId={} key=\"{}\" bucket=\"{}\"", queryId, key, props.getBucket());
+    }
+
     @Override
     public String readQuery(String queryId, String environment)
             throws QueryStorageException
     {
-        String queryJson;
         String key = generateQueryKey(queryId, environment);
+        String queryJson = readObject(queryId, key, codec::decode);
+        log.info("event=query_read_succeeded type=success queryId={} key=\"{}\" bucket=\"{}\"", queryId, key, props.getBucket());
+        return queryJson;
+    }
+
+    @Override
+    public EncodedQuery readEncodedQuery(String queryId, String environment, Set<ContentEncoding> accepted)
+            throws QueryStorageException
+    {
+        String key = generateQueryKey(queryId, environment);
+        EncodedQuery encodedQuery = readObject(queryId, key, stored -> codec.forServing(stored, accepted));
+        log.info("event=query_read_succeeded type=success queryId={} key=\"{}\" bucket=\"{}\" encoding={}", queryId, key, props.getBucket(), encodedQuery.encoding().headerValue());
+        return encodedQuery;
+    }
+
+    @Override
+    public Map<String, String> readQueries(List<String> queryIds, String environment)
+            throws QueryStorageException
+    {
+        Map<String, String> queryJsons = ConcurrentQueryReader.readAll(queryIds, bulkReadProps.getConcurrency(), storageScheduler, queryId -> readIfExists(queryId, environment));
+        log.info("event=query_batch_read_succeeded type=success requested={} found={} bucket=\"{}\"", queryIds.size(), queryJsons.size(), props.getBucket());
+        return queryJsons;
+    }
 
+    private String readIfExists(String queryId, String environment)
+            throws QueryStorageException
+    {
+        try {
+            return readObject(queryId, generateQueryKey(queryId, environment), codec::decode);
+        }
+        catch (QueryNotFoundException e) {
+            return null;
+        }
+    }
+
+    private <T> T readObject(String queryId, String key, StoredObjectDecoder<T> decoder)
+            throws QueryStorageException
+    {
         GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                 .bucket(props.getBucket())
                 .key(key)
                 .build();
 
         try (ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(getObjectRequest)) {
-            queryJson = new String(s3Object.readAllBytes(), StandardCharsets.UTF_8);
+            return decoder.decode(s3Object.readAllBytes());
+        }
+        catch (NoSuchKeyException e) {
+            throw new QueryNotFoundException(
+                    String.format(
+                            "Query %s not found at key \"%s\" (bucket: \"%s\")",
+                            queryId, key, props.getBucket()
+                    ),
+                    queryId, e
+            );
         }
         catch (SdkException | IOException e) {
             throw new QueryStorageException(
@@ -108,8 +196,58 @@ public class S3StorageHandler
                     queryId, e
             );
         }
-        log.info("event=query_read_succeeded type=success queryId={} key=\"{}\" bucket=\"{}\"", queryId, key, props.getBucket());
-        return queryJson;
+    }
+
+    // The full first part is reused as the buffer for the following ones
+    private void uploadMultipart(String key, InputStream queryJson, byte[] part)
+            throws IOException
+    {
+        String uploadId = s3Client.createMultipartUpload(request -> request
+                        .bucket(props.getBucket())
+                        .key(key)
+                        .contentType(JSON_MEDIA_TYPE)
+                        .storageClass(props.getStorageClass()))
+                .uploadId();
+
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int length = part.length;
+            while (length > 0) {
+                int partNumber = parts.size() + 1;
+                String eTag = s3Client.uploadPart(
+                        request -> request.bucket(props.getBucket()).key(key).uploadId(uploadId).partNumber(partNumber),
+                        RequestBody.fromBytes(length == part.length ? part : Arrays.copyOf(part, length))
+                ).eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+                length = queryJson.readNBytes(part, 0, part.length);
+            }
+
+            s3Client.completeMultipartUpload(request -> request
+                    .bucket(props.getBucket())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(upload -> upload.parts(parts)));
+        }
+        catch (SdkException | IOException e) {
+            // An unfinished upload keeps its parts (and their cost) until it is aborted
+            try {
+                s3Client.abortMultipartUpload(request -> request.bucket(props.getBucket()).key(key).uploadId(uploadId));
+            }
+            catch (SdkException abortException) {
+                e.addSuppressed(abortException);
+            }
+            throw e;
+        }
+    }
+
+    private PutObjectRequest putObjectRequest(String key)
+    {
+        return PutObjectRequest.builder()
+                .bucket(props.getBucket())
+                .key(key)
+                .contentType(JSON_MEDIA_TYPE)
+                .storageClass(props.getStorageClass())
+                .build();
     }
 
     private void createBucketIfNotExists()
@@ -136,6 +274,12 @@ public class S3StorageHandler
     {
         return Path.of(props.getQueryDir(), environment, queryId + FILE_EXTENSION).toString();
     }
+
+    private interface StoredObjectDecoder<T>
+    {
+        T decode(byte[] stored)
+                throws IOException;
+    }
 }
 
 
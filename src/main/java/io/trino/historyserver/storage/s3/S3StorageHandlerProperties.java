@@ -29,4 +29,8 @@ public class S3StorageHandlerProperties
     private StorageClass storageClass = StorageClass.STANDARD;
 
     private boolean pathStyleAccess = true;
+
+    // Buffer size for streamed writes. Smaller documents are uploaded with one PutObject, larger ones
+    // with a multipart upload of parts this size (S3 requires at least 5MB per part)
+    private int multipartPartSizeBytes = 8 * 1024 * 1024;
 }
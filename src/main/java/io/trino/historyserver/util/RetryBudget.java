@@ -0,0 +1,33 @@
+package io.trino.historyserver.util;
+
+// Token bucket shared by all calls of one operation. Every call deposits budget-ratio of a token and every extra
+// attempt (a retry, or a hedged read) withdraws a whole one, so once the reserve is spent the extra attempts are
+// held to that fraction of the traffic.
+public class RetryBudget
+{
+    private final double ratio;
+    private final double reserve;
+
+    private double balance;
+
+    public RetryBudget(double ratio, int reserve)
+    {
+        this.ratio = ratio;
+        this.reserve = reserve;
+        this.balance = reserve;
+    }
+
+    public synchronized void deposit()
+    {
+        balance = Math.min(balance + ratio, reserve);
+    }
+
+    public synchronized boolean tryWithdraw()
+    {
+        if (balance < 1) {
+            return false;
+        }
+        balance--;
+        return true;
+    }
+}
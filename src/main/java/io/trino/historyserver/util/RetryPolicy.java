@@ -0,0 +1,28 @@
+package io.trino.historyserver.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Exponential backoff with jitter: attempt n waits backoff-millis * 2^(n-1), capped at max-backoff-millis and spread
+// by +/- jitter-factor of that delay. Retries of one operation are limited by a budget that earns budget-ratio of a
+// retry per call and holds at most budget-reserve retries, so a failing backend sees few retries instead of a storm.
+public record RetryPolicy(
+        int maxAttempts,
+        long backoffMillis,
+        long maxBackoffMillis,
+        double jitterFactor,
+        double budgetRatio,
+        int budgetReserve)
+{
+    public long delayMillis(int attempt)
+    {
+        long delay = backoffMillis << Math.min(attempt - 1, 30);
+        if (delay <= 0 || delay > maxBackoffMillis) {
+            delay = maxBackoffMillis;
+        }
+        long spread = (long) (delay * jitterFactor);
+        if (spread == 0) {
+            return delay;
+        }
+        return Math.min(delay + ThreadLocalRandom.current().nextLong(-spread, spread + 1), maxBackoffMillis);
+    }
+}
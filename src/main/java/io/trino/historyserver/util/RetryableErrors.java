@@ -0,0 +1,48 @@
+package io.trino.historyserver.util;
+
+import io.trino.historyserver.exception.QueryNotFoundException;
+import org.springframework.dao.NonTransientDataAccessException;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+
+// Decides whether a failed storage operation can succeed when attempted again.
+// Errors that will fail the same way every time (a duplicate key, a missing object, a rejected request)
+// and interruptions during shutdown are not retried. Everything else is assumed to be transient.
+public final class RetryableErrors
+{
+    private RetryableErrors() {}
+
+    public static boolean isRetryable(Throwable error)
+    {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (isPermanent(cause)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPermanent(Throwable error)
+    {
+        if (error instanceof AwsServiceException serviceError) {
+            int status = serviceError.statusCode();
+            return error instanceof NoSuchKeyException || (status >= 400 && status < 500 && status != 408 && status != 429);
+        }
+        return error instanceof QueryNotFoundException
+                || error instanceof NonTransientDataAccessException
+                || error instanceof NoSuchFileException
+                || error instanceof FileAlreadyExistsException
+                || error instanceof AccessDeniedException
+                || error instanceof IllegalArgumentException
+                || error instanceof InterruptedException
+                || (error instanceof InterruptedIOException && !(error instanceof SocketTimeoutException))
+                || error instanceof ClosedByInterruptException;
+    }
+}
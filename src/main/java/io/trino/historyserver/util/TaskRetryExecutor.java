@@ -1,43 +1,136 @@
 package io.trino.historyserver.util;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+// Retries failed tasks with exponential backoff and jitter (see RetryPolicy). Only errors classified as transient by
+// RetryableErrors are retried, and each operation's retries are capped by its RetryBudget.
+// The reactive variant schedules every retry on a timer, so no thread is held while waiting. The blocking variant
+// parks the caller between attempts and stops as soon as the caller is interrupted.
 @Slf4j
 @Component
 public class TaskRetryExecutor
 {
-    public <T> T executeWithRetry(Supplier<T> task, int maxRetries, long backoffMillis)
+    public static final String RETRIES_METRIC = "task.retry.attempts";
+    public static final String SKIPPED_METRIC = "task.retry.skipped";
+    public static final String EXHAUSTED_METRIC = "task.retry.exhausted";
+    public static final String RECOVERED_METRIC = "task.retry.recovered";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+
+    public TaskRetryExecutor(MeterRegistry meterRegistry)
     {
-        RuntimeException lastException = new RuntimeException();
+        this.meterRegistry = meterRegistry;
+    }
 
-        for (int i = 1; i <= maxRetries; i++) {
+    public <T> T executeWithRetry(String operation, Supplier<T> task, RetryPolicy policy)
+    {
+        RetryBudget budget = budget(operation, policy);
+        budget.deposit();
+
+        for (int attempt = 1; ; attempt++) {
             try {
-                return task.get();
+                T result = task.get();
+                if (attempt > 1) {
+                    meterRegistry.counter(RECOVERED_METRIC, "operation", operation).increment();
+                }
+                return result;
             }
             catch (RuntimeException e) {
-                lastException = e;
-                log.warn("event=task_retry_failed type=server_error message=\"retry {}/{} failed due to {}\"", i, maxRetries, e.getMessage());
-                if (i < maxRetries) {
-                    try {
-                        Thread.sleep(backoffMillis * i);
-                    }
-                    catch (InterruptedException ignored) {
-                    }
+                if (!shouldRetry(operation, e, attempt, policy, budget, RetryableErrors::isRetryable)) {
+                    throw e;
                 }
+                sleep(operation, policy.delayMillis(attempt), e);
             }
         }
-        log.warn("event=task_failed type=server_error message=\"All task {} retries failed\"" , maxRetries);
-        throw lastException;
     }
 
-    public void executeWithRetry(Runnable task, int maxRetries, long backoffMillis)
+    public void executeWithRetry(String operation, Runnable task, RetryPolicy policy)
     {
-        executeWithRetry(() -> {
+        executeWithRetry(operation, () -> {
             task.run();
             return null;
-        }, maxRetries, backoffMillis);
+        }, policy);
+    }
+
+    // The task is subscribed again for every attempt. Errors rejected by the filter, or classified as permanent,
+    // are propagated without a retry.
+    public <T> Mono<T> retry(String operation, Mono<T> task, RetryPolicy policy, Predicate<Throwable> filter)
+    {
+        return Mono.defer(() -> {
+            RetryBudget budget = budget(operation, policy);
+            budget.deposit();
+            Predicate<Throwable> retryable = filter.and(RetryableErrors::isRetryable);
+            AtomicBoolean retried = new AtomicBoolean();
+
+            return task.retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                        int attempt = (int) signal.totalRetries() + 1;
+                        if (!shouldRetry(operation, signal.failure(), attempt, policy, budget, retryable)) {
+                            return Mono.error(signal.failure());
+                        }
+                        retried.set(true);
+                        return Mono.delay(Duration.ofMillis(policy.delayMillis(attempt)));
+                    })))
+                    .doOnSuccess(ignored -> {
+                        if (retried.get()) {
+                            meterRegistry.counter(RECOVERED_METRIC, "operation", operation).increment();
+                        }
+                    });
+        });
+    }
+
+    private boolean shouldRetry(String operation, Throwable error, int attempt, RetryPolicy policy, RetryBudget budget, Predicate<Throwable> retryable)
+    {
+        if (!retryable.test(error)) {
+            meterRegistry.counter(SKIPPED_METRIC, "operation", operation, "reason", "non_retryable").increment();
+            // Permanent errors such as a missing query are expected outcomes, the caller decides how to report them
+            log.debug("event=task_retry_skipped type=client_error operation={} attempt={} message=\"not retryable: {}\"", operation, attempt, error.getMessage());
+            return false;
+        }
+        if (attempt >= policy.maxAttempts()) {
+            meterRegistry.counter(EXHAUSTED_METRIC, "operation", operation).increment();
+            log.warn("event=task_failed type=server_error operation={} message=\"All task {} attempts failed\"", operation, attempt);
+            return false;
+        }
+        if (!budget.tryWithdraw()) {
+            meterRegistry.counter(SKIPPED_METRIC, "operation", operation, "reason", "budget_exhausted").increment();
+            log.warn("event=task_retry_skipped type=server_error operation={} attempt={} message=\"retry budget exhausted: {}\"", operation, attempt, error.getMessage());
+            return false;
+        }
+
+        meterRegistry.counter(RETRIES_METRIC, "operation", operation).increment();
+        log.warn("event=task_retry_failed type=server_error operation={} message=\"retry {}/{} failed due to {}\"", operation, attempt, policy.maxAttempts(), error.getMessage());
+        return true;
+    }
+
+    private RetryBudget budget(String operation, RetryPolicy policy)
+    {
+        return budgets.computeIfAbsent(operation, key -> new RetryBudget(policy.budgetRatio(), policy.budgetReserve()));
+    }
+
+    private static void sleep(String operation, long delayMillis, RuntimeException failure)
+    {
+        try {
+            TimeUnit.MILLISECONDS.sleep(delayMillis);
+        }
+        catch (InterruptedException e) {
+            // Give up on interruption, so a shutting down thread is not held in the retry loop
+            Thread.currentThread().interrupt();
+            log.warn("event=task_retry_interrupted type=server_error operation={}", operation);
+            failure.addSuppressed(e);
+            throw failure;
+        }
     }
 }
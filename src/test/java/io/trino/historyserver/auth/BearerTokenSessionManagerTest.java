@@ -0,0 +1,81 @@
+package io.trino.historyserver.auth;
+
+import io.trino.historyserver.exception.TrinoAuthException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BearerTokenSessionManagerTest {
+
+    private static final String COORDINATOR_URL = "http://localhost:8080";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void applyCredential_ShouldSetAuthorizationHeader() {
+        // Given
+        BearerTokenAuthProperties props = new BearerTokenAuthProperties();
+        props.setToken("static-token");
+        BearerTokenSessionManager manager = new BearerTokenSessionManager(props);
+        HttpHeaders headers = new HttpHeaders();
+
+        // When
+        manager.applyCredential(headers, manager.getSessionCookieAsync(COORDINATOR_URL).block());
+
+        // Then
+        assertEquals("Bearer static-token", headers.getFirst(HttpHeaders.AUTHORIZATION));
+        assertNull(headers.getFirst(HttpHeaders.COOKIE));
+    }
+
+    @Test
+    void refreshSessionCookieAsync_ShouldReadRotatedToken_WhenTokenFileChanged() throws IOException {
+        // Given
+        Path tokenFile = tempDir.resolve("token");
+        Files.writeString(tokenFile, "token-1\n");
+        BearerTokenAuthProperties props = new BearerTokenAuthProperties();
+        props.setTokenFile(tokenFile.toString());
+        BearerTokenSessionManager manager = new BearerTokenSessionManager(props);
+        String expired = manager.getSessionCookie(COORDINATOR_URL);
+        Files.writeString(tokenFile, "token-2\n");
+
+        // When
+        String refreshed = manager.refreshSessionCookieAsync(COORDINATOR_URL, expired).block();
+
+        // Then
+        assertEquals("Bearer token-1", expired);
+        assertEquals("Bearer token-2", refreshed);
+        assertEquals(refreshed, manager.getSessionCookie(COORDINATOR_URL));
+    }
+
+    @Test
+    void refreshSessionCookieAsync_ShouldFail_WhenStaticTokenIsRejected() {
+        // Given
+        BearerTokenAuthProperties props = new BearerTokenAuthProperties();
+        props.setToken("static-token");
+        BearerTokenSessionManager manager = new BearerTokenSessionManager(props);
+
+        // When & Then
+        assertThrows(TrinoAuthException.class,
+                () -> manager.refreshSessionCookieAsync(COORDINATOR_URL, "Bearer static-token").block());
+    }
+
+    @Test
+    void isTokenSourceValid_ShouldRequireExactlyOneSource() {
+        // Given
+        BearerTokenAuthProperties props = new BearerTokenAuthProperties();
+
+        // When & Then
+        assertFalse(props.isTokenSourceValid());
+        props.setToken("static-token");
+        assertTrue(props.isTokenSourceValid());
+        props.setTokenFile("/var/run/secrets/trino-token");
+        assertFalse(props.isTokenSourceValid());
+    }
+}
@@ -0,0 +1,70 @@
+package io.trino.historyserver.auth;
+
+import io.trino.historyserver.exception.TrinoAuthException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientCertificateSessionManagerTest {
+
+    private static final String COORDINATOR_URL = "https://localhost:8443";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void constructor_ShouldThrowException_WhenKeystoreIsMissing() {
+        // Given
+        ClientCertificateAuthProperties props = new ClientCertificateAuthProperties();
+        props.setKeystorePath(tempDir.resolve("missing.p12").toString());
+
+        // When & Then
+        assertThrows(TrinoAuthException.class, () -> new ClientCertificateSessionManager(props));
+    }
+
+    @Test
+    void applyCredential_ShouldNotSetAnyHeader() throws IOException, GeneralSecurityException {
+        // Given
+        ClientCertificateSessionManager manager = new ClientCertificateSessionManager(propsWithEmptyKeystore());
+        HttpHeaders headers = new HttpHeaders();
+
+        // When
+        manager.applyCredential(headers, manager.getSessionCookieAsync(COORDINATOR_URL).block());
+
+        // Then
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    void refreshSessionCookieAsync_ShouldFail_BecauseCertificateCannotBeRenewed() throws IOException, GeneralSecurityException {
+        // Given
+        ClientCertificateSessionManager manager = new ClientCertificateSessionManager(propsWithEmptyKeystore());
+
+        // When & Then
+        assertThrows(TrinoAuthException.class,
+                () -> manager.refreshSessionCookieAsync(COORDINATOR_URL, ClientCertificateSessionManager.CLIENT_CERTIFICATE_CREDENTIAL).block());
+    }
+
+    private ClientCertificateAuthProperties propsWithEmptyKeystore() throws IOException, GeneralSecurityException {
+        Path keystorePath = tempDir.resolve("client.p12");
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        try (OutputStream output = Files.newOutputStream(keystorePath)) {
+            keyStore.store(output, "changeit".toCharArray());
+        }
+
+        ClientCertificateAuthProperties props = new ClientCertificateAuthProperties();
+        props.setKeystorePath(keystorePath.toString());
+        props.setKeystorePassword("changeit");
+        return props;
+    }
+}
@@ -0,0 +1,123 @@
+package io.trino.historyserver.auth;
+
+import io.trino.historyserver.exception.TrinoAuthException;
+import org.apache.kerby.kerberos.kerb.server.SimpleKdcServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against an in-process KDC (Apache Kerby) standing in for the corporate KDC
+class KerberosSessionManagerTest {
+
+    private static final String REALM = "EXAMPLE.COM";
+    private static final String CLIENT_PRINCIPAL = "history-server@" + REALM;
+    private static final String SERVICE_PRINCIPAL = "HTTP/localhost@" + REALM;
+
+    @TempDir
+    static Path workDir;
+
+    private static SimpleKdcServer kdc;
+    private static File keytab;
+    private static Path krb5Conf;
+
+    @BeforeAll
+    static void startKdc() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        kdc = new SimpleKdcServer();
+        kdc.setWorkDir(workDir.toFile());
+        kdc.setKdcHost("localhost");
+        kdc.setKdcRealm(REALM);
+        kdc.setAllowUdp(false);
+        kdc.setKdcTcpPort(port);
+        kdc.init();
+        kdc.start();
+
+        keytab = workDir.resolve("history-server.keytab").toFile();
+        kdc.createAndExportPrincipals(keytab, CLIENT_PRINCIPAL, SERVICE_PRINCIPAL);
+
+        krb5Conf = workDir.resolve("krb5.conf");
+        Files.writeString(krb5Conf, """
+                [libdefaults]
+                    default_realm = %s
+                    udp_preference_limit = 1
+                    dns_lookup_kdc = false
+                    dns_lookup_realm = false
+                [realms]
+                    %s = {
+                        kdc = localhost:%d
+                    }
+                """.formatted(REALM, REALM, port));
+    }
+
+    @AfterAll
+    static void stopKdc() throws Exception {
+        kdc.stop();
+    }
+
+    @Test
+    void getSessionCookieAsync_ShouldReturnNegotiateToken_ForCoordinatorHost() {
+        // Given
+        KerberosSessionManager manager = new KerberosSessionManager(props(CLIENT_PRINCIPAL), new TrinoSessionProperties());
+
+        // When
+        String first = manager.getSessionCookieAsync("http://localhost:8080").block();
+        String second = manager.getSessionCookieAsync("http://localhost:8080").block();
+
+        // Then
+        assertTrue(first.startsWith("Negotiate "));
+        // A SPNEGO initial token is an ASN.1 application-tagged sequence
+        assertEquals(0x60, Base64.getDecoder().decode(first.substring("Negotiate ".length()))[0] & 0xff);
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void applyCredential_ShouldSetAuthorizationHeader() {
+        // Given
+        KerberosSessionManager manager = new KerberosSessionManager(props(CLIENT_PRINCIPAL), new TrinoSessionProperties());
+        HttpHeaders headers = new HttpHeaders();
+
+        // When
+        manager.applyCredential(headers, manager.getSessionCookie("http://localhost:8080"));
+
+        // Then
+        assertTrue(headers.getFirst(HttpHeaders.AUTHORIZATION).startsWith("Negotiate "));
+    }
+
+    @Test
+    void getSessionCookie_ShouldThrowException_WhenCoordinatorHasNoServicePrincipal() {
+        // Given
+        KerberosSessionManager manager = new KerberosSessionManager(props(CLIENT_PRINCIPAL), new TrinoSessionProperties());
+
+        // When & Then
+        assertThrows(TrinoAuthException.class, () -> manager.getSessionCookie("http://unknown-coordinator:8080"));
+    }
+
+    @Test
+    void constructor_ShouldThrowException_WhenPrincipalIsNotInKeytab() {
+        // When & Then
+        assertThrows(TrinoAuthException.class,
+                () -> new KerberosSessionManager(props("someone-else@" + REALM), new TrinoSessionProperties()));
+    }
+
+    private static KerberosAuthProperties props(String principal) {
+        KerberosAuthProperties props = new KerberosAuthProperties();
+        props.setPrincipal(principal);
+        props.setKeytab(keytab.getAbsolutePath());
+        props.setConfig(krb5Conf.toString());
+        return props;
+    }
+}
@@ -6,7 +6,21 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -24,7 +38,7 @@ class PasswordSessionManagerTest {
 
     @BeforeEach
     void setUp() {
-        passwordSessionManager = new PasswordSessionManager(authProps, webClient);
+        passwordSessionManager = new PasswordSessionManager(authProps, new TrinoSessionProperties(), webClient);
     }
 
     @Test
@@ -34,7 +48,7 @@ class PasswordSessionManagerTest {
         WebClient testWebClient = mock(WebClient.class);
 
         // When
-        PasswordSessionManager manager = new PasswordSessionManager(testProps, testWebClient);
+        PasswordSessionManager manager = new PasswordSessionManager(testProps, new TrinoSessionProperties(), testWebClient);
 
         // Then
         assertNotNull(manager);
@@ -74,4 +88,149 @@ class PasswordSessionManagerTest {
         assertThrows(RuntimeException.class, () -> passwordSessionManager.getSessionCookie(coordinator1));
         assertThrows(RuntimeException.class, () -> passwordSessionManager.getSessionCookie(coordinator2));
     }
+
+    @Test
+    void getSessionCookieAsync_ShouldShareOneLogin_BetweenConcurrentCallers() {
+        // Given
+        AtomicInteger logins = new AtomicInteger();
+        PasswordSessionManager manager = new PasswordSessionManager(authProps, new TrinoSessionProperties(), loginWebClient(logins));
+        when(authProps.getUsername()).thenReturn("admin");
+        when(authProps.getPassword()).thenReturn("secret");
+
+        // When
+        List<String> cookies = Flux.range(0, 10)
+                .flatMap(i -> manager.getSessionCookieAsync("http://localhost:8080"))
+                .collectList()
+                .block();
+
+        // Then
+        assertEquals(1, logins.get());
+        assertEquals(10, cookies.size());
+        assertTrue(cookies.stream().allMatch("Trino-UI-Token=token-1"::equals));
+    }
+
+    @Test
+    void refreshSessionCookieAsync_ShouldSkipLogin_WhenCookieWasAlreadyRotated() {
+        // Given
+        AtomicInteger logins = new AtomicInteger();
+        PasswordSessionManager manager = new PasswordSessionManager(authProps, new TrinoSessionProperties(), loginWebClient(logins));
+        when(authProps.getUsername()).thenReturn("admin");
+        when(authProps.getPassword()).thenReturn("secret");
+        String expired = manager.getSessionCookieAsync("http://localhost:8080").block();
+
+        // When
+        String first = manager.refreshSessionCookieAsync("http://localhost:8080", expired).block();
+        String second = manager.refreshSessionCookieAsync("http://localhost:8080", expired).block();
+
+        // Then
+        assertEquals("Trino-UI-Token=token-2", first);
+        assertEquals(first, second);
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    void getSessionCookieAsync_ShouldLoginAgain_WhenCookieMaxAgeHasPassed() {
+        // Given
+        AtomicInteger logins = new AtomicInteger();
+        PasswordSessionManager manager = new PasswordSessionManager(
+                authProps, new TrinoSessionProperties(), loginWebClient(logins, token -> "Trino-UI-Token=" + token + "; Path=/ui; Max-Age=0"));
+        when(authProps.getUsername()).thenReturn("admin");
+        when(authProps.getPassword()).thenReturn("secret");
+        manager.getSessionCookieAsync("http://localhost:8080").block();
+
+        // When
+        String cookie = manager.getSessionCookieAsync("http://localhost:8080").block();
+
+        // Then
+        assertEquals("Trino-UI-Token=token-2", cookie);
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    void getSessionCookieAsync_ShouldLoginAgain_WhenJwtHasExpired() {
+        // Given
+        AtomicInteger logins = new AtomicInteger();
+        long expiredAt = System.currentTimeMillis() / 1000 - 60;
+        PasswordSessionManager manager = new PasswordSessionManager(
+                authProps, new TrinoSessionProperties(), loginWebClient(logins, token -> "Trino-UI-Token=" + jwt(expiredAt) + "; Path=/ui"));
+        when(authProps.getUsername()).thenReturn("admin");
+        when(authProps.getPassword()).thenReturn("secret");
+        manager.getSessionCookieAsync("http://localhost:8080").block();
+
+        // When
+        manager.getSessionCookieAsync("http://localhost:8080").block();
+
+        // Then
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    void renewExpiringSessions_ShouldRenewCookie_WhenWithinRenewalWindow() {
+        // Given
+        AtomicInteger logins = new AtomicInteger();
+        TrinoSessionProperties sessionProps = new TrinoSessionProperties();
+        sessionProps.setRenewBeforeMillis(120000);
+        PasswordSessionManager manager = new PasswordSessionManager(
+                authProps, sessionProps, loginWebClient(logins, token -> "Trino-UI-Token=" + token + "; Path=/ui; Max-Age=60"));
+        when(authProps.getUsername()).thenReturn("admin");
+        when(authProps.getPassword()).thenReturn("secret");
+        manager.refreshSessionCookieAsync("http://localhost:8080", null).block();
+
+        // When
+        manager.renewExpiringSessions();
+
+        // Then
+        await(() -> logins.get() == 2);
+        await(() -> "Trino-UI-Token=token-2".equals(manager.getSessionCookie("http://localhost:8080")));
+    }
+
+    @Test
+    void renewExpiringSessions_ShouldSkipCoordinator_WhenSessionWasIdle() {
+        // Given
+        AtomicInteger logins = new AtomicInteger();
+        TrinoSessionProperties sessionProps = new TrinoSessionProperties();
+        sessionProps.setRenewBeforeMillis(120000);
+        sessionProps.setIdleSessionTimeoutMillis(100);
+        PasswordSessionManager manager = new PasswordSessionManager(
+                authProps, sessionProps, loginWebClient(logins, token -> "Trino-UI-Token=" + token + "; Path=/ui; Max-Age=60"));
+        when(authProps.getUsername()).thenReturn("admin");
+        when(authProps.getPassword()).thenReturn("secret");
+        manager.refreshSessionCookieAsync("http://localhost:8080", null).block();
+        LockSupport.parkNanos(Duration.ofMillis(200).toNanos());
+
+        // When
+        manager.renewExpiringSessions();
+
+        // Then
+        LockSupport.parkNanos(Duration.ofMillis(200).toNanos());
+        assertEquals(1, logins.get());
+    }
+
+    private static WebClient loginWebClient(AtomicInteger logins) {
+        return loginWebClient(logins, token -> "Trino-UI-Token=" + token + "; Path=/ui");
+    }
+
+    private static WebClient loginWebClient(AtomicInteger logins, Function<String, String> setCookie) {
+        return WebClient.builder()
+                .exchangeFunction(request -> Mono.delay(Duration.ofMillis(50))
+                        .map(ignored -> ClientResponse.create(HttpStatus.SEE_OTHER)
+                                .header(HttpHeaders.SET_COOKIE, setCookie.apply("token-" + logins.incrementAndGet()))
+                                .build()))
+                .build();
+    }
+
+    private static String jwt(long expiresAtSeconds) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString(("{\"sub\":\"admin\",\"exp\":" + expiresAtSeconds + "}").getBytes(StandardCharsets.UTF_8));
+        return header + "." + payload + ".signature";
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition was not met in time");
+            LockSupport.parkNanos(Duration.ofMillis(10).toNanos());
+        }
+    }
 }
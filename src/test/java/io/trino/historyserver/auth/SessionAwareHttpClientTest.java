@@ -0,0 +1,83 @@
+package io.trino.historyserver.auth;
+
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.ExpiredSessionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionAwareHttpClientTest {
+
+    private static final QueryReference QUERY_REF = new QueryReference("test-query-id", "http://localhost:8080");
+
+    @Mock
+    private TrinoSessionManager sessionManager;
+
+    private final List<String> sentCookies = new ArrayList<>();
+    private SessionAwareHttpClient sessionAwareHttpClient;
+
+    @BeforeEach
+    void setUp() {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    String cookie = request.headers().getFirst(HttpHeaders.COOKIE);
+                    sentCookies.add(cookie);
+                    HttpStatus status = "Trino-UI-Token=expired".equals(cookie) ? HttpStatus.UNAUTHORIZED : HttpStatus.OK;
+                    return Mono.just(ClientResponse.create(status).body("{}").build());
+                })
+                .build();
+        sessionAwareHttpClient = new SessionAwareHttpClient(sessionManager, webClient);
+        doCallRealMethod().when(sessionManager).applyCredential(any(), any());
+    }
+
+    @Test
+    void runWithSessionRetry_ShouldSendSessionCookie() {
+        // Given
+        when(sessionManager.getSessionCookieAsync("http://localhost:8080")).thenReturn(Mono.just("Trino-UI-Token=valid"));
+
+        // When
+        String result = sessionAwareHttpClient.runWithSessionRetry(QUERY_REF, this::fetch);
+
+        // Then
+        assertEquals("{}", result);
+        assertEquals(List.of("Trino-UI-Token=valid"), sentCookies);
+    }
+
+    @Test
+    void runWithSessionRetry_ShouldRefreshCookieAndRetry_WhenSessionExpired() {
+        // Given
+        when(sessionManager.getSessionCookieAsync("http://localhost:8080")).thenReturn(Mono.just("Trino-UI-Token=expired"));
+        when(sessionManager.refreshSessionCookieAsync("http://localhost:8080", "Trino-UI-Token=expired")).thenReturn(Mono.just("Trino-UI-Token=valid"));
+
+        // When
+        String result = sessionAwareHttpClient.runWithSessionRetry(QUERY_REF, this::fetch);
+
+        // Then
+        assertEquals("{}", result);
+        assertEquals(List.of("Trino-UI-Token=expired", "Trino-UI-Token=valid"), sentCookies);
+        verify(sessionManager).refreshSessionCookieAsync("http://localhost:8080", "Trino-UI-Token=expired");
+    }
+
+    private Mono<String> fetch(WebClient client) {
+        return client.get()
+                .uri("http://localhost:8080/ui/api/query/test-query-id")
+                .retrieve()
+                .onStatus(status -> status.value() == 401,
+                        response -> Mono.error(new ExpiredSessionException("Coordinator auth cookie expired")))
+                .bodyToMono(String.class);
+    }
+}
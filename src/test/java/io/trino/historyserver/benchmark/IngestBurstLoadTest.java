@@ -0,0 +1,235 @@
+package io.trino.historyserver.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.trino.historyserver.HistoryServerApplication;
+import io.trino.historyserver.dto.QueryReferenceFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test comparing ingestion under a burst of concurrent requests on platform threads and on virtual threads
+ * ({@code spring.threads.virtual.enabled}).
+ * <p>
+ * For each mode the history server is started on a random port with filesystem storage, backed by a stub coordinator
+ * that answers the login and query endpoints after a fixed delay. A burst of {@code POST /api/v1/query} requests is
+ * released at once, and throughput, latency percentiles, failures and the peak number of platform threads are reported.
+ * The coordinator connection pool is opened up and the per-coordinator concurrency limit is disabled for the run so
+ * that neither dominates the comparison.
+ * <p>
+ * Arguments: {@code [requests=5000] [coordinatorDelayMillis=100] [ingestionMode=sync] [eventSizeBytes=16384]}
+ */
+public final class IngestBurstLoadTest
+{
+    private static final int WARMUP_REQUESTS = 200;
+
+    private IngestBurstLoadTest() {}
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long coordinatorDelayMillis = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        String ingestionMode = args.length > 2 ? args[2] : "sync";
+        int eventSizeBytes = args.length > 3 ? Integer.parseInt(args[3]) : 16384;
+
+        HttpServer coordinator = startStubCoordinator(coordinatorDelayMillis, eventSizeBytes);
+        String coordinatorUrl = "http://127.0.0.1:" + coordinator.getAddress().getPort();
+        Path queryDir = Files.createTempDirectory("ingest-burst-load-test");
+
+        try {
+            List<Result> results = new ArrayList<>();
+            for (boolean virtualThreads : new boolean[] {false, true}) {
+                results.add(run(virtualThreads, requests, ingestionMode, coordinatorUrl, queryDir));
+            }
+
+            System.out.printf("%nBurst of %d requests, coordinator delay %d ms, ingestion.mode=%s%n", requests, coordinatorDelayMillis, ingestionMode);
+            System.out.printf("%-10s %8s %10s %10s %9s %9s %9s %16s%n",
+                    "threads", "failed", "wall (ms)", "req/s", "p50 (ms)", "p99 (ms)", "max (ms)", "peak platform");
+            for (Result result : results) {
+                System.out.printf("%-10s %8d %10d %10.0f %9.1f %9.1f %9.1f %16d%n",
+                        result.mode(),
+                        result.failed(),
+                        result.wallMillis(),
+                        result.throughput(),
+                        result.percentileMillis(0.50),
+                        result.percentileMillis(0.99),
+                        result.percentileMillis(1.0),
+                        result.peakPlatformThreads());
+            }
+        }
+        finally {
+            coordinator.stop(0);
+        }
+    }
+
+    private static Result run(boolean virtualThreads, int requests, String ingestionMode, String coordinatorUrl, Path queryDir)
+            throws Exception
+    {
+        String mode = virtualThreads ? "virtual" : "platform";
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(HistoryServerApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.mvc.async.request-timeout=300000",
+                        "ingestion.mode=" + ingestionMode,
+                        "ingestion.async.queue-capacity=" + (requests + WARMUP_REQUESTS),
+                        "storage.type=filesystem",
+                        "storage.filesystem.query-dir=" + queryDir.resolve(mode),
+                        "global.environment=load-test",
+                        "trino.auth.username=load-test",
+                        "trino.auth.password=load-test",
+                        "http.client.max-connections-per-coordinator=500",
+                        "http.client.pending-acquire-max-count=-1",
+                        "http.client.pending-acquire-timeout-millis=300000",
+                        "fetch.coordinator.enabled=false",
+                        "logging.level.root=WARN")
+                .run()) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI ingestUri = URI.create("http://127.0.0.1:" + port + "/api/v1/query");
+
+            burst(ingestUri, coordinatorUrl, mode + "-warmup", WARMUP_REQUESTS);
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            Result result = burst(ingestUri, coordinatorUrl, mode, requests);
+            return result.withPeakPlatformThreads(threads.getPeakThreadCount());
+        }
+    }
+
+    private static Result burst(URI ingestUri, String coordinatorUrl, String mode, int requests)
+            throws InterruptedException
+    {
+        long[] latencies = new long[requests];
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(requests);
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+                HttpClient httpClient = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(Duration.ofSeconds(30))
+                        .executor(clients)
+                        .build()) {
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                String queryId = String.format("20260101_000000_%05d_%s", index, mode);
+                HttpRequest request = HttpRequest.newBuilder(ingestUri)
+                        .timeout(Duration.ofMinutes(5))
+                        .header("Content-Type", "application/json")
+                        .header(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER, coordinatorUrl)
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"metadata\":{\"queryId\":\"" + queryId + "\"}}"))
+                        .build();
+
+                clients.execute(() -> {
+                    try {
+                        start.await();
+                        long begin = System.nanoTime();
+                        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                        latencies[index] = System.nanoTime() - begin;
+                        if (response.statusCode() >= 300) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                    catch (IOException | InterruptedException e) {
+                        failed.incrementAndGet();
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                });
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            done.await(10, TimeUnit.MINUTES);
+            long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            return new Result(mode, failed.get(), wallMillis, latencies, 0);
+        }
+    }
+
+    private static HttpServer startStubCoordinator(long delayMillis, int eventSizeBytes)
+            throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+
+        server.createContext("/ui/login", exchange -> {
+            exchange.getResponseHeaders().add("Set-Cookie", "Trino-UI-Token=load-test; Path=/ui; HttpOnly");
+            exchange.getResponseHeaders().add("Location", "/ui/");
+            exchange.sendResponseHeaders(303, -1);
+            exchange.close();
+        });
+
+        server.createContext("/ui/api/query/", exchange -> {
+            try {
+                Thread.sleep(delayMillis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String path = exchange.getRequestURI().getPath();
+            String queryId = path.substring(path.lastIndexOf('/') + 1);
+            respond(exchange, QueryCompletedEvents.create(queryId, eventSizeBytes));
+        });
+
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, String body)
+            throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private record Result(String mode, int failed, long wallMillis, long[] latencies, int peakPlatformThreads)
+    {
+        Result withPeakPlatformThreads(int peakPlatformThreads)
+        {
+            return new Result(mode, failed, wallMillis, latencies, peakPlatformThreads);
+        }
+
+        double throughput()
+        {
+            return latencies.length * 1000.0 / Math.max(wallMillis, 1);
+        }
+
+        double percentileMillis(double percentile)
+        {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.trino.historyserver.benchmark;
+
+/**
+ * Builds synthetic QueryCompletedEvent JSON with the same shape as the HTTP event listener payload:
+ * a small metadata header followed by a large plan and per-operator statistics.
+ */
+final class QueryCompletedEvents
+{
+    private QueryCompletedEvents() {}
+
+    static String create(String queryId, int targetSizeBytes)
+    {
+        StringBuilder json = new StringBuilder(targetSizeBytes + 1024);
+        json.append("{\"metadata\":{")
+                .append("\"queryId\":\"").append(queryId).append("\",")
+                .append("\"transactionId\":\"4f7c8a21-3b1e-4d6a-9c5f-2e8b7a6d1c00\",")
+                .append("\"query\":\"SELECT o.orderkey, sum(l.extendedprice) FROM orders o JOIN lineitem l ON o.orderkey = l.orderkey GROUP BY 1\",")
+                .append("\"queryState\":\"FINISHED\",")
+                .append("\"uri\":\"http://coordinator:8080/v1/query/").append(queryId).append("\",")
+                .append("\"plan\":\"");
+
+        int planSize = targetSizeBytes / 3;
+        while (json.length() < planSize) {
+            json.append("Fragment 1 [HASH]\\n    Output layout: [orderkey, sum]\\n    Aggregate[type = FINAL, keys = [orderkey]]\\n");
+        }
+        json.append("\"},\"statistics\":{\"cpuTime\":12.5,\"wallTime\":30.1,\"operatorSummaries\":[");
+
+        int operator = 0;
+        while (json.length() < targetSizeBytes) {
+            if (operator > 0) {
+                json.append(',');
+            }
+            json.append("{\"stageId\":").append(operator % 8)
+                    .append(",\"pipelineId\":").append(operator % 3)
+                    .append(",\"operatorId\":").append(operator)
+                    .append(",\"planNodeId\":\"").append(operator).append("\"")
+                    .append(",\"operatorType\":\"ScanFilterAndProjectOperator\"")
+                    .append(",\"totalDrivers\":16,\"addInputCalls\":1024,\"inputPositions\":1500000")
+                    .append(",\"outputDataSize\":\"12.5MB\",\"blockedWall\":\"1.20s\",\"peakUserMemoryReservation\":\"2MB\"}");
+            operator++;
+        }
+        json.append("]},\"context\":{\"user\":\"analyst\",\"catalog\":\"hive\",\"schema\":\"tpch\"},")
+                .append("\"createTime\":\"2023-12-01T12:34:56.789Z\",\"endTime\":\"2023-12-01T12:35:26.891Z\"}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package io.trino.historyserver.benchmark;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.compression.QueryCodec;
+import io.trino.historyserver.storage.compression.QueryCompressionProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how well {@link QueryCodec} compresses stored query documents with plain zstd, zstd with a dictionary
+ * trained on similar documents, and gzip. The setup prints the compression ratio of each mode; throughput in MB/s
+ * is the reported ops/s multiplied by eventSizeBytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryCompressionBenchmark
+{
+    private static final int TRAINING_SAMPLES = 1000;
+    private static final int SAMPLE_BYTES = 16384;
+    private static final int DICTIONARY_SIZE_BYTES = 112640;
+
+    @Param({"4096", "65536"})
+    private int eventSizeBytes;
+
+    @Param({"zstd", "zstd-dictionary", "gzip"})
+    private String mode;
+
+    private QueryCodec codec;
+    private String event;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp()
+            throws Exception
+    {
+        QueryCompressionProperties props = new QueryCompressionProperties();
+        props.setEnabled(true);
+        props.setAlgorithm(mode.equals("gzip") ? ContentEncoding.GZIP : ContentEncoding.ZSTD);
+        if (mode.equals("zstd-dictionary")) {
+            props.setDictionaryDir(Files.createTempDirectory("query-dictionaries").toString());
+        }
+        codec = new QueryCodec(props);
+        if (mode.equals("zstd-dictionary")) {
+            codec.installDictionary(trainDictionary());
+        }
+
+        event = QueryCompletedEvents.create("20231201_123456_99999_abcde", eventSizeBytes);
+        encoded = codec.encode(event);
+        System.out.printf("%nmode=%s eventSizeBytes=%d encodedBytes=%d ratio=%.2f%n",
+                mode, eventSizeBytes, encoded.length, (double) event.length() / encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode()
+            throws Exception
+    {
+        return codec.encode(event);
+    }
+
+    @Benchmark
+    public String decode()
+            throws Exception
+    {
+        return codec.decode(encoded);
+    }
+
+    // Samples of varying size so the trainer sees the shared structure rather than one repeated document
+    private byte[] trainDictionary()
+    {
+        ZstdDictTrainer trainer = new ZstdDictTrainer(TRAINING_SAMPLES * SAMPLE_BYTES, DICTIONARY_SIZE_BYTES);
+        for (int i = 0; i < TRAINING_SAMPLES; i++) {
+            String queryId = "20231201_123456_%05d_abcde".formatted(i);
+            byte[] sample = QueryCompletedEvents.create(queryId, 2048 + i * 61 % SAMPLE_BYTES).getBytes(StandardCharsets.UTF_8);
+            trainer.addSample(sample.length > SAMPLE_BYTES ? Arrays.copyOf(sample, SAMPLE_BYTES) : sample);
+        }
+        return trainer.trainSamples();
+    }
+}
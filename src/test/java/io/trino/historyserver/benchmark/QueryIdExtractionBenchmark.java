@@ -0,0 +1,66 @@
+package io.trino.historyserver.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.trino.historyserver.dto.QueryReferenceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming queryId extraction in {@link QueryReferenceFactory}, which reads the request bytes,
+ * with the previous path that decoded the body into a String and built a full JsonNode tree.
+ * Run with {@code -prof gc} to report allocation per operation (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryIdExtractionBenchmark
+{
+    @Param({"4096", "65536", "524288"})
+    private int eventSizeBytes;
+
+    private ObjectMapper objectMapper;
+    private QueryReferenceFactory factory;
+    private MockHttpServletRequest request;
+    private byte[] event;
+
+    @Setup
+    public void setUp()
+    {
+        objectMapper = new ObjectMapper();
+        factory = new QueryReferenceFactory(objectMapper);
+        request = new MockHttpServletRequest();
+        request.addHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER, "http://coordinator:8080");
+        event = QueryCompletedEvents.create("20231201_123456_00001_abcde", eventSizeBytes).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String streamingParser()
+    {
+        return factory.create(new ByteArrayInputStream(event), request).queryId();
+    }
+
+    @Benchmark
+    public String treeModel()
+            throws Exception
+    {
+        String json = new String(event, StandardCharsets.UTF_8);
+        return objectMapper.readTree(json).at("/metadata/queryId").asText();
+    }
+}
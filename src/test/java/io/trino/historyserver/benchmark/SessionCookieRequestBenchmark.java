@@ -0,0 +1,101 @@
+package io.trino.historyserver.benchmark;
+
+import io.trino.historyserver.auth.SessionAwareHttpClient;
+import io.trino.historyserver.auth.TrinoSessionManager;
+import io.trino.historyserver.dto.QueryReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the session-cookie request path of {@link SessionAwareHttpClient}, which reuses one WebClient and sets
+ * the cookie per request, with the previous path that built a new WebClient through mutate() for every fetch.
+ * The exchange is answered in memory, so only client-side request handling is measured.
+ * Run with {@code -prof gc} to report allocation per operation (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionCookieRequestBenchmark
+{
+    private static final String COOKIE = "Trino-UI-Token=eyJhbGciOiJIUzI1NiJ9.benchmark";
+    private static final QueryReference QUERY_REF = new QueryReference("20231201_123456_00001_abcde", "http://coordinator:8080");
+    private static final String URL = QUERY_REF.coordinatorUrl() + "/ui/api/query/" + QUERY_REF.queryId();
+
+    private WebClient webClient;
+    private SessionAwareHttpClient sessionAwareHttpClient;
+
+    @Setup
+    public void setUp()
+    {
+        webClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK).body("{}").build()))
+                .build();
+        sessionAwareHttpClient = new SessionAwareHttpClient(new StaticSessionManager(), webClient);
+    }
+
+    @Benchmark
+    public String cookiePerRequest()
+    {
+        return sessionAwareHttpClient.runWithSessionRetry(QUERY_REF, SessionCookieRequestBenchmark::fetch);
+    }
+
+    @Benchmark
+    public String mutatePerRequest()
+    {
+        WebClient client = webClient.mutate()
+                .defaultHeader(HttpHeaders.COOKIE, COOKIE)
+                .build();
+        return fetch(client).block();
+    }
+
+    private static Mono<String> fetch(WebClient client)
+    {
+        return client.get()
+                .uri(URL)
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+
+    private static final class StaticSessionManager
+            implements TrinoSessionManager
+    {
+        @Override
+        public String getSessionCookie(String coordinatorUrl)
+        {
+            return COOKIE;
+        }
+
+        @Override
+        public void refreshSessionCookie(String coordinatorUrl) {}
+
+        @Override
+        public Mono<String> getSessionCookieAsync(String coordinatorUrl)
+        {
+            return Mono.just(COOKIE);
+        }
+
+        @Override
+        public Mono<String> refreshSessionCookieAsync(String coordinatorUrl, String expiredCookie)
+        {
+            return Mono.just(COOKIE);
+        }
+    }
+}
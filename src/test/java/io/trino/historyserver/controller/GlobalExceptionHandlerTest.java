@@ -67,6 +67,19 @@ class GlobalExceptionHandlerTest {
         assertTrue(response.getBody().contains("Failed to fetch query from coordinator: Failed to fetch query"));
     }
 
+    @Test
+    void handleQueryNotFoundException_ShouldReturnNotFound() {
+        // Given
+        QueryNotFoundException exception = new QueryNotFoundException("Query not stored", "test-query-id");
+
+        // When
+        ResponseEntity<String> response = globalExceptionHandler.handleNotFoundError(exception);
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertTrue(response.getBody().contains("Query not found: test-query-id"));
+    }
+
     @Test
     void handleQueryStorageException_ShouldReturnInternalServerError() {
         // Given
@@ -80,6 +93,35 @@ class GlobalExceptionHandlerTest {
         assertTrue(response.getBody().contains("Error handling query file: Storage failed"));
     }
 
+    @Test
+    void handleQueryIngestionRejectedException_ShouldReturnTooManyRequests() {
+        // Given
+        QueryIngestionRejectedException exception = new QueryIngestionRejectedException("Queue full", "test-query-id", 2500);
+
+        // When
+        ResponseEntity<String> response = globalExceptionHandler.handleIngestionRejectedError(exception);
+
+        // Then
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("3", response.getHeaders().getFirst("Retry-After"));
+        assertTrue(response.getBody().contains("Query ingestion is overloaded: Queue full"));
+    }
+
+    @Test
+    void handleCoordinatorUnavailableException_ShouldReturnServiceUnavailable_WithRetryAfterRoundedUp() {
+        // Given
+        CoordinatorUnavailableException exception = new CoordinatorUnavailableException(
+                "Circuit open", "test-query-id", "http://coordinator:8080", 1500);
+
+        // When
+        ResponseEntity<String> response = globalExceptionHandler.handleCoordinatorUnavailableError(exception);
+
+        // Then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst("Retry-After"));
+        assertTrue(response.getBody().contains("Coordinator is unavailable: Circuit open"));
+    }
+
     @Test
     void handleStorageInitializationException_ShouldReturnInternalServerError() {
         // Given
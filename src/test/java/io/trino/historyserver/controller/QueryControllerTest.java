@@ -2,21 +2,50 @@ package io.trino.historyserver.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.trino.historyserver.common.GlobalProperties;
+import io.trino.historyserver.dto.ParsedQueryEvent;
+import io.trino.historyserver.dto.QueryIngestionStatus;
 import io.trino.historyserver.dto.QueryReference;
 import io.trino.historyserver.dto.QueryReferenceFactory;
 import io.trino.historyserver.exception.QueryException;
+import io.trino.historyserver.exception.QueryIngestionRejectedException;
+import io.trino.historyserver.exception.QueryNotFoundException;
+import io.trino.historyserver.ingest.BatchIngestionProperties;
+import io.trino.historyserver.ingest.IngestionResult;
+import io.trino.historyserver.ingest.QueryIngestor;
 import io.trino.historyserver.service.QueryService;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
+import io.trino.historyserver.storage.StoredQueryFile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -28,15 +57,24 @@ class QueryControllerTest {
     @Mock
     private QueryService queryService;
 
+    @Mock
+    private QueryIngestor queryIngestor;
+
     @Mock
     private QueryReferenceFactory queryReferenceFactory;
 
     @Mock
     private GlobalProperties globalProperties;
 
+    @Mock
+    private BatchIngestionProperties batchIngestionProperties;
+
     @InjectMocks
     private QueryController queryController;
 
+    @TempDir
+    Path tempDir;
+
     private MockMvc mockMvc;
     private ObjectMapper objectMapper;
 
@@ -55,20 +93,59 @@ class QueryControllerTest {
         String queryCompletedJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
         QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
         
-        when(queryReferenceFactory.create(anyString(), any())).thenReturn(queryRef);
+        when(queryReferenceFactory.create(any(InputStream.class), any())).thenReturn(queryRef);
         when(globalProperties.getEnvironment()).thenReturn("test");
-        doNothing().when(queryService).createQuery(any(QueryReference.class), anyString());
+        when(queryIngestor.ingest(any(QueryReference.class), anyString())).thenReturn(Mono.just(IngestionResult.CREATED));
 
         // When & Then
-        mockMvc.perform(post("/api/v1/query")
+        performAsync(post("/api/v1/query")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(queryCompletedJson)
                 .header("X-Trino-Coordinator-Url", "http://localhost:8080"))
                 .andExpect(status().isOk())
                 .andExpect(content().string("Query test-query-id was successfully created."));
 
-        verify(queryReferenceFactory).create(eq(queryCompletedJson), any());
-        verify(queryService).createQuery(eq(queryRef), eq("test"));
+        verify(queryReferenceFactory).create(any(InputStream.class), any());
+        verify(queryIngestor).ingest(eq(queryRef), eq("test"));
+    }
+
+    @Test
+    void createQuery_ShouldReturnAccepted_WhenIngestedAsynchronously() throws Exception {
+        // Given
+        String queryCompletedJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
+        QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
+
+        when(queryReferenceFactory.create(any(InputStream.class), any())).thenReturn(queryRef);
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        when(queryIngestor.ingest(any(QueryReference.class), anyString())).thenReturn(Mono.just(IngestionResult.ACCEPTED));
+
+        // When & Then
+        performAsync(post("/api/v1/query")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(queryCompletedJson)
+                .header("X-Trino-Coordinator-Url", "http://localhost:8080"))
+                .andExpect(status().isAccepted())
+                .andExpect(content().string("Query test-query-id was accepted for ingestion."));
+    }
+
+    @Test
+    void createQuery_ShouldReturnTooManyRequests_WhenIngestionQueueIsFull() throws Exception {
+        // Given
+        String queryCompletedJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
+        QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
+
+        when(queryReferenceFactory.create(any(InputStream.class), any())).thenReturn(queryRef);
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        when(queryIngestor.ingest(any(QueryReference.class), anyString()))
+                .thenReturn(Mono.error(new QueryIngestionRejectedException("Queue full", "test-query-id", 1000)));
+
+        // When & Then
+        performAsync(post("/api/v1/query")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(queryCompletedJson)
+                .header("X-Trino-Coordinator-Url", "http://localhost:8080"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
     }
 
     @Test
@@ -77,18 +154,129 @@ class QueryControllerTest {
         String queryCompletedJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
         QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
         
-        when(queryReferenceFactory.create(anyString(), any())).thenReturn(queryRef);
+        when(queryReferenceFactory.create(any(InputStream.class), any())).thenReturn(queryRef);
         when(globalProperties.getEnvironment()).thenReturn("test");
-        doThrow(new QueryException("Service error", "test-query-id")).when(queryService).createQuery(any(QueryReference.class), anyString());
+        when(queryIngestor.ingest(any(QueryReference.class), anyString()))
+                .thenReturn(Mono.error(new QueryException("Service error", "test-query-id")));
 
         // When & Then
-        mockMvc.perform(post("/api/v1/query")
+        performAsync(post("/api/v1/query")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(queryCompletedJson)
                 .header("X-Trino-Coordinator-Url", "http://localhost:8080"))
                 .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    void createQueries_ShouldReturnStatusPerEvent_InRequestOrder() throws Exception {
+        // Given
+        String events = """
+                {"metadata":{"queryId":"query-1"}}
+                {"metadata":{}}
+                {"metadata":{"queryId":"query-2"}}
+                """;
+        QueryReference first = new QueryReference("query-1", "http://localhost:8080");
+        QueryReference second = new QueryReference("query-2", "http://localhost:8080");
+
+        when(batchIngestionProperties.getMaxSize()).thenReturn(500);
+        when(queryReferenceFactory.createBatch(any(InputStream.class), any(), eq(500))).thenReturn(List.of(
+                ParsedQueryEvent.valid(first),
+                ParsedQueryEvent.invalid("Missing 'queryId' field"),
+                ParsedQueryEvent.valid(second)
+        ));
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        when(queryIngestor.ingestBatch(List.of(first, second), "test")).thenReturn(Mono.just(List.of(
+                QueryIngestionStatus.of("query-1", IngestionResult.CREATED),
+                new QueryIngestionStatus("query-2", IngestionResult.FAILED, "Fetch failed")
+        )));
+
+        // When & Then
+        performAsync(post("/api/v1/query/batch")
+                .contentType("application/x-ndjson")
+                .content(events)
+                .header("X-Trino-Coordinator-Url", "http://localhost:8080"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].queryId").value("query-1"))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].status").value("INVALID"))
+                .andExpect(jsonPath("$[1].queryId").doesNotExist())
+                .andExpect(jsonPath("$[2].status").value("FAILED"))
+                .andExpect(jsonPath("$[2].message").value("Fetch failed"));
+    }
+
+    @Test
+    void getQueries_ShouldStreamJsonArray_WithNotFoundMarkers() throws Exception {
+        // Given
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        stubBulkRead();
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/query/bulk-read")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"query-1\", \"query-2\"]"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].queryId").value("query-1"))
+                .andExpect(jsonPath("$[0].found").value(true))
+                .andExpect(jsonPath("$[0].query.state").value("FINISHED"))
+                .andExpect(jsonPath("$[1].queryId").value("query-2"))
+                .andExpect(jsonPath("$[1].found").value(false))
+                .andExpect(jsonPath("$[1].query").doesNotExist());
+    }
+
+    @Test
+    void getQueries_ShouldStreamNdjson_WhenRequested() throws Exception {
+        // Given
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        stubBulkRead();
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/query/bulk-read")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept("application/x-ndjson")
+                .content("[\"query-1\", \"query-2\"]"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andExpect(content().string(
+                        "{\"queryId\":\"query-1\",\"found\":true,\"query\":{\"state\":\"FINISHED\"}}\n" +
+                        "{\"queryId\":\"query-2\",\"found\":false}\n"
+                ));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getQueries_ShouldReturnBadRequest_WhenQueryIdLeavesStorageDirectory() throws Exception {
+        // Given
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        doCallRealMethod().when(queryService).getQueries(anyList(), anyString(), any(BiConsumer.class));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/query/bulk-read")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"query-1\", \"../../etc/config\"]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("../../etc/config")));
+    }
+
+    private ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        MvcResult result = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubBulkRead() {
+        doAnswer(invocation -> {
+            BiConsumer<String, String> consumer = invocation.getArgument(2);
+            consumer.accept("query-1", "{\"state\":\"FINISHED\"}");
+            consumer.accept("query-2", null);
+            return null;
+        }).when(queryService).getQueries(eq(List.of("query-1", "query-2")), eq("test"), any(BiConsumer.class));
+    }
+
     @Test
     void getQuery_ShouldReturnQueryJson_WhenQueryExists() throws Exception {
         // Given
@@ -107,6 +295,88 @@ class QueryControllerTest {
         verify(queryService).getQuery(queryId, "test");
     }
 
+    @Test
+    void getQuery_ShouldReturnStoredFrame_WhenClientAcceptsItsEncoding() throws Exception {
+        // Given
+        String queryId = "test-query-id";
+        byte[] frame = {(byte) 0x28, (byte) 0xB5, (byte) 0x2F, (byte) 0xFD, 0x01};
+        EnumSet<ContentEncoding> accepted = EnumSet.of(ContentEncoding.IDENTITY, ContentEncoding.GZIP, ContentEncoding.ZSTD);
+
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        when(queryService.getEncodedQuery(queryId, "test", accepted)).thenReturn(new EncodedQuery(frame, ContentEncoding.ZSTD));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/query/{queryId}", queryId).header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br, zstd"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "zstd"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(content().bytes(frame));
+
+        verify(queryService, never()).getQuery(anyString(), anyString());
+    }
+
+    @Test
+    void getQuery_ShouldReturnJson_WhenStoredDocumentWasDecoded() throws Exception {
+        // Given
+        String queryId = "test-query-id";
+        String queryJson = "{\"queryId\":\"test-query-id\"}";
+
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        when(queryService.getEncodedQuery(queryId, "test", EnumSet.of(ContentEncoding.IDENTITY, ContentEncoding.GZIP)))
+                .thenReturn(EncodedQuery.identity(queryJson));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/query/{queryId}", queryId).header(HttpHeaders.ACCEPT_ENCODING, "gzip, zstd;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().json(queryJson));
+    }
+
+    @Test
+    void getQuery_ShouldStreamStoredFile_WhenBackendKeepsQueryInFile() throws Exception {
+        // Given
+        String queryId = "test-query-id";
+        String queryJson = "{\"queryId\":\"test-query-id\"}";
+        Path file = Files.writeString(tempDir.resolve("test-query-id.json"), queryJson);
+
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        when(queryService.findQueryFile(queryId, "test", EnumSet.of(ContentEncoding.IDENTITY)))
+                .thenAnswer(invocation -> Optional.of(storedQueryFile(file, ContentEncoding.IDENTITY)));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/query/{queryId}", queryId))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, queryJson.length()))
+                .andExpect(content().json(queryJson));
+
+        verify(queryService, never()).getQuery(anyString(), anyString());
+    }
+
+    @Test
+    void getQuery_ShouldSendFileOpenedAtLookup_WhenFileIsReplacedAfterwards() throws Exception {
+        // Given
+        String queryId = "test-query-id";
+        String queryJson = "{\"queryId\":\"test-query-id\"}";
+        Path file = Files.writeString(tempDir.resolve("test-query-id.json"), queryJson);
+        Path replacement = Files.writeString(tempDir.resolve("replacement.json"), "{\"queryId\":\"replaced\",\"state\":\"FINISHED\"}");
+
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        when(queryService.findQueryFile(queryId, "test", EnumSet.of(ContentEncoding.IDENTITY)))
+                .thenAnswer(invocation -> {
+                    StoredQueryFile queryFile = storedQueryFile(file, ContentEncoding.IDENTITY);
+                    Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    return Optional.of(queryFile);
+                });
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/query/{queryId}", queryId))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, queryJson.length()))
+                .andExpect(content().json(queryJson));
+    }
+
     @Test
     void getQuery_ShouldHandleServiceException() throws Exception {
         // Given
@@ -120,10 +390,28 @@ class QueryControllerTest {
                 .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    void getQuery_ShouldReturnNotFound_WhenQueryIsNotStored() throws Exception {
+        // Given
+        String queryId = "missing-query-id";
+
+        when(globalProperties.getEnvironment()).thenReturn("test");
+        when(queryService.getQuery(queryId, "test")).thenThrow(new QueryNotFoundException("Query not stored", queryId));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/query/{queryId}", queryId))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void handleBaseQueryPath_ShouldReturnNotFound() throws Exception {
         // When & Then
         mockMvc.perform(get("/api/v1/query"))
                 .andExpect(status().isNotFound());
     }
+
+    private static StoredQueryFile storedQueryFile(Path file, ContentEncoding encoding) throws IOException {
+        FileChannel channel = FileChannel.open(file);
+        return new StoredQueryFile(file, channel, channel.size(), encoding);
+    }
 }
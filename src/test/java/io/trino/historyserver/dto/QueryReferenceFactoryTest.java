@@ -9,6 +9,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -36,7 +41,7 @@ class QueryReferenceFactoryTest {
         when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn(coordinatorUrl);
 
         // When
-        QueryReference result = factory.create(queryCompletedJson, request);
+        QueryReference result = factory.create(body(queryCompletedJson), request);
 
         // Then
         assertEquals("test-query-id", result.queryId());
@@ -48,10 +53,10 @@ class QueryReferenceFactoryTest {
         // Given
         String queryCompletedJson = "{\"metadata\":{}}";
 
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
         // When & Then
-        assertThrows(InvalidQueryEventException.class, () -> factory.create(queryCompletedJson, request));
-        
-        // The header is not checked because extractQueryId fails first
+        assertThrows(InvalidQueryEventException.class, () -> factory.create(body(queryCompletedJson), request));
     }
 
     @Test
@@ -59,10 +64,10 @@ class QueryReferenceFactoryTest {
         // Given
         String queryCompletedJson = "{\"metadata\":{\"queryId\":\"\"}}";
 
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
         // When & Then
-        assertThrows(InvalidQueryEventException.class, () -> factory.create(queryCompletedJson, request));
-        
-        // The header is not checked because extractQueryId fails first
+        assertThrows(InvalidQueryEventException.class, () -> factory.create(body(queryCompletedJson), request));
     }
 
     @Test
@@ -70,10 +75,10 @@ class QueryReferenceFactoryTest {
         // Given
         String malformedJson = "invalid json";
 
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
         // When & Then
-        assertThrows(InvalidQueryEventException.class, () -> factory.create(malformedJson, request));
-        
-        // The header is not checked because extractQueryId fails first
+        assertThrows(InvalidQueryEventException.class, () -> factory.create(body(malformedJson), request));
     }
 
     @Test
@@ -84,7 +89,7 @@ class QueryReferenceFactoryTest {
         when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn(null);
 
         // When & Then
-        assertThrows(InvalidQueryEventException.class, () -> factory.create(queryCompletedJson, request));
+        assertThrows(InvalidQueryEventException.class, () -> factory.create(body(queryCompletedJson), request));
     }
 
     @Test
@@ -95,7 +100,7 @@ class QueryReferenceFactoryTest {
         when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("");
 
         // When & Then
-        assertThrows(InvalidQueryEventException.class, () -> factory.create(queryCompletedJson, request));
+        assertThrows(InvalidQueryEventException.class, () -> factory.create(body(queryCompletedJson), request));
     }
 
     @Test
@@ -117,7 +122,7 @@ class QueryReferenceFactoryTest {
         when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn(coordinatorUrl);
 
         // When
-        QueryReference result = factory.create(complexJson, request);
+        QueryReference result = factory.create(body(complexJson), request);
 
         // Then
         assertEquals("complex-query-id", result.queryId());
@@ -142,10 +147,163 @@ class QueryReferenceFactoryTest {
         when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn(coordinatorUrl);
 
         // When
-        QueryReference result = factory.create(nestedJson, request);
+        QueryReference result = factory.create(body(nestedJson), request);
 
         // Then
         assertEquals("nested-query-id", result.queryId());
         assertEquals(coordinatorUrl, result.coordinatorUrl());
     }
+
+    @Test
+    void create_ShouldSkipUnrelatedSubtrees_BeforeMetadata() {
+        // Given
+        String json = """
+                {
+                    "statistics": {
+                        "operatorSummaries": [{"queryId": "wrong-id"}, {"metadata": {"queryId": "wrong-id"}}]
+                    },
+                    "metadata": {
+                        "plan": {"queryId": "wrong-id"},
+                        "tables": [["queryId"]],
+                        "queryId": "streamed-query-id"
+                    }
+                }
+                """;
+        String coordinatorUrl = "http://localhost:8080";
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn(coordinatorUrl);
+
+        // When
+        QueryReference result = factory.create(body(json), request);
+
+        // Then
+        assertEquals("streamed-query-id", result.queryId());
+    }
+
+    @Test
+    void create_ShouldThrowException_WhenQueryIdIsNotScalar() {
+        // Given
+        String json = "{\"metadata\":{\"queryId\":{\"value\":\"test-query-id\"}}}";
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
+        // When & Then
+        assertThrows(InvalidQueryEventException.class, () -> factory.create(body(json), request));
+    }
+
+    @Test
+    void create_ShouldThrowException_WhenRootIsNotAnObject() {
+        // Given
+        String json = "[{\"metadata\":{\"queryId\":\"test-query-id\"}}]";
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
+        // When & Then
+        assertThrows(InvalidQueryEventException.class, () -> factory.create(body(json), request));
+    }
+
+    @Test
+    void create_ShouldConsumeRemainingBody_AfterQueryIdIsFound() {
+        // Given
+        String json = "{\"metadata\":{\"queryId\":\"test-query-id\",\"plan\":\"" + "x".repeat(100_000) + "\"}}";
+        InputStream eventBody = body(json);
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
+        // When
+        QueryReference result = factory.create(eventBody, request);
+
+        // Then
+        assertEquals("test-query-id", result.queryId());
+        assertEquals(0, ((ByteArrayInputStream) eventBody).available());
+    }
+
+    @Test
+    void create_ShouldNotReadBody_WhenCoordinatorHeaderIsMissing() {
+        // Given
+        InputStream eventBody = body("{\"metadata\":{\"queryId\":\"test-query-id\"}}");
+        int length = ((ByteArrayInputStream) eventBody).available();
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn(null);
+
+        // When & Then
+        assertThrows(InvalidQueryEventException.class, () -> factory.create(eventBody, request));
+        assertEquals(length, ((ByteArrayInputStream) eventBody).available());
+    }
+
+    @Test
+    void createBatch_ShouldParseJsonArray() {
+        // Given
+        String json = """
+                [
+                    {"metadata": {"queryId": "query-1", "plan": {"queryId": "wrong-id"}}, "statistics": {}},
+                    {"metadata": {"plan": "..."}},
+                    "not an event",
+                    {"statistics": [1, 2, 3], "metadata": {"queryId": "query-2"}}
+                ]
+                """;
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
+        // When
+        List<ParsedQueryEvent> result = factory.createBatch(body(json), request, 10);
+
+        // Then
+        assertEquals(4, result.size());
+        assertEquals(new QueryReference("query-1", "http://localhost:8080"), result.get(0).queryRef());
+        assertFalse(result.get(1).isValid());
+        assertFalse(result.get(2).isValid());
+        assertEquals(new QueryReference("query-2", "http://localhost:8080"), result.get(3).queryRef());
+    }
+
+    @Test
+    void createBatch_ShouldParseNewlineDelimitedJson() {
+        // Given
+        String ndjson = "{\"metadata\":{\"queryId\":\"query-1\"}}\n{\"metadata\":{\"queryId\":\"query-2\"}}\n";
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
+        // When
+        List<ParsedQueryEvent> result = factory.createBatch(body(ndjson), request, 10);
+
+        // Then
+        assertEquals(2, result.size());
+        assertEquals("query-1", result.get(0).queryRef().queryId());
+        assertEquals("query-2", result.get(1).queryRef().queryId());
+    }
+
+    @Test
+    void createBatch_ShouldThrowException_WhenBatchExceedsMaxSize() {
+        // Given
+        String ndjson = "{\"metadata\":{\"queryId\":\"query-1\"}}\n{\"metadata\":{\"queryId\":\"query-2\"}}\n";
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
+        // When & Then
+        assertThrows(InvalidQueryEventException.class, () -> factory.createBatch(body(ndjson), request, 1));
+    }
+
+    @Test
+    void createBatch_ShouldThrowException_WhenBatchIsEmpty() {
+        // Given
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
+        // When & Then
+        assertThrows(InvalidQueryEventException.class, () -> factory.createBatch(body("[]"), request, 10));
+    }
+
+    @Test
+    void createBatch_ShouldThrowException_WhenJsonIsMalformed() {
+        // Given
+        String ndjson = "{\"metadata\":{\"queryId\":\"query-1\"}}\n{\"metadata\":";
+
+        when(request.getHeader(QueryReferenceFactory.COORDINATOR_CUSTOM_HEADER)).thenReturn("http://localhost:8080");
+
+        // When & Then
+        assertThrows(InvalidQueryEventException.class, () -> factory.createBatch(body(ndjson), request, 10));
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
 }
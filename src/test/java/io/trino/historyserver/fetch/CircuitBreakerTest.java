@@ -0,0 +1,109 @@
+package io.trino.historyserver.fetch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong(1000);
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        CoordinatorGuardProperties props = new CoordinatorGuardProperties();
+        props.setSlidingWindowSize(4);
+        props.setMinimumCalls(4);
+        props.setFailureRateThreshold(0.5);
+        props.setOpenDurationMillis(500);
+        props.setHalfOpenCalls(2);
+        breaker = new CircuitBreaker(props, clock::get);
+    }
+
+    @Test
+    void onFailure_ShouldStayClosed_UntilMinimumCallsAreRecorded() {
+        // When
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        // Then
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.tryAcquire());
+    }
+
+    @Test
+    void onFailure_ShouldOpen_WhenFailureRateReachesThreshold() {
+        // Given
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        // When
+        breaker.onFailure();
+
+        // Then
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(500, breaker.tryAcquire());
+    }
+
+    @Test
+    void tryAcquire_ShouldForgetOldOutcomes_OutsideTheSlidingWindow() {
+        // Given
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+
+        // When: the two failures are pushed out of the window of four calls
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        // Then
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void tryAcquire_ShouldClose_WhenHalfOpenTrialCallsSucceed() {
+        // Given
+        open();
+        clock.addAndGet(500);
+
+        // When
+        assertEquals(0, breaker.tryAcquire());
+        assertEquals(0, breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire() > 0);
+        breaker.onSuccess();
+        breaker.onSuccess();
+
+        // Then
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.tryAcquire());
+    }
+
+    @Test
+    void onFailure_ShouldReopen_WhenHalfOpenTrialCallFails() {
+        // Given
+        open();
+        clock.addAndGet(500);
+        breaker.tryAcquire();
+
+        // When
+        breaker.onFailure();
+
+        // Then
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(500, breaker.tryAcquire());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
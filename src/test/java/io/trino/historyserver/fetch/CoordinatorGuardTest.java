@@ -0,0 +1,121 @@
+package io.trino.historyserver.fetch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.CoordinatorServerException;
+import io.trino.historyserver.exception.CoordinatorUnavailableException;
+import io.trino.historyserver.exception.QueryFetchException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoordinatorGuardTest {
+
+    private static final String SICK_COORDINATOR = "http://sick:8080";
+    private static final String HEALTHY_COORDINATOR = "http://healthy:8080";
+
+    private CoordinatorGuardProperties props;
+    private SimpleMeterRegistry meterRegistry;
+    private CoordinatorGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        props = new CoordinatorGuardProperties();
+        props.setInitialLimit(2);
+        props.setMinimumCalls(3);
+        props.setSlidingWindowSize(3);
+
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new CoordinatorGuard(props, meterRegistry);
+    }
+
+    @Test
+    void protect_ShouldRejectSickCoordinator_WhileHealthyCoordinatorKeepsWorking() {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            Mono<String> failing = Mono.error(new CoordinatorServerException("502 Bad Gateway", "query-" + i));
+            assertThrows(CoordinatorServerException.class, () -> guard.protect(queryRef(SICK_COORDINATOR), failing).block());
+        }
+
+        // When
+        CoordinatorUnavailableException rejected = assertThrows(CoordinatorUnavailableException.class,
+                () -> guard.protect(queryRef(SICK_COORDINATOR), Mono.just("{}")).block());
+        String healthy = guard.protect(queryRef(HEALTHY_COORDINATOR), Mono.just("{}")).block();
+
+        // Then
+        assertEquals(SICK_COORDINATOR, rejected.getCoordinatorUrl());
+        assertTrue(rejected.getRetryAfterMillis() > 0);
+        assertEquals("{}", healthy);
+        assertEquals(CircuitBreaker.State.OPEN, guard.state(SICK_COORDINATOR).breaker().getState());
+        assertEquals(CircuitBreaker.State.CLOSED, guard.state(HEALTHY_COORDINATOR).breaker().getState());
+        assertEquals(1.0, meterRegistry.get(CoordinatorGuard.REJECTED_METRIC)
+                .tag("coordinator", SICK_COORDINATOR)
+                .tag("reason", "circuit_open")
+                .counter().count());
+    }
+
+    @Test
+    void protect_ShouldRejectFetch_WhenConcurrencyLimitIsReached() {
+        // Given
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        guard.protect(queryRef(SICK_COORDINATOR), first.asMono()).subscribe();
+        guard.protect(queryRef(SICK_COORDINATOR), second.asMono()).subscribe();
+
+        // When
+        CoordinatorUnavailableException rejected = assertThrows(CoordinatorUnavailableException.class,
+                () -> guard.protect(queryRef(SICK_COORDINATOR), Mono.just("{}")).block());
+        first.tryEmitValue("{}");
+
+        // Then
+        assertEquals(props.getLimitRetryAfterMillis(), rejected.getRetryAfterMillis());
+        assertEquals("{}", guard.protect(queryRef(SICK_COORDINATOR), Mono.just("{}")).block());
+        assertEquals(1, guard.state(SICK_COORDINATOR).limiter().getInFlight());
+    }
+
+    @Test
+    void protect_ShouldGrowLimitUnderLoad_AndShrinkItOnFailure() {
+        // Given
+        AimdLimiter limiter = guard.state(SICK_COORDINATOR).limiter();
+        Sinks.One<String> pending = Sinks.one();
+        guard.protect(queryRef(SICK_COORDINATOR), pending.asMono()).subscribe();
+
+        // When
+        guard.protect(queryRef(SICK_COORDINATOR), Mono.just("{}")).block();
+        int grown = limiter.getLimit();
+        Mono<String> failing = Mono.error(new CoordinatorServerException("503 Service Unavailable", "query-1"));
+        assertThrows(CoordinatorServerException.class, () -> guard.protect(queryRef(SICK_COORDINATOR), failing).block());
+        pending.tryEmitValue("{}");
+
+        // Then
+        assertEquals(3, grown);
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void protect_ShouldNotCountClientErrors_AgainstTheCoordinator() {
+        // Given
+        Flux<String> notFound = Flux.error(new QueryFetchException("404 Not Found", "query-1"));
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            assertThrows(QueryFetchException.class, () -> guard.protect(queryRef(SICK_COORDINATOR), notFound).blockLast());
+        }
+
+        // Then
+        assertEquals(CircuitBreaker.State.CLOSED, guard.state(SICK_COORDINATOR).breaker().getState());
+        assertEquals(2, guard.state(SICK_COORDINATOR).limiter().getLimit());
+        assertEquals(List.of("{}"), guard.protect(queryRef(SICK_COORDINATOR), Flux.just("{}")).collectList().block());
+    }
+
+    private static QueryReference queryRef(String coordinatorUrl) {
+        return new QueryReference("test-query-id", coordinatorUrl);
+    }
+}
@@ -0,0 +1,109 @@
+package io.trino.historyserver.http;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseSizeRecorderTest {
+
+    private static final byte[] QUERY_JSON = "{\"queryId\":\"test-query-id\",\"stats\":{}}".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+    private SimpleMeterRegistry meterRegistry;
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        channel = new EmbeddedChannel(
+                new ResponseSizeRecorder(ResponseSizeRecorder.WIRE_STAGE, meterRegistry),
+                new HttpContentDecompressor(),
+                new ResponseSizeRecorder(ResponseSizeRecorder.DECODED_STAGE, meterRegistry));
+    }
+
+    @Test
+    void channelRead_ShouldRecordWireAndDecodedSizes_WhenResponseIsGzipped() throws IOException {
+        // Given
+        byte[] compressed = gzip(QUERY_JSON);
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_ENCODING, "gzip");
+
+        // When
+        channel.writeInbound(response, new DefaultLastHttpContent(Unpooled.wrappedBuffer(compressed)));
+
+        // Then
+        assertEquals(compressed.length, summary("wire", "gzip").totalAmount());
+        assertEquals(QUERY_JSON.length, summary("decoded", "gzip").totalAmount());
+        assertEquals(QUERY_JSON.length, readDecodedBody());
+    }
+
+    @Test
+    void channelRead_ShouldRecordIdentityEncoding_WhenResponseIsNotCompressed() {
+        // Given
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+
+        // When
+        channel.writeInbound(response, new DefaultLastHttpContent(Unpooled.wrappedBuffer(QUERY_JSON)));
+
+        // Then
+        assertEquals(QUERY_JSON.length, summary("wire", "identity").totalAmount());
+        assertEquals(QUERY_JSON.length, summary("decoded", "identity").totalAmount());
+    }
+
+    @Test
+    void channelRead_ShouldNotRecord_WhenResponseHasNoBody() {
+        // Given
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SEE_OTHER);
+
+        // When
+        channel.writeInbound(response, new DefaultLastHttpContent());
+
+        // Then
+        assertNull(meterRegistry.find(ResponseSizeRecorder.RESPONSE_BYTES_METRIC).summary());
+    }
+
+    private DistributionSummary summary(String stage, String encoding) {
+        return meterRegistry.get(ResponseSizeRecorder.RESPONSE_BYTES_METRIC)
+                .tag("stage", stage)
+                .tag("encoding", encoding)
+                .summary();
+    }
+
+    private int readDecodedBody() {
+        int bytes = 0;
+        Object message;
+        while ((message = channel.readInbound()) != null) {
+            if (message instanceof HttpContent content) {
+                bytes += content.content().readableBytes();
+            }
+            ReferenceCountUtil.release(message);
+        }
+        return bytes;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(data);
+        }
+        return output.toByteArray();
+    }
+}
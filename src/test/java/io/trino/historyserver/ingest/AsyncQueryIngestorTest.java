@@ -0,0 +1,144 @@
+package io.trino.historyserver.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.CoordinatorUnavailableException;
+import io.trino.historyserver.exception.QueryIngestionRejectedException;
+import io.trino.historyserver.service.QueryService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncQueryIngestorTest {
+
+    @Mock
+    private QueryService queryService;
+
+    @Mock
+    private QueryEventSpool spool;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AsyncQueryIngestor ingestor;
+
+    @BeforeEach
+    void setUp() {
+        AsyncQueryIngestorProperties props = new AsyncQueryIngestorProperties();
+        props.setWorkers(1);
+        props.setQueueCapacity(1);
+        props.setShutdownTimeoutMillis(1000);
+
+        meterRegistry = new SimpleMeterRegistry();
+        ingestor = new AsyncQueryIngestor(props, queryService, spool, meterRegistry, new MockEnvironment());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestor.shutdown();
+    }
+
+    @Test
+    void ingest_ShouldReturnAcceptedAndCreateQueryInBackground() {
+        // Given
+        QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
+        when(spool.append(queryRef, "test")).thenReturn(7L);
+        ingestor.start();
+
+        // When
+        IngestionResult result = ingestor.ingest(queryRef, "test").block();
+
+        // Then
+        assertEquals(IngestionResult.ACCEPTED, result);
+        verify(queryService, timeout(1000)).createQuery(queryRef, "test");
+        verify(spool, timeout(1000)).acknowledge(7L);
+    }
+
+    @Test
+    void ingest_ShouldRejectWhenQueueIsFull() throws Exception {
+        // Given
+        ingestor.start();
+        when(spool.append(any(QueryReference.class), anyString())).thenReturn(1L, 2L, 3L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(queryService).createQuery(any(QueryReference.class), anyString());
+
+        // Occupy the single worker, then fill the single queue slot
+        ingestor.ingest(new QueryReference("query-1", "http://localhost:8080"), "test").block();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        ingestor.ingest(new QueryReference("query-2", "http://localhost:8080"), "test").block();
+
+        // When & Then
+        assertThrows(QueryIngestionRejectedException.class,
+                () -> ingestor.ingest(new QueryReference("query-3", "http://localhost:8080"), "test").block());
+        assertEquals(1.0, meterRegistry.get(AsyncQueryIngestor.QUEUE_DEPTH_METRIC).gauge().value());
+        assertEquals(1.0, meterRegistry.get(AsyncQueryIngestor.REJECTED_METRIC).counter().count());
+        verify(spool).acknowledge(3L);
+
+        release.countDown();
+    }
+
+    @Test
+    void ingest_ShouldKeepWorkerAlive_WhenCreateQueryFails() {
+        // Given
+        ingestor.start();
+        QueryReference failing = new QueryReference("failing-query", "http://localhost:8080");
+        QueryReference healthy = new QueryReference("healthy-query", "http://localhost:8080");
+        doThrow(new RuntimeException("Coordinator unavailable")).when(queryService).createQuery(failing, "test");
+
+        // When
+        ingestor.ingest(failing, "test").block();
+        ingestor.ingest(healthy, "test").block();
+
+        // Then
+        verify(queryService, timeout(1000)).createQuery(healthy, "test");
+    }
+
+    @Test
+    void ingest_ShouldDeferWithoutAcknowledging_WhenCoordinatorIsUnavailable() {
+        // Given
+        ingestor.start();
+        QueryReference queryRef = new QueryReference("deferred-query", "http://localhost:8080");
+        when(spool.append(queryRef, "test")).thenReturn(5L);
+        doThrow(new CoordinatorUnavailableException("Circuit open", "deferred-query", "http://localhost:8080", 50))
+                .doNothing()
+                .when(queryService).createQuery(queryRef, "test");
+
+        // When
+        ingestor.ingest(queryRef, "test").block();
+
+        // Then
+        verify(queryService, timeout(1000).times(2)).createQuery(queryRef, "test");
+        verify(spool, timeout(1000)).acknowledge(5L);
+        assertEquals(1.0, meterRegistry.get(AsyncQueryIngestor.DEFERRED_METRIC).counter().count());
+    }
+
+    @Test
+    void start_ShouldReplayRecoveredSpoolEvents() {
+        // Given
+        QueryReference queryRef = new QueryReference("recovered-query", "http://localhost:8080");
+        when(spool.recover()).thenReturn(List.of(new SpooledQueryEvent(42L, queryRef, "test")));
+
+        // When
+        ingestor.start();
+
+        // Then
+        verify(queryService, timeout(1000)).createQuery(queryRef, "test");
+        verify(spool, timeout(1000)).acknowledge(42L);
+        verify(spool, never()).append(any(QueryReference.class), anyString());
+    }
+}
@@ -0,0 +1,257 @@
+package io.trino.historyserver.ingest;
+
+import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.QuerySpoolException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileQueryEventSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private QueryEventSpoolProperties props;
+
+    @BeforeEach
+    void setUp() {
+        props = new QueryEventSpoolProperties();
+        props.setDir(tempDir.toString());
+        props.setCheckpointIntervalMillis(60000);
+    }
+
+    @Test
+    void recover_ShouldReturnUnacknowledgedEvents_AfterRestart() {
+        // Given
+        FileQueryEventSpool spool = openSpool();
+        long first = spool.append(new QueryReference("query-1", "http://coordinator1:8080"), "prod");
+        spool.append(new QueryReference("query-2", "http://coordinator2:8080"), null);
+        spool.acknowledge(first);
+        spool.close();
+
+        // When
+        FileQueryEventSpool reopened = openSpool();
+        List<SpooledQueryEvent> recovered = reopened.recover();
+
+        // Then
+        assertEquals(1, recovered.size());
+        assertEquals(new QueryReference("query-2", "http://coordinator2:8080"), recovered.getFirst().queryRef());
+        assertNull(recovered.getFirst().environment());
+        assertTrue(reopened.recover().isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void append_ShouldContinueSequence_AfterRestart() {
+        // Given
+        FileQueryEventSpool spool = openSpool();
+        spool.append(new QueryReference("query-1", "http://localhost:8080"), "test");
+        long last = spool.append(new QueryReference("query-2", "http://localhost:8080"), "test");
+        spool.close();
+
+        // When
+        FileQueryEventSpool reopened = openSpool();
+        long next = reopened.append(new QueryReference("query-3", "http://localhost:8080"), "test");
+
+        // Then
+        assertEquals(last + 1, next);
+        reopened.close();
+    }
+
+    @Test
+    void checkpoint_ShouldDeleteCompletedSegments_WhenAllEventsAcknowledged() throws IOException {
+        // Given
+        props.setSegmentSizeBytes(64);
+        FileQueryEventSpool spool = openSpool();
+        for (int i = 0; i < 10; i++) {
+            long sequence = spool.append(new QueryReference("query-" + i, "http://localhost:8080"), "test");
+            spool.acknowledge(sequence);
+        }
+        assertTrue(countSegments() > 1);
+
+        // When
+        spool.checkpoint();
+
+        // Then
+        assertEquals(1, countSegments());
+        spool.close();
+        assertTrue(openSpool().recover().isEmpty());
+    }
+
+    @Test
+    void recover_ShouldIgnoreTornRecordAtSegmentTail() throws IOException {
+        // Given
+        FileQueryEventSpool spool = openSpool();
+        spool.append(new QueryReference("query-1", "http://localhost:8080"), "test");
+        spool.close();
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            Path segment = files.filter(path -> path.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+            Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        // When
+        List<SpooledQueryEvent> recovered = openSpool().recover();
+
+        // Then
+        assertEquals(1, recovered.size());
+        assertEquals("query-1", recovered.getFirst().queryRef().queryId());
+    }
+
+    @Test
+    void append_ShouldRecover_AfterFailedWrite() {
+        // Given
+        FailingFileChannel[] channel = new FailingFileChannel[1];
+        FileQueryEventSpool spool = new FileQueryEventSpool(props) {
+            @Override
+            FileChannel openChannel(Path segment) throws IOException {
+                channel[0] = new FailingFileChannel(super.openChannel(segment));
+                return channel[0];
+            }
+        };
+        spool.open();
+        long first = spool.append(new QueryReference("query-1", "http://localhost:8080"), "test");
+        channel[0].failNextWrite = true;
+
+        // When
+        assertThrows(QuerySpoolException.class, () -> spool.append(new QueryReference("query-2", "http://localhost:8080"), "test"));
+        long next = spool.append(new QueryReference("query-3", "http://localhost:8080"), "test");
+        spool.close();
+
+        // Then
+        assertEquals(first + 1, next);
+        List<SpooledQueryEvent> recovered = openSpool().recover();
+        assertEquals(List.of("query-1", "query-3"), recovered.stream().map(event -> event.queryRef().queryId()).toList());
+    }
+
+    private FileQueryEventSpool openSpool() {
+        FileQueryEventSpool spool = new FileQueryEventSpool(props);
+        spool.open();
+        return spool;
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+
+    // Writes half of the buffer and fails once failNextWrite is set, like a write interrupted by a full disk
+    private static class FailingFileChannel extends FileChannel {
+        private final FileChannel delegate;
+        private boolean failNextWrite;
+
+        FailingFileChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failNextWrite) {
+                failNextWrite = false;
+                ByteBuffer half = src.slice(src.position(), src.remaining() / 2);
+                delegate.write(half);
+                src.position(src.position() + half.position());
+                throw new IOException("No space left on device");
+            }
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -77,7 +77,7 @@ class QueryControllerIntegrationTest {
 
         // When & Then
         mockMvc.perform(get("/api/v1/query/{queryId}", nonExistentQueryId))
-                .andExpect(status().isInternalServerError());
+                .andExpect(status().isNotFound());
     }
 
     @Test
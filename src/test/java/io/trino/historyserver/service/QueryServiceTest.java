@@ -1,15 +1,36 @@
 package io.trino.historyserver.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.dto.QueryIngestionStatus;
 import io.trino.historyserver.dto.QueryReference;
+import io.trino.historyserver.exception.InvalidQueryRequestException;
 import io.trino.historyserver.exception.QueryFetchException;
 import io.trino.historyserver.exception.QueryStorageException;
 import io.trino.historyserver.fetch.TrinoQueryFetcher;
+import io.trino.historyserver.ingest.BatchIngestionProperties;
+import io.trino.historyserver.ingest.IngestionResult;
+import io.trino.historyserver.storage.BulkReadProperties;
 import io.trino.historyserver.storage.RetryingStorageHandler;
+import io.trino.historyserver.storage.RetryingStorageHandlerProperties;
+import io.trino.historyserver.util.TaskRetryExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,25 +48,33 @@ class QueryServiceTest {
 
     @BeforeEach
     void setUp() {
-        queryService = new QueryService(trinoQueryFetcher, storageHandler);
+        BulkReadProperties bulkReadProps = new BulkReadProperties();
+        bulkReadProps.setMaxIds(3);
+        bulkReadProps.setChunkSize(2);
+        RetryingStorageHandlerProperties retryProps = new RetryingStorageHandlerProperties();
+        retryProps.setBackoffMillis(1);
+        queryService = new QueryService(trinoQueryFetcher, storageHandler, retryProps, new TaskRetryExecutor(new SimpleMeterRegistry()),
+                new BatchIngestionProperties(), bulkReadProps, Schedulers.immediate());
     }
 
     @Test
-    void createQuery_ShouldSuccessfullyCreateQuery_WhenValidInput() {
+    void createQuery_ShouldStreamQueryIntoStorage_WhenValidInput() {
         // Given
         QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
         String environment = "test";
         String expectedQueryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
 
-        when(trinoQueryFetcher.fetchQuery(queryRef)).thenReturn(expectedQueryJson);
-        doNothing().when(storageHandler).writeQuery(queryRef.queryId(), environment, expectedQueryJson);
+        when(trinoQueryFetcher.fetchQueryStream(queryRef)).thenReturn(body(expectedQueryJson));
+        List<String> stored = captureStreamedWrites();
 
         // When
         assertDoesNotThrow(() -> queryService.createQuery(queryRef, environment));
 
         // Then
-        verify(trinoQueryFetcher).fetchQuery(queryRef);
-        verify(storageHandler).writeQuery(queryRef.queryId(), environment, expectedQueryJson);
+        verify(trinoQueryFetcher).fetchQueryStream(queryRef);
+        verify(storageHandler).writeQueryStream(eq(queryRef.queryId()), eq(environment), any(InputStream.class));
+        verify(storageHandler, never()).writeQuery(anyString(), anyString(), anyString());
+        assertEquals(List.of(expectedQueryJson), stored);
     }
 
     @Test
@@ -54,30 +83,30 @@ class QueryServiceTest {
         QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
         String environment = "test";
 
-        when(trinoQueryFetcher.fetchQuery(queryRef))
-                .thenThrow(new QueryFetchException("test-query-id", "Failed to fetch query"));
+        when(trinoQueryFetcher.fetchQueryStream(queryRef))
+                .thenReturn(Flux.error(new QueryFetchException("test-query-id", "Failed to fetch query")));
+        captureStreamedWrites();
 
         // When & Then
         assertThrows(QueryFetchException.class, () -> queryService.createQuery(queryRef, environment));
-        verify(trinoQueryFetcher).fetchQuery(queryRef);
-        verify(storageHandler, never()).writeQuery(anyString(), anyString(), anyString());
+        verify(trinoQueryFetcher).fetchQueryStream(queryRef);
     }
 
     @Test
-    void createQuery_ShouldThrowException_WhenStorageFails() {
+    void createQuery_ShouldFetchAgainAndThrow_WhenStorageKeepsFailing() {
         // Given
         QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
         String environment = "test";
         String expectedQueryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
 
-        when(trinoQueryFetcher.fetchQuery(queryRef)).thenReturn(expectedQueryJson);
+        when(trinoQueryFetcher.fetchQueryStream(queryRef)).thenAnswer(invocation -> body(expectedQueryJson));
         doThrow(new QueryStorageException("test-query-id", "Storage failed"))
-                .when(storageHandler).writeQuery(queryRef.queryId(), environment, expectedQueryJson);
+                .when(storageHandler).writeQueryStream(eq(queryRef.queryId()), eq(environment), any(InputStream.class));
 
         // When & Then
         assertThrows(QueryStorageException.class, () -> queryService.createQuery(queryRef, environment));
-        verify(trinoQueryFetcher).fetchQuery(queryRef);
-        verify(storageHandler).writeQuery(queryRef.queryId(), environment, expectedQueryJson);
+        verify(trinoQueryFetcher, times(3)).fetchQueryStream(queryRef);
+        verify(storageHandler, times(3)).writeQueryStream(eq(queryRef.queryId()), eq(environment), any(InputStream.class));
     }
 
     @Test
@@ -127,4 +156,168 @@ class QueryServiceTest {
         assertEquals(expectedQueryJson, result);
         verify(storageHandler).readQuery(queryId, environment);
     }
+
+    @Test
+    void createQueryAsync_ShouldStoreQuery_WhenRetriedAfterStorageFailure() {
+        // Given
+        QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
+        String environment = "test";
+        String queryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
+
+        when(trinoQueryFetcher.fetchQueryStream(queryRef)).thenAnswer(invocation -> body(queryJson));
+        List<String> stored = new ArrayList<>();
+        doThrow(new QueryStorageException("Storage failed", "test-query-id"))
+                .doAnswer(invocation -> stored.add(readStream(invocation.getArgument(2))))
+                .when(storageHandler).writeQueryStream(eq("test-query-id"), eq(environment), any(InputStream.class));
+
+        // When
+        queryService.createQueryAsync(queryRef, environment).block();
+
+        // Then
+        assertEquals(List.of(queryJson), stored);
+        verify(trinoQueryFetcher, times(2)).fetchQueryStream(queryRef);
+    }
+
+    @Test
+    void createQueryAsync_ShouldNotRetry_WhenFetchFails() {
+        // Given
+        QueryReference queryRef = new QueryReference("test-query-id", "http://localhost:8080");
+
+        when(trinoQueryFetcher.fetchQueryStream(queryRef)).thenReturn(Flux.error(new QueryFetchException("Fetch failed", "test-query-id")));
+        captureStreamedWrites();
+
+        // When & Then
+        assertThrows(QueryFetchException.class, () -> queryService.createQueryAsync(queryRef, "test").block());
+        verify(trinoQueryFetcher, times(1)).fetchQueryStream(queryRef);
+        verify(storageHandler, never()).writeQuery(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void createQueriesAsync_ShouldFetchAllAndWriteOnce_WhenAllSucceed() {
+        // Given
+        QueryReference first = new QueryReference("query-1", "http://localhost:8080");
+        QueryReference second = new QueryReference("query-2", "http://localhost:8080");
+        String environment = "test";
+
+        when(trinoQueryFetcher.fetchQueryAsync(first)).thenReturn(Mono.just("{\"queryId\":\"query-1\"}"));
+        when(trinoQueryFetcher.fetchQueryAsync(second)).thenReturn(Mono.just("{\"queryId\":\"query-2\"}"));
+
+        // When
+        List<QueryIngestionStatus> result = queryService.createQueriesAsync(List.of(first, second), environment).block();
+
+        // Then
+        Map<String, String> expectedWrites = new LinkedHashMap<>();
+        expectedWrites.put("query-1", "{\"queryId\":\"query-1\"}");
+        expectedWrites.put("query-2", "{\"queryId\":\"query-2\"}");
+        verify(storageHandler).writeQueries(expectedWrites, environment);
+        verify(storageHandler, never()).writeQuery(anyString(), anyString(), anyString());
+        assertEquals(List.of(
+                QueryIngestionStatus.of("query-1", IngestionResult.CREATED),
+                QueryIngestionStatus.of("query-2", IngestionResult.CREATED)
+        ), result);
+    }
+
+    @Test
+    void createQueriesAsync_ShouldReportFailedFetch_AndStoreTheRest() {
+        // Given
+        QueryReference failing = new QueryReference("query-1", "http://localhost:8080");
+        QueryReference healthy = new QueryReference("query-2", "http://localhost:8080");
+        String environment = "test";
+
+        when(trinoQueryFetcher.fetchQueryAsync(failing)).thenReturn(Mono.error(new QueryFetchException("Fetch failed", "query-1")));
+        when(trinoQueryFetcher.fetchQueryAsync(healthy)).thenReturn(Mono.just("{\"queryId\":\"query-2\"}"));
+
+        // When
+        List<QueryIngestionStatus> result = queryService.createQueriesAsync(List.of(failing, healthy), environment).block();
+
+        // Then
+        verify(storageHandler).writeQueries(Map.of("query-2", "{\"queryId\":\"query-2\"}"), environment);
+        assertEquals(IngestionResult.FAILED, result.get(0).status());
+        assertEquals("Fetch failed", result.get(0).message());
+        assertEquals(IngestionResult.CREATED, result.get(1).status());
+    }
+
+    @Test
+    void createQueriesAsync_ShouldFallBackToSingleWrites_WhenBatchWriteFails() {
+        // Given
+        QueryReference duplicate = new QueryReference("query-1", "http://localhost:8080");
+        QueryReference healthy = new QueryReference("query-2", "http://localhost:8080");
+        String environment = "test";
+
+        when(trinoQueryFetcher.fetchQueryAsync(duplicate)).thenReturn(Mono.just("{\"queryId\":\"query-1\"}"));
+        when(trinoQueryFetcher.fetchQueryAsync(healthy)).thenReturn(Mono.just("{\"queryId\":\"query-2\"}"));
+        doThrow(new QueryStorageException("Batch failed", "query-1,query-2"))
+                .when(storageHandler).writeQueries(anyMap(), eq(environment));
+        doThrow(new QueryStorageException("Duplicate key", "query-1"))
+                .when(storageHandler).writeQuery("query-1", environment, "{\"queryId\":\"query-1\"}");
+
+        // When
+        List<QueryIngestionStatus> result = queryService.createQueriesAsync(List.of(duplicate, healthy), environment).block();
+
+        // Then
+        verify(storageHandler).writeQuery("query-2", environment, "{\"queryId\":\"query-2\"}");
+        assertEquals(IngestionResult.FAILED, result.get(0).status());
+        assertEquals(IngestionResult.CREATED, result.get(1).status());
+    }
+
+    @Test
+    void getQueries_ShouldReadInChunks_AndKeepRequestOrder() {
+        // Given
+        String environment = "test";
+        when(storageHandler.readQueries(List.of("query-2", "query-1"), environment))
+                .thenReturn(Map.of("query-1", "{\"queryId\":\"query-1\"}"));
+        when(storageHandler.readQueries(List.of("query-3"), environment))
+                .thenReturn(Map.of("query-3", "{\"queryId\":\"query-3\"}"));
+        List<String> received = new ArrayList<>();
+
+        // When
+        queryService.getQueries(List.of("query-2", "query-1", "query-2", "query-3"), environment,
+                (queryId, queryJson) -> received.add(queryId + "=" + queryJson));
+
+        // Then
+        assertEquals(List.of(
+                "query-2=null",
+                "query-1={\"queryId\":\"query-1\"}",
+                "query-3={\"queryId\":\"query-3\"}"
+        ), received);
+    }
+
+    @Test
+    void getQueries_ShouldThrowException_WhenTooManyIdsRequested() {
+        // When & Then
+        assertThrows(InvalidQueryRequestException.class,
+                () -> queryService.getQueries(List.of("query-1", "query-2", "query-3", "query-4"), "test", (queryId, queryJson) -> {}));
+        verify(storageHandler, never()).readQueries(anyList(), anyString());
+    }
+
+    @Test
+    void getQueries_ShouldThrowException_WhenNoIdsRequested() {
+        // When & Then
+        assertThrows(InvalidQueryRequestException.class,
+                () -> queryService.getQueries(List.of(), "test", (queryId, queryJson) -> {}));
+    }
+
+    @Test
+    void getQueries_ShouldThrowException_WhenQueryIdIsNotSafeFileName() {
+        // When & Then
+        assertThrows(InvalidQueryRequestException.class,
+                () -> queryService.getQueries(List.of("query-1", "../../x"), "test", (queryId, queryJson) -> {}));
+        verify(storageHandler, never()).readQueries(anyList(), anyString());
+    }
+
+    private static Flux<DataBuffer> body(String json) {
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Makes the storage mock consume the stream like a real backend, which is what surfaces fetch failures
+    private List<String> captureStreamedWrites() {
+        List<String> stored = new ArrayList<>();
+        lenient().doAnswer(invocation -> stored.add(readStream(invocation.getArgument(2))))
+                .when(storageHandler).writeQueryStream(anyString(), anyString(), any(InputStream.class));
+        return stored;
+    }
+
+    private static String readStream(InputStream stream) throws IOException {
+        return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,210 @@
+package io.trino.historyserver.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.storage.compression.QueryCodec;
+import io.trino.historyserver.storage.compression.QueryCompressionProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingStorageHandlerTest {
+
+    @Mock
+    private QueryStorageHandler delegate;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private CachingStorageHandlerProperties props;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        props = new CachingStorageHandlerProperties();
+        props.setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void readQuery_ShouldServeFromMemory_WhenReadBefore() {
+        // Given
+        CachingStorageHandler handler = handler();
+        when(delegate.readQuery("test-query-id", "test")).thenReturn("{}");
+
+        // When
+        handler.readQuery("test-query-id", "test");
+        String result = handler.readQuery("test-query-id", "test");
+
+        // Then
+        assertEquals("{}", result);
+        verify(delegate, times(1)).readQuery("test-query-id", "test");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void readQuery_ShouldKeepEnvironmentsApart() {
+        // Given
+        CachingStorageHandler handler = handler();
+        when(delegate.readQuery("test-query-id", "prod")).thenReturn("{\"env\":\"prod\"}");
+        when(delegate.readQuery("test-query-id", "dev")).thenReturn("{\"env\":\"dev\"}");
+
+        // When
+        handler.readQuery("test-query-id", "prod");
+        String result = handler.readQuery("test-query-id", "dev");
+
+        // Then
+        assertEquals("{\"env\":\"dev\"}", result);
+    }
+
+    @Test
+    void writeQueryStream_ShouldPopulateCache_AfterBackendWrite() {
+        // Given
+        CachingStorageHandler handler = handler();
+        doAnswer(invocation -> ((InputStream) invocation.getArgument(2)).readAllBytes())
+                .when(delegate).writeQueryStream(eq("test-query-id"), eq("test"), any(InputStream.class));
+
+        // When
+        handler.writeQueryStream("test-query-id", "test", stream("{\"state\":\"FINISHED\"}"));
+        String result = handler.readQuery("test-query-id", "test");
+
+        // Then
+        assertEquals("{\"state\":\"FINISHED\"}", result);
+        verify(delegate, never()).readQuery(anyString(), anyString());
+    }
+
+    @Test
+    void writeQueryStream_ShouldNotCache_WhenDocumentExceedsEntryLimit() {
+        // Given
+        props.setMaxEntryBytes(4);
+        CachingStorageHandler handler = handler();
+        doAnswer(invocation -> ((InputStream) invocation.getArgument(2)).readAllBytes())
+                .when(delegate).writeQueryStream(eq("test-query-id"), eq("test"), any(InputStream.class));
+        when(delegate.readQuery("test-query-id", "test")).thenReturn("{\"state\":\"FINISHED\"}");
+
+        // When
+        handler.writeQueryStream("test-query-id", "test", stream("{\"state\":\"FINISHED\"}"));
+        handler.readQuery("test-query-id", "test");
+
+        // Then
+        verify(delegate).readQuery("test-query-id", "test");
+    }
+
+    @Test
+    void writeQuery_ShouldEvictByTotalSize_NotByEntryCount() {
+        // Given
+        props.setMaxSizeBytes(10);
+        CachingStorageHandler handler = handler();
+
+        // When
+        handler.writeQuery("query-1", "test", "123456");
+        handler.writeQuery("query-2", "test", "abcdef");
+
+        // Then: the two documents do not fit in 10 bytes together, so exactly one is still cached
+        handler.readQuery("query-1", "test");
+        handler.readQuery("query-2", "test");
+        verify(delegate, times(1)).readQuery(anyString(), eq("test"));
+        assertEquals(6.0, meterRegistry.get(CachingStorageHandler.SIZE_METRIC).gauge().value());
+    }
+
+    @Test
+    void readQuery_ShouldReadAgain_AfterTtl() {
+        // Given
+        props.setTtlMillis(1000);
+        CachingStorageHandler handler = handler();
+        when(delegate.readQuery("test-query-id", "test")).thenReturn("{}");
+        handler.readQuery("test-query-id", "test");
+
+        // When
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001));
+        handler.readQuery("test-query-id", "test");
+
+        // Then
+        verify(delegate, times(2)).readQuery("test-query-id", "test");
+    }
+
+    @Test
+    void readQueries_ShouldReadOnlyMissesFromBackend() {
+        // Given
+        CachingStorageHandler handler = handler();
+        handler.writeQuery("query-1", "test", "{\"id\":1}");
+        when(delegate.readQueries(List.of("query-2", "query-3"), "test")).thenReturn(Map.of("query-2", "{\"id\":2}"));
+
+        // When
+        Map<String, String> result = handler.readQueries(List.of("query-1", "query-2", "query-3"), "test");
+
+        // Then
+        assertEquals(Map.of("query-1", "{\"id\":1}", "query-2", "{\"id\":2}"), result);
+        verify(delegate).readQueries(List.of("query-2", "query-3"), "test");
+    }
+
+    @Test
+    void findQueryFile_ShouldReturnNothing_WhenQueryIsCached() {
+        // Given
+        CachingStorageHandler handler = handler();
+        handler.writeQuery("test-query-id", "test", "{}");
+
+        // When
+        Optional<StoredQueryFile> result = handler.findQueryFile("test-query-id", "test", Set.of(ContentEncoding.IDENTITY));
+
+        // Then
+        assertTrue(result.isEmpty());
+        verify(delegate, never()).findQueryFile(anyString(), anyString(), anySet());
+    }
+
+    @Test
+    void readEncodedQuery_ShouldServeCompressedDocumentFromCache_WhenReadAgain() throws IOException {
+        // Given
+        CachingStorageHandler handler = handler();
+        byte[] stored = gzip("{\"state\":\"FINISHED\"}");
+        Set<ContentEncoding> accepted = Set.of(ContentEncoding.IDENTITY, ContentEncoding.GZIP);
+        when(delegate.readEncodedQuery("test-query-id", "test", accepted)).thenReturn(new EncodedQuery(stored, ContentEncoding.GZIP));
+
+        // When
+        handler.readEncodedQuery("test-query-id", "test", accepted);
+        EncodedQuery result = handler.readEncodedQuery("test-query-id", "test", accepted);
+        EncodedQuery decoded = handler.readEncodedQuery("test-query-id", "test", Set.of(ContentEncoding.IDENTITY));
+        String queryJson = handler.readQuery("test-query-id", "test");
+
+        // Then
+        verify(delegate, times(1)).readEncodedQuery(anyString(), anyString(), anySet());
+        verify(delegate, never()).readQuery(anyString(), anyString());
+        assertEquals(ContentEncoding.GZIP, result.encoding());
+        assertArrayEquals(stored, result.content());
+        assertEquals("{\"state\":\"FINISHED\"}", decoded.toJson());
+        assertEquals("{\"state\":\"FINISHED\"}", queryJson);
+    }
+
+    private CachingStorageHandler handler() {
+        return new CachingStorageHandler(delegate, props, new QueryCodec(new QueryCompressionProperties()), meterRegistry, nanos::get);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,224 @@
+package io.trino.historyserver.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.exception.QueryNotFoundException;
+import io.trino.historyserver.storage.compression.QueryCodec;
+import io.trino.historyserver.storage.compression.QueryCompressionProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DiskCacheStorageHandlerTest {
+
+    @Mock
+    private QueryStorageHandler delegate;
+
+    @TempDir
+    Path tempDir;
+
+    private final QueryCodec codec = new QueryCodec(new QueryCompressionProperties());
+    private DiskCacheStorageHandlerProperties props;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        props = new DiskCacheStorageHandlerProperties();
+        props.setEnabled(true);
+        props.setDir(tempDir.resolve("cache").toString());
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void readQuery_ShouldServeFromDisk_WhenReadBefore() {
+        // Given
+        DiskCacheStorageHandler handler = handler();
+        when(delegate.readQuery("test-query-id", "test")).thenReturn("{\"state\":\"FINISHED\"}");
+
+        // When
+        handler.readQuery("test-query-id", "test");
+        String result = handler.readQuery("test-query-id", "test");
+
+        // Then
+        assertEquals("{\"state\":\"FINISHED\"}", result);
+        verify(delegate, times(1)).readQuery("test-query-id", "test");
+        assertTrue(Files.exists(tempDir.resolve("cache/test/test-query-id.json")));
+        assertEquals(1.0, meterRegistry.get(DiskCacheStorageHandler.HITS_METRIC).counter().count());
+        assertEquals(1.0, meterRegistry.get(DiskCacheStorageHandler.MISSES_METRIC).counter().count());
+    }
+
+    @Test
+    void readQuery_ShouldServeFromDisk_AfterRestart() throws IOException {
+        // Given
+        when(delegate.readQuery("test-query-id", "test")).thenReturn("{}");
+        handler().readQuery("test-query-id", "test");
+        Path leftover = Files.writeString(tempDir.resolve("cache/test/other-query.json123.tmp"), "{");
+
+        // When
+        DiskCacheStorageHandler restarted = new DiskCacheStorageHandler(delegate, props, codec, new SimpleMeterRegistry());
+        String result = restarted.readQuery("test-query-id", "test");
+
+        // Then
+        assertEquals("{}", result);
+        verify(delegate, times(1)).readQuery("test-query-id", "test");
+        assertEquals(2, restarted.sizeBytes());
+        assertFalse(Files.exists(leftover));
+    }
+
+    @Test
+    void readQuery_ShouldEvictUnreferencedEntry_WhenSizeExceeded() {
+        // Given
+        props.setMaxSizeBytes(10);
+        DiskCacheStorageHandler handler = handler();
+        when(delegate.readQuery("query-a", "test")).thenReturn("aaaa");
+        when(delegate.readQuery("query-b", "test")).thenReturn("bbbb");
+        when(delegate.readQuery("query-c", "test")).thenReturn("cccc");
+        handler.readQuery("query-a", "test");
+        handler.readQuery("query-b", "test");
+        handler.readQuery("query-a", "test");
+
+        // When
+        handler.readQuery("query-c", "test");
+        handler.readQuery("query-a", "test");
+
+        // Then: query-a was read again since it was cached, so query-b was evicted instead
+        verify(delegate, times(1)).readQuery("query-a", "test");
+        assertFalse(Files.exists(tempDir.resolve("cache/test/query-b.json")));
+        assertTrue(Files.exists(tempDir.resolve("cache/test/query-c.json")));
+        assertEquals(1.0, meterRegistry.get(DiskCacheStorageHandler.EVICTIONS_METRIC).counter().count());
+        assertEquals(8, handler.sizeBytes());
+    }
+
+    @Test
+    void writeQuery_ShouldDropCachedFile() {
+        // Given
+        DiskCacheStorageHandler handler = handler();
+        when(delegate.readQuery("test-query-id", "test")).thenReturn("{}");
+        handler.readQuery("test-query-id", "test");
+
+        // When
+        handler.writeQuery("test-query-id", "test", "{\"rewritten\":true}");
+        handler.readQuery("test-query-id", "test");
+
+        // Then
+        verify(delegate).writeQuery("test-query-id", "test", "{\"rewritten\":true}");
+        verify(delegate, times(2)).readQuery("test-query-id", "test");
+    }
+
+    @Test
+    void readQuery_ShouldNotCache_WhenQueryIsNotFound() {
+        // Given
+        DiskCacheStorageHandler handler = handler();
+        when(delegate.readQuery("missing-query", "test")).thenThrow(new QueryNotFoundException("Query not stored", "missing-query"));
+
+        // When & Then
+        assertThrows(QueryNotFoundException.class, () -> handler.readQuery("missing-query", "test"));
+        assertEquals(0, handler.sizeBytes());
+    }
+
+    @Test
+    void readQuery_ShouldBypassCache_WhenQueryIdIsNotAFileName() {
+        // Given
+        DiskCacheStorageHandler handler = handler();
+        when(delegate.readQuery("../escape", "test")).thenReturn("{}");
+
+        // When
+        handler.readQuery("../escape", "test");
+        handler.readQuery("../escape", "test");
+
+        // Then
+        verify(delegate, times(2)).readQuery("../escape", "test");
+        assertFalse(Files.exists(tempDir.resolve("cache/escape.json")));
+    }
+
+    @Test
+    void readQueries_ShouldReadOnlyMissesFromBackend() {
+        // Given
+        DiskCacheStorageHandler handler = handler();
+        when(delegate.readQuery("query-1", "test")).thenReturn("{\"id\":1}");
+        handler.readQuery("query-1", "test");
+        when(delegate.readQueries(List.of("query-2"), "test")).thenReturn(Map.of("query-2", "{\"id\":2}"));
+
+        // When
+        Map<String, String> result = handler.readQueries(List.of("query-1", "query-2"), "test");
+
+        // Then
+        assertEquals(Map.of("query-1", "{\"id\":1}", "query-2", "{\"id\":2}"), result);
+        verify(delegate).readQueries(List.of("query-2"), "test");
+    }
+
+    @Test
+    void readEncodedQuery_ShouldServeCompressedDocumentFromCache_WhenReadAgain() throws IOException {
+        // Given
+        DiskCacheStorageHandler handler = handler();
+        byte[] stored = gzip("{\"state\":\"FINISHED\"}");
+        Set<ContentEncoding> accepted = Set.of(ContentEncoding.IDENTITY, ContentEncoding.GZIP);
+        when(delegate.readEncodedQuery("test-query-id", "test", accepted)).thenReturn(new EncodedQuery(stored, ContentEncoding.GZIP));
+
+        // When
+        handler.readEncodedQuery("test-query-id", "test", accepted);
+        EncodedQuery result = handler.readEncodedQuery("test-query-id", "test", accepted);
+        EncodedQuery decoded = handler.readEncodedQuery("test-query-id", "test", Set.of(ContentEncoding.IDENTITY));
+        String queryJson = handler.readQuery("test-query-id", "test");
+
+        // Then
+        verify(delegate, times(1)).readEncodedQuery(anyString(), anyString(), anySet());
+        verify(delegate, never()).readQuery(anyString(), anyString());
+        assertEquals(ContentEncoding.GZIP, result.encoding());
+        assertArrayEquals(stored, result.content());
+        assertEquals("{\"state\":\"FINISHED\"}", decoded.toJson());
+        assertEquals("{\"state\":\"FINISHED\"}", queryJson);
+        assertArrayEquals(stored, Files.readAllBytes(tempDir.resolve("cache/test/test-query-id.json")));
+    }
+
+    @Test
+    void readQuery_ShouldNotCacheDocument_WhenRewrittenDuringRead() {
+        // Given
+        DiskCacheStorageHandler handler = handler();
+        when(delegate.readQuery("test-query-id", "test"))
+                .thenAnswer(invocation -> {
+                    handler.writeQuery("test-query-id", "test", "{\"state\":\"FINISHED\"}");
+                    return "{\"state\":\"RUNNING\"}";
+                })
+                .thenReturn("{\"state\":\"FINISHED\"}");
+
+        // When
+        String first = handler.readQuery("test-query-id", "test");
+        String second = handler.readQuery("test-query-id", "test");
+
+        // Then
+        assertEquals("{\"state\":\"RUNNING\"}", first);
+        assertEquals("{\"state\":\"FINISHED\"}", second);
+        verify(delegate, times(2)).readQuery("test-query-id", "test");
+        assertEquals("{\"state\":\"FINISHED\"}", handler.readQuery("test-query-id", "test"));
+        verify(delegate, times(2)).readQuery("test-query-id", "test");
+    }
+
+    private DiskCacheStorageHandler handler() {
+        return new DiskCacheStorageHandler(delegate, props, codec, meterRegistry);
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer.toByteArray();
+    }
+}
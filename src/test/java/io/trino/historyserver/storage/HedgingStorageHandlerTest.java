@@ -0,0 +1,113 @@
+package io.trino.historyserver.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.exception.QueryNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HedgingStorageHandlerTest {
+
+    @Mock
+    private QueryStorageHandler delegate;
+
+    private HedgingStorageHandlerProperties props;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        props = new HedgingStorageHandlerProperties();
+        props.setEnabled(true);
+        props.setMaxDelayMillis(50);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void readQuery_ShouldReturnHedgedRead_WhenFirstReadIsSlow() {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        when(delegate.readQuery("test-query-id", "test")).thenAnswer(invocation -> {
+            if (reads.incrementAndGet() == 1) {
+                release.await(5, TimeUnit.SECONDS);
+                return "{\"read\":\"slow\"}";
+            }
+            return "{\"read\":\"hedge\"}";
+        });
+
+        // When
+        String result = handler().readQuery("test-query-id", "test");
+        release.countDown();
+
+        // Then
+        assertEquals("{\"read\":\"hedge\"}", result);
+        assertEquals(1.0, meterRegistry.get(HedgingStorageHandler.ISSUED_METRIC).counter().count());
+        assertEquals(1.0, meterRegistry.get(HedgingStorageHandler.WON_METRIC).counter().count());
+    }
+
+    @Test
+    void readQuery_ShouldNotHedge_WhenFirstReadIsFast() {
+        // Given
+        when(delegate.readQuery("test-query-id", "test")).thenReturn("{}");
+
+        // When
+        String result = handler().readQuery("test-query-id", "test");
+
+        // Then
+        assertEquals("{}", result);
+        verify(delegate, times(1)).readQuery("test-query-id", "test");
+        assertEquals(0.0, meterRegistry.get(HedgingStorageHandler.ISSUED_METRIC).counter().count());
+    }
+
+    @Test
+    void readQuery_ShouldWaitForFirstRead_WhenBudgetIsSpent() {
+        // Given
+        props.setBudgetReserve(0);
+        when(delegate.readQuery("test-query-id", "test")).thenAnswer(invocation -> {
+            Thread.sleep(150);
+            return "{}";
+        });
+
+        // When
+        String result = handler().readQuery("test-query-id", "test");
+
+        // Then
+        assertEquals("{}", result);
+        verify(delegate, times(1)).readQuery("test-query-id", "test");
+        assertEquals(1.0, meterRegistry.get(HedgingStorageHandler.SKIPPED_METRIC).counter().count());
+    }
+
+    @Test
+    void readQuery_ShouldPropagateFirstReadError_WhenQueryIsNotFound() {
+        // Given
+        when(delegate.readQuery("missing-query", "test")).thenThrow(new QueryNotFoundException("Query not stored", "missing-query"));
+
+        // When & Then
+        assertThrows(QueryNotFoundException.class, () -> handler().readQuery("missing-query", "test"));
+        verify(delegate, times(1)).readQuery("missing-query", "test");
+    }
+
+    @Test
+    void writeQuery_ShouldPassThrough() {
+        // When
+        handler().writeQuery("test-query-id", "test", "{}");
+
+        // Then
+        verify(delegate).writeQuery("test-query-id", "test", "{}");
+    }
+
+    private HedgingStorageHandler handler() {
+        return new HedgingStorageHandler(delegate, props, Schedulers.boundedElastic(), meterRegistry);
+    }
+}
@@ -0,0 +1,81 @@
+package io.trino.historyserver.storage;
+
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryingStorageHandlerPropertiesTest {
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    void validate_ShouldRejectJitterFactorAboveOne() {
+        // Given
+        RetryingStorageHandlerProperties properties = new RetryingStorageHandlerProperties();
+        properties.setJitterFactor(1.5);
+
+        // When & Then
+        assertEquals(1, validator.validate(properties).size());
+    }
+
+    @Test
+    void validate_ShouldAcceptDefaults() {
+        // When & Then
+        assertTrue(validator.validate(new RetryingStorageHandlerProperties()).isEmpty());
+    }
+
+    @Test
+    void postProcessEnvironment_ShouldApplyDeprecatedKeys_WhenNewKeysAreNotSet() {
+        // Given
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("storage.max-retries", "5")
+                .withProperty("storage.backoff-millis", "1000");
+
+        // When
+        RetryingStorageHandlerProperties properties = bind(environment);
+
+        // Then
+        assertEquals(5, properties.getMaxRetries());
+        assertEquals(1000, properties.getBackoffMillis());
+    }
+
+    @Test
+    void postProcessEnvironment_ShouldPreferNewKeys_WhenBothAreSet() {
+        // Given
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("storage.max-retries", "5")
+                .withProperty("storage.retry.max-retries", "2");
+
+        // When
+        RetryingStorageHandlerProperties properties = bind(environment);
+
+        // Then
+        assertEquals(2, properties.getMaxRetries());
+        assertEquals(500, properties.getBackoffMillis());
+    }
+
+    @Test
+    void postProcessEnvironment_ShouldAddNothing_WhenDeprecatedKeysAreNotSet() {
+        // Given
+        MockEnvironment environment = new MockEnvironment().withProperty("storage.retry.max-retries", "2");
+
+        // When
+        new DeprecatedRetryPropertiesPostProcessor(Supplier::get).postProcessEnvironment(environment, new SpringApplication());
+
+        // Then
+        assertFalse(environment.getPropertySources().contains(DeprecatedRetryPropertiesPostProcessor.PROPERTY_SOURCE_NAME));
+    }
+
+    private static RetryingStorageHandlerProperties bind(MockEnvironment environment) {
+        new DeprecatedRetryPropertiesPostProcessor(Supplier::get).postProcessEnvironment(environment, new SpringApplication());
+        return Binder.get(environment)
+                .bindOrCreate("storage.retry", RetryingStorageHandlerProperties.class);
+    }
+}
@@ -1,6 +1,7 @@
 package io.trino.historyserver.storage;
 
 import io.trino.historyserver.exception.QueryStorageException;
+import io.trino.historyserver.util.RetryPolicy;
 import io.trino.historyserver.util.TaskRetryExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,7 +17,6 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class RetryingStorageHandlerTest {
 
-    @Mock
     private RetryingStorageHandlerProperties properties;
 
     @Mock
@@ -29,10 +29,10 @@ class RetryingStorageHandlerTest {
 
     @BeforeEach
     void setUp() {
+        properties = new RetryingStorageHandlerProperties();
+        properties.setMaxRetries(3);
+        properties.setBackoffMillis(100L);
         retryingStorageHandler = new RetryingStorageHandler(properties, delegate, taskRetryExecutor);
-        
-        when(properties.getMaxRetries()).thenReturn(3);
-        when(properties.getBackoffMillis()).thenReturn(100L);
     }
 
     @Test
@@ -42,13 +42,13 @@ class RetryingStorageHandlerTest {
         String environment = "test";
         String queryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
 
-        doNothing().when(taskRetryExecutor).executeWithRetry(any(Runnable.class), eq(3), eq(100L));
+        doNothing().when(taskRetryExecutor).executeWithRetry(eq("write_query"), any(Runnable.class), eq(policy(3, 100L)));
 
         // When
         retryingStorageHandler.writeQuery(queryId, environment, queryJson);
 
         // Then
-        verify(taskRetryExecutor).executeWithRetry(any(Runnable.class), eq(3), eq(100L));
+        verify(taskRetryExecutor).executeWithRetry(eq("write_query"), any(Runnable.class), eq(policy(3, 100L)));
     }
 
     @Test
@@ -59,13 +59,13 @@ class RetryingStorageHandlerTest {
         String queryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
 
         QueryStorageException expectedException = new QueryStorageException(queryId, "Storage failed");
-        doThrow(expectedException).when(taskRetryExecutor).executeWithRetry(any(Runnable.class), eq(3), eq(100L));
+        doThrow(expectedException).when(taskRetryExecutor).executeWithRetry(eq("write_query"), any(Runnable.class), eq(policy(3, 100L)));
 
         // When & Then
         assertThrows(QueryStorageException.class, () -> 
             retryingStorageHandler.writeQuery(queryId, environment, queryJson));
         
-        verify(taskRetryExecutor).executeWithRetry(any(Runnable.class), eq(3), eq(100L));
+        verify(taskRetryExecutor).executeWithRetry(eq("write_query"), any(Runnable.class), eq(policy(3, 100L)));
     }
 
     @Test
@@ -75,14 +75,14 @@ class RetryingStorageHandlerTest {
         String environment = "test";
         String expectedQueryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
 
-        when(taskRetryExecutor.executeWithRetry(any(Supplier.class), eq(3), eq(100L))).thenReturn(expectedQueryJson);
+        when(taskRetryExecutor.executeWithRetry(eq("read_query"), any(Supplier.class), eq(policy(3, 100L)))).thenReturn(expectedQueryJson);
 
         // When
         String result = retryingStorageHandler.readQuery(queryId, environment);
 
         // Then
         assertEquals(expectedQueryJson, result);
-        verify(taskRetryExecutor).executeWithRetry(any(Supplier.class), eq(3), eq(100L));
+        verify(taskRetryExecutor).executeWithRetry(eq("read_query"), any(Supplier.class), eq(policy(3, 100L)));
     }
 
     @Test
@@ -92,13 +92,13 @@ class RetryingStorageHandlerTest {
         String environment = "test";
 
         QueryStorageException expectedException = new QueryStorageException(queryId, "Query not found");
-        when(taskRetryExecutor.executeWithRetry(any(Supplier.class), eq(3), eq(100L))).thenThrow(expectedException);
+        when(taskRetryExecutor.executeWithRetry(eq("read_query"), any(Supplier.class), eq(policy(3, 100L)))).thenThrow(expectedException);
 
         // When & Then
         assertThrows(QueryStorageException.class, () -> 
             retryingStorageHandler.readQuery(queryId, environment));
         
-        verify(taskRetryExecutor).executeWithRetry(any(Supplier.class), eq(3), eq(100L));
+        verify(taskRetryExecutor).executeWithRetry(eq("read_query"), any(Supplier.class), eq(policy(3, 100L)));
     }
 
     @Test
@@ -108,16 +108,16 @@ class RetryingStorageHandlerTest {
         String environment = "test";
         String queryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
 
-        when(properties.getMaxRetries()).thenReturn(5);
-        when(properties.getBackoffMillis()).thenReturn(200L);
+        properties.setMaxRetries(5);
+        properties.setBackoffMillis(200L);
 
-        doNothing().when(taskRetryExecutor).executeWithRetry(any(Runnable.class), eq(5), eq(200L));
+        doNothing().when(taskRetryExecutor).executeWithRetry(eq("write_query"), any(Runnable.class), eq(policy(5, 200L)));
 
         // When
         retryingStorageHandler.writeQuery(queryId, environment, queryJson);
 
         // Then
-        verify(taskRetryExecutor).executeWithRetry(any(Runnable.class), eq(5), eq(200L));
+        verify(taskRetryExecutor).executeWithRetry(eq("write_query"), any(Runnable.class), eq(policy(5, 200L)));
     }
 
     @Test
@@ -127,16 +127,21 @@ class RetryingStorageHandlerTest {
         String environment = "test";
         String expectedQueryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
 
-        when(properties.getMaxRetries()).thenReturn(5);
-        when(properties.getBackoffMillis()).thenReturn(200L);
+        properties.setMaxRetries(5);
+        properties.setBackoffMillis(200L);
 
-        when(taskRetryExecutor.executeWithRetry(any(Supplier.class), eq(5), eq(200L))).thenReturn(expectedQueryJson);
+        when(taskRetryExecutor.executeWithRetry(eq("read_query"), any(Supplier.class), eq(policy(5, 200L)))).thenReturn(expectedQueryJson);
 
         // When
         String result = retryingStorageHandler.readQuery(queryId, environment);
 
         // Then
         assertEquals(expectedQueryJson, result);
-        verify(taskRetryExecutor).executeWithRetry(any(Supplier.class), eq(5), eq(200L));
+        verify(taskRetryExecutor).executeWithRetry(eq("read_query"), any(Supplier.class), eq(policy(5, 200L)));
+    }
+
+    private RetryPolicy policy(int maxAttempts, long backoffMillis) {
+        return new RetryPolicy(maxAttempts, backoffMillis, properties.getMaxBackoffMillis(), properties.getJitterFactor(),
+                properties.getRetryBudgetRatio(), properties.getRetryBudgetReserve());
     }
 }
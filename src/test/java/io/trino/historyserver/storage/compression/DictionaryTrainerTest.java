@@ -0,0 +1,141 @@
+package io.trino.historyserver.storage.compression;
+
+import com.github.luben.zstd.Zstd;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.storage.BulkReadProperties;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.RetryingStorageHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DictionaryTrainerTest {
+
+    @Mock
+    private RetryingStorageHandler storageHandler;
+
+    @TempDir
+    Path tempDir;
+
+    private DictionaryTrainingProperties props;
+    private QueryCodec codec;
+    private RecentlyStoredQueries recentlyStored;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        props = new DictionaryTrainingProperties();
+        props.setEnabled(true);
+        props.setDictionarySizeBytes(16 * 1024);
+        QueryCompressionProperties compressionProps = new QueryCompressionProperties();
+        compressionProps.setEnabled(true);
+        compressionProps.setAlgorithm(ContentEncoding.ZSTD);
+        compressionProps.setDictionaryDir(tempDir.toString());
+        codec = new QueryCodec(compressionProps);
+        recentlyStored = new RecentlyStoredQueries(props);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void train_ShouldInstallDictionary_FromRecentlyStoredQueries() throws Exception {
+        // Given
+        for (int i = 0; i < 1000; i++) {
+            recentlyStored.record("query-" + i, "test");
+        }
+        when(storageHandler.readQueries(anyList(), eq("test"))).thenAnswer(invocation -> {
+            Map<String, String> queryJsons = new LinkedHashMap<>();
+            for (String queryId : invocation.<List<String>>getArgument(0)) {
+                queryJsons.put(queryId, queryJson(queryId));
+            }
+            return queryJsons;
+        });
+
+        // When
+        OptionalLong dictionaryId = trainer().train();
+
+        // Then
+        assertTrue(dictionaryId.isPresent());
+        assertEquals(dictionaryId.getAsLong(), codec.activeDictionaryId());
+        assertEquals(dictionaryId.getAsLong(), Zstd.getDictIdFromFrame(codec.encode(queryJson("query-new"))));
+        verify(storageHandler, times(10)).readQueries(anyList(), eq("test"));
+        assertEquals(1.0, meterRegistry.get(DictionaryTrainer.TRAINED_METRIC).counter().count());
+    }
+
+    @Test
+    void train_ShouldSkip_WhenTooFewQueriesWereStored() throws Exception {
+        // Given
+        recentlyStored.record("query-1", "test");
+
+        // When
+        OptionalLong dictionaryId = trainer().train();
+
+        // Then
+        assertTrue(dictionaryId.isEmpty());
+        assertEquals(0, codec.activeDictionaryId());
+        verifyNoInteractions(storageHandler);
+    }
+
+    @Test
+    void train_ShouldSkip_WhenStoredQueriesCannotBeRead() throws Exception {
+        // Given
+        for (int i = 0; i < 200; i++) {
+            recentlyStored.record("query-" + i, "test");
+        }
+        when(storageHandler.readQueries(anyList(), eq("test"))).thenReturn(Map.of());
+
+        // When
+        OptionalLong dictionaryId = trainer().train();
+
+        // Then
+        assertTrue(dictionaryId.isEmpty());
+        assertEquals(0, codec.activeDictionaryId());
+    }
+
+    @Test
+    void recentlyStoredQueries_ShouldKeepNewestQueries() {
+        // Given
+        props.setSampleCount(2);
+        RecentlyStoredQueries queries = new RecentlyStoredQueries(props);
+
+        // When
+        queries.record("query-1", "test");
+        queries.record("query-2", "test");
+        queries.record("query-3", "test");
+
+        // Then
+        assertEquals(List.of(
+                new RecentlyStoredQueries.StoredQuery("query-2", "test"),
+                new RecentlyStoredQueries.StoredQuery("query-3", "test")
+        ), queries.snapshot());
+    }
+
+    private DictionaryTrainer trainer() {
+        return new DictionaryTrainer(props, codec, recentlyStored, storageHandler, new BulkReadProperties(), meterRegistry);
+    }
+
+    private static String queryJson(String queryId) {
+        StringBuilder json = new StringBuilder("{\"queryId\":\"" + queryId + "\",\"state\":\"FINISHED\",\"operatorSummaries\":[");
+        for (int i = 0; i < 40; i++) {
+            json.append("{\"operatorType\":\"").append(i % 3 == 0 ? "TableScanOperator" : "HashAggregationOperator")
+                    .append("\",\"planNodeId\":\"").append(queryId.hashCode() % 97 + i)
+                    .append("\",\"inputPositions\":").append(Math.abs(queryId.hashCode() * i) % 100000).append("},");
+        }
+        json.append("{}]}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,239 @@
+package io.trino.historyserver.storage.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCodecTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void encode_ShouldStoreZstdFrame_WhenZstdIsConfigured() throws IOException {
+        // Given
+        QueryCodec codec = codec(ContentEncoding.ZSTD, null);
+        String queryJson = queryJson(1);
+
+        // When
+        byte[] stored = codec.encode(queryJson);
+
+        // Then
+        assertEquals(ContentEncoding.ZSTD, QueryCodec.encodingOf(stored));
+        assertTrue(stored.length < queryJson.length() / 10);
+        assertEquals(queryJson, codec.decode(stored));
+    }
+
+    @Test
+    void encode_ShouldStoreGzipFrame_WhenGzipIsConfigured() throws IOException {
+        // Given
+        QueryCodec codec = codec(ContentEncoding.GZIP, null);
+        String queryJson = queryJson(1);
+
+        // When
+        byte[] stored = codec.encode(new ByteArrayInputStream(queryJson.getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertEquals(ContentEncoding.GZIP, QueryCodec.encodingOf(stored));
+        assertEquals(queryJson, codec.decode(stored));
+    }
+
+    @Test
+    void encode_ShouldStorePlainJson_WhenDocumentIsSmall() throws IOException {
+        // Given
+        QueryCodec codec = codec(ContentEncoding.ZSTD, null);
+
+        // When
+        byte[] stored = codec.encode("{\"queryId\":\"q\"}");
+
+        // Then
+        assertEquals(ContentEncoding.IDENTITY, QueryCodec.encodingOf(stored));
+        assertEquals("{\"queryId\":\"q\"}", new String(stored, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encodeStream_ShouldStorePlainJson_WhenDocumentIsSmall() throws IOException {
+        // Given
+        QueryCodec codec = codec(ContentEncoding.ZSTD, null);
+
+        // When
+        byte[] stored = codec.encode(new ByteArrayInputStream("{\"queryId\":\"q\"}".getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertEquals(ContentEncoding.IDENTITY, QueryCodec.encodingOf(stored));
+        assertEquals("{\"queryId\":\"q\"}", new String(stored, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encodingStream_ShouldCompress_OnceDocumentReachesMinSize() throws IOException {
+        // Given
+        QueryCodec codec = codec(ContentEncoding.ZSTD, null);
+        byte[] queryJson = queryJson(1).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+
+        // When: written in pieces smaller than min-size-bytes
+        try (OutputStream out = codec.encodingStream(stored)) {
+            for (int offset = 0; offset < queryJson.length; offset += 100) {
+                out.write(queryJson, offset, Math.min(100, queryJson.length - offset));
+            }
+        }
+
+        // Then
+        assertEquals(ContentEncoding.ZSTD, QueryCodec.encodingOf(stored.toByteArray()));
+        assertEquals(queryJson(1), codec.decode(stored.toByteArray()));
+    }
+
+    @Test
+    void decode_ShouldReadAnyStoredFormat_WhenCompressionIsDisabled() throws IOException {
+        // Given
+        String queryJson = queryJson(1);
+        byte[] zstd = codec(ContentEncoding.ZSTD, null).encode(queryJson);
+        byte[] gzip = codec(ContentEncoding.GZIP, null).encode(queryJson);
+        QueryCodec disabled = new QueryCodec(new QueryCompressionProperties());
+
+        // When & Then
+        assertFalse(disabled.isCompressing());
+        assertEquals(queryJson, disabled.decode(zstd));
+        assertEquals(queryJson, disabled.decode(gzip));
+        assertEquals(queryJson, disabled.decode(queryJson.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void encode_ShouldUseDictionary_WhenDictionaryIsInstalled() throws IOException {
+        // Given
+        QueryCodec codec = codec(ContentEncoding.ZSTD, tempDir);
+        long dictionaryId = codec.installDictionary(trainDictionary(0));
+        String queryJson = queryJson(7);
+
+        // When
+        byte[] stored = codec.encode(queryJson);
+
+        // Then
+        assertEquals(dictionaryId, Zstd.getDictIdFromFrame(stored));
+        assertEquals(queryJson, codec.decode(stored));
+    }
+
+    @Test
+    void decode_ShouldLoadDictionaryById_WhenAnotherReplicaInstalledIt() throws IOException {
+        // Given
+        QueryCodec reader = codec(ContentEncoding.ZSTD, tempDir);
+        QueryCodec writer = codec(ContentEncoding.ZSTD, tempDir);
+        writer.installDictionary(trainDictionary(0));
+        String queryJson = queryJson(7);
+        byte[] stored = writer.encode(queryJson);
+
+        // When
+        String result = reader.decode(stored);
+
+        // Then
+        assertEquals(queryJson, result);
+        assertEquals(0, reader.activeDictionaryId());
+    }
+
+    @Test
+    void decode_ShouldFail_WhenDictionaryIsNotInDirectory() throws IOException {
+        // Given
+        QueryCodec writer = codec(ContentEncoding.ZSTD, tempDir.resolve("writer"));
+        writer.installDictionary(trainDictionary(0));
+        byte[] stored = writer.encode(queryJson(7));
+        QueryCodec reader = codec(ContentEncoding.ZSTD, tempDir.resolve("reader"));
+
+        // When & Then
+        assertThrows(IOException.class, () -> reader.decode(stored));
+    }
+
+    @Test
+    void constructor_ShouldActivateNewestDictionary_AndKeepOlderOnesReadable() throws IOException {
+        // Given
+        QueryCodec first = codec(ContentEncoding.ZSTD, tempDir);
+        first.installDictionary(trainDictionary(0));
+        byte[] storedWithOlder = first.encode(queryJson(7));
+        long newestId = first.installDictionary(trainDictionary(5000));
+
+        // When
+        QueryCodec restarted = codec(ContentEncoding.ZSTD, tempDir);
+
+        // Then
+        assertEquals(newestId, restarted.activeDictionaryId());
+        assertEquals(queryJson(7), restarted.decode(storedWithOlder));
+    }
+
+    @Test
+    void forServing_ShouldPassStoredFrame_WhenEncodingIsAccepted() throws IOException {
+        // Given
+        QueryCodec codec = codec(ContentEncoding.ZSTD, null);
+        byte[] stored = codec.encode(queryJson(1));
+
+        // When
+        EncodedQuery served = codec.forServing(stored, Set.of(ContentEncoding.IDENTITY, ContentEncoding.ZSTD));
+
+        // Then
+        assertEquals(ContentEncoding.ZSTD, served.encoding());
+        assertSame(stored, served.content());
+    }
+
+    @Test
+    void forServing_ShouldDecode_WhenFrameNeedsDictionary() throws IOException {
+        // Given
+        QueryCodec codec = codec(ContentEncoding.ZSTD, tempDir);
+        codec.installDictionary(trainDictionary(0));
+        String queryJson = queryJson(7);
+        byte[] stored = codec.encode(queryJson);
+
+        // When
+        EncodedQuery served = codec.forServing(stored, Set.of(ContentEncoding.IDENTITY, ContentEncoding.ZSTD));
+
+        // Then
+        assertTrue(served.isIdentity());
+        assertEquals(queryJson, served.toJson());
+    }
+
+    @Test
+    void parseAccepted_ShouldSkipRefusedCodings() {
+        // When
+        Set<ContentEncoding> accepted = ContentEncoding.parseAccepted("gzip;q=0.8, br, zstd;q=0");
+
+        // Then
+        assertEquals(Set.of(ContentEncoding.IDENTITY, ContentEncoding.GZIP), accepted);
+    }
+
+    private static QueryCodec codec(ContentEncoding algorithm, Path dictionaryDir) {
+        QueryCompressionProperties props = new QueryCompressionProperties();
+        props.setEnabled(true);
+        props.setAlgorithm(algorithm);
+        props.setDictionaryDir(dictionaryDir == null ? null : dictionaryDir.toString());
+        return new QueryCodec(props);
+    }
+
+    private static byte[] trainDictionary(int firstSeed) {
+        ZstdDictTrainer trainer = new ZstdDictTrainer(4 * 1024 * 1024, 16 * 1024);
+        for (int i = firstSeed; i < firstSeed + 2000; i++) {
+            trainer.addSample(queryJson(i).substring(0, 1500).getBytes(StandardCharsets.UTF_8));
+        }
+        return trainer.trainSamples();
+    }
+
+    private static String queryJson(int seed) {
+        StringBuilder json = new StringBuilder("{\"queryId\":\"20240101_000000_" + seed + "_abcde\",\"operatorSummaries\":[");
+        for (int i = 0; i < 200; i++) {
+            json.append("{\"operatorType\":\"").append(i % 2 == 0 ? "TableScanOperator" : "FilterAndProjectOperator")
+                    .append("\",\"planNodeId\":\"").append(seed * 31 + i).append("\",\"inputPositions\":").append(seed * i)
+                    .append(",\"outputDataSize\":\"").append(i).append("kB\"},");
+        }
+        json.append("{}]}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package io.trino.historyserver.storage.compression;
+
+import io.trino.historyserver.exception.QueryStorageException;
+import io.trino.historyserver.storage.QueryStorageHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SamplingStorageHandlerTest {
+
+    @Mock
+    private QueryStorageHandler delegate;
+
+    private final RecentlyStoredQueries recentlyStored = new RecentlyStoredQueries(new DictionaryTrainingProperties());
+
+    @Test
+    void writeQuery_ShouldRecordQuery_WhenWriteSucceeds() {
+        // When
+        new SamplingStorageHandler(delegate, recentlyStored).writeQueries(Map.of("query-1", "{}"), "test");
+
+        // Then
+        assertEquals(List.of(new RecentlyStoredQueries.StoredQuery("query-1", "test")), recentlyStored.snapshot());
+    }
+
+    @Test
+    void writeQuery_ShouldNotRecordQuery_WhenWriteFails() {
+        // Given
+        doThrow(new QueryStorageException("Disk full", "query-1")).when(delegate).writeQuery("query-1", "test", "{}");
+
+        // When & Then
+        assertThrows(QueryStorageException.class, () -> new SamplingStorageHandler(delegate, recentlyStored).writeQuery("query-1", "test", "{}"));
+        assertTrue(recentlyStored.snapshot().isEmpty());
+    }
+}
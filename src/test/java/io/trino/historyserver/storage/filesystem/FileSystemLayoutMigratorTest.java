@@ -0,0 +1,89 @@
+package io.trino.historyserver.storage.filesystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.common.GlobalProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSystemLayoutMigratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileSystemLayoutMigrationProperties props;
+    private SimpleMeterRegistry meterRegistry;
+    private FileSystemLayoutMigrator migrator;
+
+    @BeforeEach
+    void setUp() {
+        props = new FileSystemLayoutMigrationProperties();
+        props.setEnabled(true);
+        FileSystemStorageHandlerProperties storageProps = new FileSystemStorageHandlerProperties();
+        storageProps.setQueryDir(tempDir.toString());
+        GlobalProperties globalProps = new GlobalProperties();
+        globalProps.setEnvironment("prod");
+        meterRegistry = new SimpleMeterRegistry();
+        migrator = new FileSystemLayoutMigrator(props, storageProps, globalProps, meterRegistry);
+    }
+
+    @Test
+    void migrateBatch_ShouldMoveFlatDocumentsIntoShardedLayout() throws Exception {
+        // Given
+        Files.writeString(tempDir.resolve("20231201_123456_00001_abcde.json"), "{\"id\":1}");
+        Files.writeString(tempDir.resolve("test-query-id.json"), "{\"id\":2}");
+        Files.writeString(tempDir.resolve("test-query-id.json.tmp"), "{");
+
+        // When
+        int moved = migrator.migrateBatch();
+
+        // Then
+        assertEquals(2, moved);
+        assertEquals("{\"id\":1}", Files.readString(tempDir.resolve("prod/20231201/12/20231201_123456_00001_abcde.json")));
+        assertEquals("{\"id\":2}", Files.readString(FileSystemQueryLayout.queryPath(tempDir, "test-query-id", "prod")));
+        assertFalse(Files.exists(tempDir.resolve("20231201_123456_00001_abcde.json")));
+        assertFalse(Files.exists(tempDir.resolve("test-query-id.json")));
+        assertTrue(Files.exists(tempDir.resolve("test-query-id.json.tmp")));
+        assertEquals(2.0, meterRegistry.get(FileSystemLayoutMigrator.MIGRATED_METRIC).counter().count());
+    }
+
+    @Test
+    void migrateBatch_ShouldKeepShardedDocument_WhenWrittenSinceUpgrade() throws Exception {
+        // Given
+        Path sharded = FileSystemQueryLayout.queryPath(tempDir, "test-query-id", "prod");
+        Files.createDirectories(sharded.getParent());
+        Files.writeString(sharded, "{\"state\":\"FINISHED\"}");
+        Files.writeString(tempDir.resolve("test-query-id.json"), "{\"state\":\"RUNNING\"}");
+
+        // When
+        migrator.migrateBatch();
+
+        // Then
+        assertEquals("{\"state\":\"FINISHED\"}", Files.readString(sharded));
+        assertFalse(Files.exists(tempDir.resolve("test-query-id.json")));
+    }
+
+    @Test
+    void migrateBatch_ShouldMoveAtMostBatchSize_UntilFlatLayoutIsEmpty() throws Exception {
+        // Given
+        props.setBatchSize(2);
+        for (int i = 1; i <= 3; i++) {
+            Files.writeString(tempDir.resolve("query-" + i + ".json"), "{}");
+        }
+
+        // When
+        int first = migrator.migrateBatch();
+        int second = migrator.migrateBatch();
+        int third = migrator.migrateBatch();
+
+        // Then
+        assertEquals(2, first);
+        assertEquals(1, second);
+        assertEquals(0, third);
+    }
+}
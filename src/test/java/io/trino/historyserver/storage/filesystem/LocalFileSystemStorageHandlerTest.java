@@ -1,17 +1,42 @@
 package io.trino.historyserver.storage.filesystem;
 
+import io.trino.historyserver.exception.InvalidQueryRequestException;
+import io.trino.historyserver.exception.QueryNotFoundException;
 import io.trino.historyserver.exception.QueryStorageException;
 import io.trino.historyserver.exception.StorageInitializationException;
+import io.trino.historyserver.storage.BulkReadProperties;
+import io.trino.historyserver.storage.ContentEncoding;
+import io.trino.historyserver.storage.EncodedQuery;
+import io.trino.historyserver.storage.StoredQueryFile;
+import io.trino.historyserver.storage.compression.QueryCodec;
+import io.trino.historyserver.storage.compression.QueryCompressionProperties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -29,7 +54,7 @@ class LocalFileSystemStorageHandlerTest {
 
     @BeforeEach
     void setUp() {
-        storageHandler = new LocalFileSystemStorageHandler(properties);
+        storageHandler = new LocalFileSystemStorageHandler(properties, new BulkReadProperties(), Schedulers.immediate(), new QueryCodec(new QueryCompressionProperties()));
     }
 
     @Test
@@ -66,6 +91,63 @@ class LocalFileSystemStorageHandlerTest {
         assertThrows(StorageInitializationException.class, () -> storageHandler.ensureDirectoryExists());
     }
 
+    @Test
+    void writeQueryStream_ShouldWriteStreamToFile_WhenValidInput() throws Exception {
+        // Given
+        String queryJson = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+
+        // When
+        storageHandler.writeQueryStream("test-query-id", "test", new ByteArrayInputStream(queryJson.getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertEquals(queryJson, Files.readString(storedPath("test-query-id")));
+        assertEquals(0, countTempFiles(storedPath("test-query-id").getParent()));
+    }
+
+    @Test
+    void writeQueryStream_ShouldKeepExistingFile_WhenStreamFails() throws Exception {
+        // Given
+        Path existing = Files.createDirectories(storedPath("test-query-id").getParent()).resolve("test-query-id.json");
+        Files.writeString(existing, "{\"queryId\":\"test-query-id\"}");
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        InputStream failing = new SequenceInputStream(
+                new ByteArrayInputStream("{\"queryId\":".getBytes(StandardCharsets.UTF_8)),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                });
+
+        // When & Then
+        assertThrows(QueryStorageException.class, () -> storageHandler.writeQueryStream("test-query-id", "test", failing));
+        assertEquals("{\"queryId\":\"test-query-id\"}", Files.readString(existing));
+        assertEquals(0, countTempFiles(storedPath("test-query-id").getParent()));
+    }
+
+    @Test
+    void writeQueryStream_ShouldKeepConcurrentWritesApart_WhenQueryIdIsTheSame() throws Exception {
+        // Given
+        String first = "{\"queryId\":\"test-query-id\",\"state\":\"RUNNING\"}";
+        String second = "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}";
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        CyclicBarrier bothStarted = new CyclicBarrier(2);
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            Future<?> firstWrite = executor.submit(() -> storageHandler.writeQueryStream("test-query-id", "test", pausingStream(first, bothStarted)));
+            Future<?> secondWrite = executor.submit(() -> storageHandler.writeQueryStream("test-query-id", "test", pausingStream(second, bothStarted)));
+            firstWrite.get(5, TimeUnit.SECONDS);
+            secondWrite.get(5, TimeUnit.SECONDS);
+        }
+
+        // Then
+        String stored = Files.readString(storedPath("test-query-id"));
+        assertTrue(stored.equals(first) || stored.equals(second), stored);
+        assertEquals(0, countTempFiles(storedPath("test-query-id").getParent()));
+    }
+
     @Test
     void writeQuery_ShouldWriteQueryToFile_WhenValidInput() throws Exception {
         // Given
@@ -81,11 +163,36 @@ class LocalFileSystemStorageHandlerTest {
         assertDoesNotThrow(() -> storageHandler.writeQuery(queryId, environment, queryJson));
 
         // Then
-        Path expectedPath = Path.of(queryDir, queryId + ".json");
+        Path expectedPath = FileSystemQueryLayout.queryPath(Path.of(queryDir), queryId, environment);
         assertTrue(Files.exists(expectedPath));
         assertEquals(queryJson, Files.readString(expectedPath));
     }
 
+    @Test
+    void writeQuery_ShouldKeepConcurrentWritesApart_WhenQueryIdIsTheSame() throws Exception {
+        // Given
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        List<String> documents = List.of(
+                "{\"queryId\":\"test-query-id\",\"state\":\"RUNNING\"}",
+                "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}");
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String document = documents.get(i % 2);
+                writes.add(executor.submit(() -> storageHandler.writeQuery("test-query-id", "test", document)));
+            }
+            for (Future<?> write : writes) {
+                write.get(5, TimeUnit.SECONDS);
+            }
+        }
+
+        // Then
+        assertTrue(documents.contains(Files.readString(storedPath("test-query-id"))));
+        assertEquals(0, countTempFiles(storedPath("test-query-id").getParent()));
+    }
+
     @Test
     void writeQuery_ShouldOverwriteExistingFile_WhenFileAlreadyExists() throws Exception {
         // Given
@@ -105,7 +212,7 @@ class LocalFileSystemStorageHandlerTest {
         storageHandler.writeQuery(queryId, environment, updatedJson);
 
         // Then
-        Path expectedPath = Path.of(queryDir, queryId + ".json");
+        Path expectedPath = FileSystemQueryLayout.queryPath(Path.of(queryDir), queryId, environment);
         assertEquals(updatedJson, Files.readString(expectedPath));
     }
 
@@ -141,25 +248,125 @@ class LocalFileSystemStorageHandlerTest {
         storageHandler.ensureDirectoryExists();
 
         // When & Then
-        assertThrows(QueryStorageException.class, () -> storageHandler.readQuery(queryId, environment));
+        assertThrows(QueryNotFoundException.class, () -> storageHandler.readQuery(queryId, environment));
+    }
+
+    @Test
+    void readQueries_ShouldReturnStoredQueries_AndSkipMissingOnes() {
+        // Given
+        String queryDir = tempDir.toString();
+        String environment = "test";
+
+        when(properties.getQueryDir()).thenReturn(queryDir);
+        storageHandler.ensureDirectoryExists();
+        storageHandler.writeQuery("query-1", environment, "{\"queryId\":\"query-1\"}");
+        storageHandler.writeQuery("query-3", environment, "{\"queryId\":\"query-3\"}");
+
+        // When
+        Map<String, String> result = storageHandler.readQueries(List.of("query-1", "query-2", "query-3"), environment);
+
+        // Then
+        assertEquals(Map.of(
+                "query-1", "{\"queryId\":\"query-1\"}",
+                "query-3", "{\"queryId\":\"query-3\"}"
+        ), result);
     }
 
     @Test
-    void getQueryPath_ShouldReturnCorrectPath() {
+    void getQueryPath_ShouldShardByEnvironmentDateAndHour() {
         // Given
         String queryDir = "/test/queries";
-        String queryId = "test-query-id";
-        String expectedPath = "/test/queries/test-query-id.json";
+        String queryId = "20231201_123456_00001_abcde";
+        String expectedPath = "/test/queries/prod/20231201/12/20231201_123456_00001_abcde.json";
 
         when(properties.getQueryDir()).thenReturn(queryDir);
 
         // When
-        Path result = storageHandler.getQueryPath(queryId);
+        Path result = storageHandler.getQueryPath(queryId, "prod");
 
         // Then
         assertEquals(expectedPath, result.toString());
     }
 
+    @Test
+    void getQueryPath_ShouldShardByHash_WhenQueryIdHasNoDate() {
+        // Given
+        when(properties.getQueryDir()).thenReturn("/test/queries");
+
+        // When
+        Path result = storageHandler.getQueryPath("test-query-id", "prod");
+
+        // Then
+        assertEquals(Path.of("/test/queries/prod/other"), result.getParent().getParent());
+        assertTrue(result.getParent().getFileName().toString().matches("[0-9a-f]{2}"));
+        assertEquals("test-query-id.json", result.getFileName().toString());
+    }
+
+    @Test
+    void readQuery_ShouldRejectQueryId_WhenPathLeavesQueryDir() throws Exception {
+        // Given
+        Path queryDir = Files.createDirectories(tempDir.resolve("query"));
+        Files.writeString(tempDir.resolve("secret.json"), "{}");
+        when(properties.getQueryDir()).thenReturn(queryDir.toString());
+
+        // When & Then
+        assertThrows(InvalidQueryRequestException.class, () -> storageHandler.readQuery("../../../../secret", "test"));
+        assertThrows(InvalidQueryRequestException.class, () -> storageHandler.getLegacyQueryPath("../secret"));
+    }
+
+    @Test
+    void writeQuery_ShouldUseDefaultEnvironment_WhenEnvironmentIsNotSet() throws Exception {
+        // Given
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+
+        // When
+        storageHandler.writeQuery("20231201_123456_00001_abcde", null, "{\"env\":null}");
+
+        // Then
+        assertEquals(tempDir.resolve("default/20231201/12/20231201_123456_00001_abcde.json"), storageHandler.getQueryPath("20231201_123456_00001_abcde", null));
+        assertEquals("{\"env\":null}", storageHandler.readQuery("20231201_123456_00001_abcde", ""));
+    }
+
+    @Test
+    void readQuery_ShouldKeepEnvironmentsApart() {
+        // Given
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        storageHandler.writeQuery("test-query-id", "prod", "{\"env\":\"prod\"}");
+        storageHandler.writeQuery("test-query-id", "dev", "{\"env\":\"dev\"}");
+
+        // When
+        String result = storageHandler.readQuery("test-query-id", "dev");
+
+        // Then
+        assertEquals("{\"env\":\"dev\"}", result);
+    }
+
+    @Test
+    void readQuery_ShouldReadFlatLayout_WhenLegacyFallbackEnabled() throws Exception {
+        // Given
+        Files.writeString(tempDir.resolve("test-query-id.json"), "{\"queryId\":\"test-query-id\"}");
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        when(properties.isLegacyLayoutFallbackEnabled()).thenReturn(true);
+
+        // When
+        String result = storageHandler.readQuery("test-query-id", "test");
+        Optional<StoredQueryFile> file = storageHandler.findQueryFile("test-query-id", "test", Set.of(ContentEncoding.IDENTITY));
+
+        // Then
+        assertEquals("{\"queryId\":\"test-query-id\"}", result);
+        assertTrue(file.isEmpty());
+    }
+
+    @Test
+    void readQuery_ShouldNotReadFlatLayout_WhenLegacyFallbackDisabled() throws Exception {
+        // Given
+        Files.writeString(tempDir.resolve("test-query-id.json"), "{\"queryId\":\"test-query-id\"}");
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+
+        // When & Then
+        assertThrows(QueryNotFoundException.class, () -> storageHandler.readQuery("test-query-id", "test"));
+    }
+
     @Test
     void writeQuery_ShouldHandleSpecialCharactersInQueryId() throws Exception {
         // Given
@@ -175,7 +382,7 @@ class LocalFileSystemStorageHandlerTest {
         assertDoesNotThrow(() -> storageHandler.writeQuery(queryId, environment, queryJson));
 
         // Then
-        Path expectedPath = Path.of(queryDir, queryId + ".json");
+        Path expectedPath = FileSystemQueryLayout.queryPath(Path.of(queryDir), queryId, environment);
         assertTrue(Files.exists(expectedPath));
         assertEquals(queryJson, Files.readString(expectedPath));
     }
@@ -201,8 +408,207 @@ class LocalFileSystemStorageHandlerTest {
         assertDoesNotThrow(() -> storageHandler.writeQuery(queryId, environment, largeJson.toString()));
 
         // Then
-        Path expectedPath = Path.of(queryDir, queryId + ".json");
+        Path expectedPath = FileSystemQueryLayout.queryPath(Path.of(queryDir), queryId, environment);
         assertTrue(Files.exists(expectedPath));
         assertEquals(largeJson.toString(), Files.readString(expectedPath));
     }
+
+    @Test
+    void writeQuery_ShouldStoreCompressedFrame_WhenCompressionEnabled() throws Exception {
+        // Given
+        LocalFileSystemStorageHandler compressing = compressingHandler();
+        String queryJson = largeQueryJson();
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+
+        // When
+        compressing.writeQuery("test-query-id", "test", queryJson);
+
+        // Then
+        byte[] stored = Files.readAllBytes(storedPath("test-query-id"));
+        assertEquals(ContentEncoding.ZSTD, QueryCodec.encodingOf(stored));
+        assertTrue(stored.length < queryJson.length() / 10);
+        assertEquals(queryJson, compressing.readQuery("test-query-id", "test"));
+    }
+
+    @Test
+    void writeQueryStream_ShouldStoreCompressedFrame_WhenCompressionEnabled() throws Exception {
+        // Given
+        LocalFileSystemStorageHandler compressing = compressingHandler();
+        String queryJson = largeQueryJson();
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+
+        // When
+        compressing.writeQueryStream("test-query-id", "test", new ByteArrayInputStream(queryJson.getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertEquals(ContentEncoding.ZSTD, QueryCodec.encodingOf(Files.readAllBytes(storedPath("test-query-id"))));
+        assertEquals(queryJson, compressing.readQuery("test-query-id", "test"));
+    }
+
+    @Test
+    void readQuery_ShouldReadPlainFile_WhenCompressionEnabled() throws Exception {
+        // Given
+        Files.createDirectories(storedPath("test-query-id").getParent());
+        Files.writeString(storedPath("test-query-id"), "{\"queryId\":\"test-query-id\"}");
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+
+        // When
+        String result = compressingHandler().readQuery("test-query-id", "test");
+
+        // Then
+        assertEquals("{\"queryId\":\"test-query-id\"}", result);
+    }
+
+    @Test
+    void readEncodedQuery_ShouldReturnStoredFrame_WhenEncodingIsAccepted() throws Exception {
+        // Given
+        LocalFileSystemStorageHandler compressing = compressingHandler();
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        compressing.writeQuery("test-query-id", "test", largeQueryJson());
+
+        // When
+        EncodedQuery result = compressing.readEncodedQuery("test-query-id", "test", Set.of(ContentEncoding.IDENTITY, ContentEncoding.ZSTD));
+
+        // Then
+        assertEquals(ContentEncoding.ZSTD, result.encoding());
+        assertArrayEquals(Files.readAllBytes(storedPath("test-query-id")), result.content());
+    }
+
+    @Test
+    void readEncodedQuery_ShouldDecode_WhenEncodingIsNotAccepted() {
+        // Given
+        LocalFileSystemStorageHandler compressing = compressingHandler();
+        String queryJson = largeQueryJson();
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        compressing.writeQuery("test-query-id", "test", queryJson);
+
+        // When
+        EncodedQuery result = compressing.readEncodedQuery("test-query-id", "test", Set.of(ContentEncoding.IDENTITY, ContentEncoding.GZIP));
+
+        // Then
+        assertTrue(result.isIdentity());
+        assertEquals(queryJson, result.toJson());
+    }
+
+    @Test
+    void findQueryFile_ShouldReturnPlainFile() throws Exception {
+        // Given
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        storageHandler.writeQuery("test-query-id", "test", "{\"queryId\":\"test-query-id\"}");
+
+        // When
+        try (StoredQueryFile result = storageHandler.findQueryFile("test-query-id", "test", Set.of(ContentEncoding.IDENTITY)).orElseThrow()) {
+            // Then
+            assertEquals(storedPath("test-query-id"), result.path());
+            assertEquals(28, result.sizeBytes());
+            assertTrue(result.isIdentity());
+            assertTrue(result.channel().isOpen());
+        }
+    }
+
+    @Test
+    void findQueryFile_ShouldKeepReadingOriginalDocument_WhenRewrittenAfterLookup() throws Exception {
+        // Given
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        storageHandler.writeQuery("test-query-id", "test", "{\"queryId\":\"test-query-id\"}");
+
+        // When
+        try (StoredQueryFile result = storageHandler.findQueryFile("test-query-id", "test", Set.of(ContentEncoding.IDENTITY)).orElseThrow()) {
+            storageHandler.writeQuery("test-query-id", "test", "{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}");
+
+            // Then
+            assertEquals("{\"queryId\":\"test-query-id\"}", new String(Channels.newInputStream(result.channel()).readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals("{\"queryId\":\"test-query-id\",\"state\":\"FINISHED\"}", storageHandler.readQuery("test-query-id", "test"));
+    }
+
+    @Test
+    void findQueryFile_ShouldReturnCompressedFile_WhenEncodingIsAccepted() throws Exception {
+        // Given
+        LocalFileSystemStorageHandler compressing = compressingHandler();
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        compressing.writeQuery("test-query-id", "test", largeQueryJson());
+
+        // When
+        try (StoredQueryFile result = compressing.findQueryFile("test-query-id", "test", Set.of(ContentEncoding.IDENTITY, ContentEncoding.ZSTD)).orElseThrow()) {
+            // Then
+            assertEquals(ContentEncoding.ZSTD, result.encoding());
+            assertEquals(Files.size(storedPath("test-query-id")), result.sizeBytes());
+        }
+    }
+
+    @Test
+    void findQueryFile_ShouldReturnNothing_WhenCompressedFileMustBeDecoded() {
+        // Given
+        LocalFileSystemStorageHandler compressing = compressingHandler();
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+        compressing.writeQuery("test-query-id", "test", largeQueryJson());
+
+        // When
+        Optional<StoredQueryFile> result = compressing.findQueryFile("test-query-id", "test", Set.of(ContentEncoding.IDENTITY, ContentEncoding.GZIP));
+
+        // Then
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void findQueryFile_ShouldThrowNotFound_WhenFileDoesNotExist() {
+        // Given
+        when(properties.getQueryDir()).thenReturn(tempDir.toString());
+
+        // When & Then
+        assertThrows(QueryNotFoundException.class,
+                () -> storageHandler.findQueryFile("missing-query", "test", Set.of(ContentEncoding.IDENTITY)));
+    }
+
+    private Path storedPath(String queryId) {
+        return FileSystemQueryLayout.queryPath(tempDir, queryId, "test");
+    }
+
+    private static long countTempFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".tmp")).count();
+        }
+    }
+
+    // Sends the first half of the document, then waits until the other write has started too
+    private static InputStream pausingStream(String queryJson, CyclicBarrier barrier) {
+        byte[] bytes = queryJson.getBytes(StandardCharsets.UTF_8);
+        int half = bytes.length / 2;
+        return new SequenceInputStream(
+                new ByteArrayInputStream(bytes, 0, half),
+                new InputStream() {
+                    private final InputStream rest = new ByteArrayInputStream(bytes, half, bytes.length - half);
+                    private boolean waited;
+
+                    @Override
+                    public int read() throws IOException {
+                        if (!waited) {
+                            waited = true;
+                            try {
+                                barrier.await(5, TimeUnit.SECONDS);
+                            }
+                            catch (Exception e) {
+                                throw new IOException(e);
+                            }
+                        }
+                        return rest.read();
+                    }
+                });
+    }
+
+    private LocalFileSystemStorageHandler compressingHandler() {
+        QueryCompressionProperties compressionProps = new QueryCompressionProperties();
+        compressionProps.setEnabled(true);
+        return new LocalFileSystemStorageHandler(properties, new BulkReadProperties(), Schedulers.immediate(), new QueryCodec(compressionProps));
+    }
+
+    private static String largeQueryJson() {
+        StringBuilder json = new StringBuilder("{\"queryId\":\"test-query-id\",\"operatorSummaries\":[");
+        for (int i = 0; i < 500; i++) {
+            json.append("{\"operatorType\":\"TableScanOperator\",\"planNodeId\":\"").append(i).append("\",\"inputPositions\":1000},");
+        }
+        json.append("{}]}");
+        return json.toString();
+    }
 }
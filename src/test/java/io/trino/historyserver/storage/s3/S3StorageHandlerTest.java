@@ -0,0 +1,168 @@
+package io.trino.historyserver.storage.s3;
+
+import io.trino.historyserver.exception.QueryNotFoundException;
+import io.trino.historyserver.exception.QueryStorageException;
+import io.trino.historyserver.storage.BulkReadProperties;
+import io.trino.historyserver.storage.compression.QueryCodec;
+import io.trino.historyserver.storage.compression.QueryCompressionProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.scheduler.Schedulers;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class S3StorageHandlerTest {
+
+    private static final int PART_SIZE_BYTES = 64;
+
+    @Mock
+    private S3Client s3Client;
+
+    private S3StorageHandler storageHandler;
+
+    @BeforeEach
+    void setUp() {
+        S3StorageHandlerProperties props = new S3StorageHandlerProperties();
+        props.setBucket("trino-history");
+        props.setQueryDir("query");
+        props.setMultipartPartSizeBytes(PART_SIZE_BYTES);
+        storageHandler = new S3StorageHandler(s3Client, props, new BulkReadProperties(), Schedulers.immediate(), new QueryCodec(new QueryCompressionProperties()));
+    }
+
+    @Test
+    void writeQueryStream_ShouldPutSingleObject_WhenDocumentIsSmallerThanPart() {
+        // Given
+        ArgumentCaptor<RequestBody> body = ArgumentCaptor.forClass(RequestBody.class);
+
+        // When
+        storageHandler.writeQueryStream("test-query-id", "test", document(PART_SIZE_BYTES - 1));
+
+        // Then
+        verify(s3Client).putObject(any(PutObjectRequest.class), body.capture());
+        assertEquals(PART_SIZE_BYTES - 1, contentLength(body.getValue()));
+        verify(s3Client, never()).createMultipartUpload(any(Consumer.class));
+    }
+
+    @Test
+    void writeQueryStream_ShouldUploadParts_WhenDocumentIsLargerThanPart() {
+        // Given
+        stubMultipartUpload();
+        ArgumentCaptor<RequestBody> parts = ArgumentCaptor.forClass(RequestBody.class);
+
+        // When
+        storageHandler.writeQueryStream("test-query-id", "test", document(PART_SIZE_BYTES * 2 + 1));
+
+        // Then
+        verify(s3Client, times(3)).uploadPart(any(Consumer.class), parts.capture());
+        assertEquals(List.of(PART_SIZE_BYTES, PART_SIZE_BYTES, 1), parts.getAllValues().stream().map(S3StorageHandlerTest::contentLength).toList());
+        verify(s3Client).completeMultipartUpload(any(Consumer.class));
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void writeQueryStream_ShouldUploadOnePart_WhenDocumentFillsExactlyOnePart() {
+        // Given
+        stubMultipartUpload();
+
+        // When
+        storageHandler.writeQueryStream("test-query-id", "test", document(PART_SIZE_BYTES));
+
+        // Then
+        verify(s3Client, times(1)).uploadPart(any(Consumer.class), any(RequestBody.class));
+        verify(s3Client).completeMultipartUpload(any(Consumer.class));
+    }
+
+    @Test
+    void writeQueryStream_ShouldAbortUpload_WhenPartUploadFails() {
+        // Given
+        when(s3Client.createMultipartUpload(any(Consumer.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.uploadPart(any(Consumer.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-1").build())
+                .thenThrow(SdkClientException.create("Connection reset"));
+
+        // When & Then
+        assertThrows(QueryStorageException.class,
+                () -> storageHandler.writeQueryStream("test-query-id", "test", document(PART_SIZE_BYTES * 2)));
+        verify(s3Client).abortMultipartUpload(any(Consumer.class));
+        verify(s3Client, never()).completeMultipartUpload(any(Consumer.class));
+    }
+
+    @Test
+    void readQuery_ShouldThrowNotFound_WhenKeyIsMissing() {
+        // Given
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+
+        // When & Then
+        assertThrows(QueryNotFoundException.class, () -> storageHandler.readQuery("test-query-id", "test"));
+    }
+
+    @Test
+    void readQueries_ShouldSkipMissingKeys() {
+        // Given
+        when(s3Client.getObject(GetObjectRequest.builder().bucket("trino-history").key("query/test/query-1.json").build()))
+                .thenReturn(object("{\"queryId\":\"query-1\"}"));
+        when(s3Client.getObject(GetObjectRequest.builder().bucket("trino-history").key("query/test/query-2.json").build()))
+                .thenThrow(NoSuchKeyException.builder().build());
+
+        // When
+        Map<String, String> result = storageHandler.readQueries(List.of("query-1", "query-2"), "test");
+
+        // Then
+        assertEquals(Map.of("query-1", "{\"queryId\":\"query-1\"}"), result);
+    }
+
+    private void stubMultipartUpload() {
+        when(s3Client.createMultipartUpload(any(Consumer.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.uploadPart(any(Consumer.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-1").build());
+    }
+
+    private static ByteArrayInputStream document(int sizeBytes) {
+        byte[] bytes = new byte[sizeBytes];
+        Arrays.fill(bytes, (byte) 'x');
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static ResponseInputStream<GetObjectResponse> object(String content) {
+        return new ResponseInputStream<>(
+                GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static int contentLength(RequestBody body) {
+        try {
+            return body.contentStreamProvider().newStream().readAllBytes().length;
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package io.trino.historyserver.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.trino.historyserver.exception.QueryNotFoundException;
+import io.trino.historyserver.exception.QueryStorageException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskRetryExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private TaskRetryExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new TaskRetryExecutor(meterRegistry);
+    }
+
+    @Test
+    void executeWithRetry_ShouldReturnResult_WhenTransientFailureRecovers() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When
+        String result = executor.executeWithRetry("read_query", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw transientError();
+            }
+            return "{}";
+        }, policy(3, 10));
+
+        // Then
+        assertEquals("{}", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, meterRegistry.get(TaskRetryExecutor.RETRIES_METRIC).tag("operation", "read_query").counter().count());
+        assertEquals(1.0, meterRegistry.get(TaskRetryExecutor.RECOVERED_METRIC).tag("operation", "read_query").counter().count());
+    }
+
+    @Test
+    void executeWithRetry_ShouldThrowLastError_WhenAllAttemptsFail() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When & Then
+        assertThrows(QueryStorageException.class, () -> executor.executeWithRetry("write_query", () -> {
+            attempts.incrementAndGet();
+            throw transientError();
+        }, policy(3, 1)));
+        assertEquals(3, attempts.get());
+        assertEquals(1.0, meterRegistry.get(TaskRetryExecutor.EXHAUSTED_METRIC).tag("operation", "write_query").counter().count());
+    }
+
+    @Test
+    void executeWithRetry_ShouldNotRetry_WhenErrorIsPermanent() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+        QueryStorageException duplicate = new QueryStorageException(
+                "Query already exists", "test-query-id", new DuplicateKeyException("duplicate key"));
+
+        // When & Then
+        assertThrows(QueryStorageException.class, () -> executor.executeWithRetry("write_query", () -> {
+            attempts.incrementAndGet();
+            throw duplicate;
+        }, policy(3, 1)));
+        assertEquals(1, attempts.get());
+        assertEquals(1.0, meterRegistry.get(TaskRetryExecutor.SKIPPED_METRIC)
+                .tag("operation", "write_query")
+                .tag("reason", "non_retryable")
+                .counter().count());
+    }
+
+    @Test
+    void executeWithRetry_ShouldNotRetry_WhenQueryIsNotFound() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When & Then
+        assertThrows(QueryNotFoundException.class, () -> executor.executeWithRetry("read_query", () -> {
+            attempts.incrementAndGet();
+            throw new QueryNotFoundException("Query not stored", "test-query-id");
+        }, policy(3, 1000)));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void executeWithRetry_ShouldStopRetrying_WhenBudgetIsExhausted() {
+        // Given
+        RetryPolicy policy = new RetryPolicy(3, 1, 1, 0, 0.1, 2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When: the reserve of two retries is spent by the first call
+        for (int i = 0; i < 3; i++) {
+            assertThrows(QueryStorageException.class, () -> executor.executeWithRetry("read_query", () -> {
+                attempts.incrementAndGet();
+                throw transientError();
+            }, policy));
+        }
+
+        // Then
+        assertEquals(5, attempts.get());
+        assertEquals(2.0, meterRegistry.get(TaskRetryExecutor.SKIPPED_METRIC)
+                .tag("operation", "read_query")
+                .tag("reason", "budget_exhausted")
+                .counter().count());
+    }
+
+    @Test
+    void executeWithRetry_ShouldGiveUp_WhenInterrupted() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+        Thread.currentThread().interrupt();
+
+        // When & Then
+        try {
+            assertThrows(QueryStorageException.class, () -> executor.executeWithRetry("read_query", () -> {
+                attempts.incrementAndGet();
+                throw transientError();
+            }, policy(3, 1000)));
+            assertTrue(Thread.currentThread().isInterrupted());
+            assertEquals(1, attempts.get());
+        }
+        finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void retry_ShouldResubscribe_UntilTaskSucceeds() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> task = Mono.fromSupplier(() -> {
+            if (attempts.incrementAndGet() < 2) {
+                throw transientError();
+            }
+            return "{}";
+        });
+
+        // When
+        String result = executor.retry("write_query_stream", task, policy(3, 1), QueryStorageException.class::isInstance).block();
+
+        // Then
+        assertEquals("{}", result);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void retry_ShouldNotRetry_WhenFilterRejectsError() {
+        // Given
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean filtered = new AtomicBoolean();
+        Mono<String> task = Mono.fromSupplier(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("fetch failed");
+        });
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> executor.retry("write_query_stream", task, policy(3, 1), error -> {
+            filtered.set(true);
+            return false;
+        }).block());
+        assertTrue(filtered.get());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void delayMillis_ShouldGrowExponentially_UpToMaxBackoff() {
+        // Given
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0, 0.2, 10);
+
+        // When & Then
+        assertEquals(100, policy.delayMillis(1));
+        assertEquals(200, policy.delayMillis(2));
+        assertEquals(400, policy.delayMillis(3));
+        assertEquals(1000, policy.delayMillis(5));
+        assertEquals(1000, policy.delayMillis(64));
+    }
+
+    private static RetryPolicy policy(int maxAttempts, long backoffMillis) {
+        return new RetryPolicy(maxAttempts, backoffMillis, 10000, 0.5, 0.2, 10);
+    }
+
+    private static QueryStorageException transientError() {
+        return new QueryStorageException("Storage failed", "test-query-id", new TransientDataAccessResourceException("connection reset"));
+    }
+}